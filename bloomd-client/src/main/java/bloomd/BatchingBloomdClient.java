@@ -0,0 +1,298 @@
+package bloomd;
+
+import bloomd.args.CreateFilterArgs;
+import bloomd.replies.*;
+import io.netty.util.concurrent.GlobalEventExecutor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+
+/**
+ * {@link BloomdClient} decorator that coalesces concurrent single key commands into multi key ones.
+ * <p>
+ * Concurrent {@link #set(String, String)} calls on the same filter are collected for up to {@code linger}, or
+ * until {@code maxBatchSize} keys are collected, and sent as a single BULK command. Concurrent
+ * {@link #check(String, String)} calls are coalesced the same way into MULTI commands. Each caller's future is then
+ * completed with the result for its own key, so N round trips become one without changing the API. Every other
+ * command is sent straight to the underlying client.
+ * <p>
+ * {@link #getSetStats()} and {@link #getCheckStats()} report how well the batches are being filled, which helps
+ * tuning the linger and batch size.
+ */
+public class BatchingBloomdClient implements BloomdClient {
+
+    private final BloomdClient delegate;
+    private final int maxBatchSize;
+    private final long lingerNanos;
+    private final ScheduledExecutorService scheduler;
+
+    private final Batcher setBatcher;
+    private final Batcher checkBatcher;
+
+    public BatchingBloomdClient(BloomdClient delegate, int maxBatchSize, long linger, TimeUnit unit) {
+        this(delegate, maxBatchSize, linger, unit, GlobalEventExecutor.INSTANCE);
+    }
+
+    /**
+     * @param scheduler used to send batches once they linger for long enough. Sending a batch does not block.
+     */
+    public BatchingBloomdClient(BloomdClient delegate, int maxBatchSize, long linger, TimeUnit unit,
+                                ScheduledExecutorService scheduler) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("maxBatchSize has to be at least 1");
+        }
+
+        if (linger < 0) {
+            throw new IllegalArgumentException("linger can not be negative");
+        }
+
+        this.delegate = delegate;
+        this.maxBatchSize = maxBatchSize;
+        this.lingerNanos = unit.toNanos(linger);
+        this.scheduler = scheduler;
+        this.setBatcher = new Batcher(delegate::bulkBits);
+        this.checkBatcher = new Batcher(delegate::multiBits);
+    }
+
+    @Override
+    public CompletableFuture<List<BloomdFilter>> list() {
+        return delegate.list();
+    }
+
+    @Override
+    public CompletableFuture<List<BloomdFilter>> list(String prefix) {
+        return delegate.list(prefix);
+    }
+
+    @Override
+    public CompletableFuture<CreateResult> create(String filterName) {
+        return delegate.create(filterName);
+    }
+
+    @Override
+    public CompletableFuture<CreateResult> create(CreateFilterArgs args) {
+        return delegate.create(args);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> drop(String filterName) {
+        return delegate.drop(filterName);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> close(String filterName) {
+        return delegate.close(filterName);
+    }
+
+    @Override
+    public CompletableFuture<ClearResult> clear(String filterName) {
+        return delegate.clear(filterName);
+    }
+
+    @Override
+    public CompletableFuture<StateResult> check(String filterName, String key) {
+        return checkBatcher.enqueue(filterName, key);
+    }
+
+    @Override
+    public CompletableFuture<StateResult> set(String filterName, String key) {
+        return setBatcher.enqueue(filterName, key);
+    }
+
+    @Override
+    public CompletableFuture<List<StateResult>> multi(String filterName, String... keys) {
+        return delegate.multi(filterName, keys);
+    }
+
+    @Override
+    public CompletableFuture<StateResults> multiBits(String filterName, String... keys) {
+        return delegate.multiBits(filterName, keys);
+    }
+
+    @Override
+    public CompletableFuture<List<StateResult>> bulk(String filterName, String... keys) {
+        return delegate.bulk(filterName, keys);
+    }
+
+    @Override
+    public CompletableFuture<StateResults> bulkBits(String filterName, String... keys) {
+        return delegate.bulkBits(filterName, keys);
+    }
+
+    @Override
+    public CompletableFuture<BloomdInfo> info(String filterName) {
+        return delegate.info(filterName);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> flush(String filterName) {
+        return delegate.flush(filterName);
+    }
+
+    /**
+     * @return how sets have been batched so far
+     */
+    public BatchingStats getSetStats() {
+        return setBatcher.stats();
+    }
+
+    /**
+     * @return how checks have been batched so far
+     */
+    public BatchingStats getCheckStats() {
+        return checkBatcher.stats();
+    }
+
+    private class Batcher {
+        private final BiFunction<String, String[], CompletableFuture<StateResults>> command;
+        private final ConcurrentMap<String, Batch> batches = new ConcurrentHashMap<>();
+
+        private final LongAdder batchCount = new LongAdder();
+        private final LongAdder fullBatchCount = new LongAdder();
+        private final LongAdder keyCount = new LongAdder();
+        private final LongAdder lingerNanosTotal = new LongAdder();
+        private final LongAccumulator largestBatch = new LongAccumulator(Math::max, 0);
+
+        Batcher(BiFunction<String, String[], CompletableFuture<StateResults>> command) {
+            this.command = command;
+        }
+
+        CompletableFuture<StateResult> enqueue(String filterName, String key) {
+            CompletableFuture<StateResult> future = new CompletableFuture<>();
+
+            Batch full = null;
+            for (; ; ) {
+                Batch batch = batches.get(filterName);
+                if (batch == null) {
+                    Batch newBatch = new Batch(filterName);
+                    batch = batches.putIfAbsent(filterName, newBatch);
+                    if (batch == null) {
+                        batch = newBatch;
+                        newBatch.setLingerTask(
+                                scheduler.schedule(newBatch::linger, lingerNanos, TimeUnit.NANOSECONDS));
+                    }
+                }
+
+                synchronized (batch) {
+                    if (batch.sent) {
+                        // this batch was sent right before we could add the key, start a new one
+                        batches.remove(filterName, batch);
+                        continue;
+                    }
+
+                    batch.keys.add(key);
+                    batch.futures.add(future);
+
+                    if (batch.keys.size() >= maxBatchSize) {
+                        batch.sent = true;
+                        batches.remove(filterName, batch);
+                        full = batch;
+                    }
+                }
+                break;
+            }
+
+            if (full != null) {
+                fullBatchCount.increment();
+                full.cancelLinger();
+                full.send();
+            }
+
+            return future;
+        }
+
+        BatchingStats stats() {
+            return new BatchingStats(batchCount.sum(), fullBatchCount.sum(), keyCount.sum(),
+                    lingerNanosTotal.sum(), largestBatch.get());
+        }
+
+        private class Batch {
+            private final String filterName;
+            private final long createdAt = System.nanoTime();
+            private final List<String> keys = new ArrayList<>();
+            private final List<CompletableFuture<StateResult>> futures = new ArrayList<>();
+            private boolean sent = false;
+            // the linger task would keep the batch alive until it runs, so it is cancelled once the batch is full
+            private ScheduledFuture<?> lingerTask;
+
+            Batch(String filterName) {
+                this.filterName = filterName;
+            }
+
+            void setLingerTask(ScheduledFuture<?> task) {
+                synchronized (this) {
+                    if (!sent) {
+                        lingerTask = task;
+                        return;
+                    }
+                }
+                // filled up before its task could be stored
+                task.cancel(false);
+            }
+
+            void cancelLinger() {
+                ScheduledFuture<?> task;
+                synchronized (this) {
+                    task = lingerTask;
+                    lingerTask = null;
+                }
+
+                if (task != null) {
+                    task.cancel(false);
+                }
+            }
+
+            void linger() {
+                synchronized (this) {
+                    if (sent) {
+                        return;
+                    }
+                    sent = true;
+                }
+
+                batches.remove(filterName, this);
+                send();
+            }
+
+            void send() {
+                if (keys.isEmpty()) {
+                    return;
+                }
+
+                batchCount.increment();
+                keyCount.add(keys.size());
+                lingerNanosTotal.add(System.nanoTime() - createdAt);
+                largestBatch.accumulate(keys.size());
+
+                CompletableFuture<StateResults> results;
+                try {
+                    results = command.apply(filterName, keys.toArray(new String[keys.size()]));
+                } catch (RuntimeException e) {
+                    results = Futures.failed(e);
+                }
+
+                results.whenComplete((states, err) -> {
+                    if (err != null) {
+                        Throwable cause = Futures.unwrap(err);
+                        for (CompletableFuture<StateResult> future : futures) {
+                            future.completeExceptionally(cause);
+                        }
+                    } else {
+                        for (int i = 0; i < futures.size(); i++) {
+                            futures.get(i).complete(states.get(i));
+                        }
+                    }
+                });
+            }
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package bloomd;
+
+/**
+ * Snapshot of how commands have been coalesced by a {@link BatchingBloomdClient}.
+ */
+public class BatchingStats {
+
+    private final long batches;
+    private final long fullBatches;
+    private final long keys;
+    private final long lingerNanosTotal;
+    private final long largestBatch;
+
+    public BatchingStats(long batches, long fullBatches, long keys, long lingerNanosTotal, long largestBatch) {
+        this.batches = batches;
+        this.fullBatches = fullBatches;
+        this.keys = keys;
+        this.lingerNanosTotal = lingerNanosTotal;
+        this.largestBatch = largestBatch;
+    }
+
+    /**
+     * @return number of commands sent to the server
+     */
+    public long getBatches() {
+        return batches;
+    }
+
+    /**
+     * @return number of batches sent because they reached the max batch size instead of lingering
+     */
+    public long getFullBatches() {
+        return fullBatches;
+    }
+
+    /**
+     * @return number of keys sent, i.e. the number of single key calls that were coalesced
+     */
+    public long getKeys() {
+        return keys;
+    }
+
+    public long getLargestBatch() {
+        return largestBatch;
+    }
+
+    public double getAverageBatchSize() {
+        return batches == 0 ? 0 : (double) keys / batches;
+    }
+
+    /**
+     * @return average time between the first key being added to a batch and the batch being sent
+     */
+    public double getAverageLingerMicros() {
+        return batches == 0 ? 0 : lingerNanosTotal / 1_000.0 / batches;
+    }
+
+    @Override
+    public String toString() {
+        return "BatchingStats{" +
+                "batches=" + batches +
+                ", fullBatches=" + fullBatches +
+                ", keys=" + keys +
+                ", averageBatchSize=" + getAverageBatchSize() +
+                ", averageLingerMicros=" + getAverageLingerMicros() +
+                ", largestBatch=" + largestBatch +
+                '}';
+    }
+}
@@ -3,37 +3,154 @@ package bloomd;
 import bloomd.args.CreateFilterArgs;
 import bloomd.replies.*;
 
+import java.util.Iterator;
 import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.Future;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
 
 @SuppressWarnings("SameParameterValue")
 public interface BloomdClient {
-    Future<List<BloomdFilter>> list();
+    CompletableFuture<List<BloomdFilter>> list();
 
-    Future<List<BloomdFilter>> list(String prefix);
+    CompletableFuture<List<BloomdFilter>> list(String prefix);
 
-    Future<CreateResult> create(String filterName);
+    CompletableFuture<CreateResult> create(String filterName);
 
-    Future<CreateResult> create(CreateFilterArgs args);
+    CompletableFuture<CreateResult> create(CreateFilterArgs args);
 
-    Future<Boolean> drop(String filterName);
+    CompletableFuture<Boolean> drop(String filterName);
 
-    Future<Boolean> close(String filterName);
+    CompletableFuture<Boolean> close(String filterName);
 
-    Future<ClearResult> clear(String filterName);
+    CompletableFuture<ClearResult> clear(String filterName);
 
-    Future<StateResult> check(String filterName, String key);
+    CompletableFuture<StateResult> check(String filterName, String key);
 
-    Future<StateResult> set(String filterName, String key);
+    CompletableFuture<StateResult> set(String filterName, String key);
 
-    Future<List<StateResult>> multi(String filterName, String... keys);
+    CompletableFuture<List<StateResult>> multi(String filterName, String... keys);
 
-    Future<List<StateResult>> bulk(String filterName, String... keys);
+    /**
+     * Same as {@link #multi(String, String...)} but the results are returned packed in a bit set.
+     */
+    CompletableFuture<StateResults> multiBits(String filterName, String... keys);
+
+    CompletableFuture<List<StateResult>> bulk(String filterName, String... keys);
+
+    /**
+     * Same as {@link #bulk(String, String...)} but the results are returned packed in a bit set.
+     */
+    CompletableFuture<StateResults> bulkBits(String filterName, String... keys);
+
+    /**
+     * Same as {@link #multiBits(String, String...)} but the keys are sent in several commands of up to
+     * {@code chunkSize} keys, with at most {@code maxChunksInFlight} of them being processed at the same time.
+     * This keeps the size of the commands and replies bounded, and lets implementations with several connections
+     * send the chunks in parallel.
+     */
+    default CompletableFuture<StateResults> multiChunked(String filterName, int chunkSize, int maxChunksInFlight,
+                                                         String... keys) {
+        return ChunkedStateCommand.execute(this::multiBits, filterName, keys, chunkSize, maxChunksInFlight);
+    }
+
+    /**
+     * Same as {@link #bulkBits(String, String...)} but the keys are sent in several commands of up to
+     * {@code chunkSize} keys, with at most {@code maxChunksInFlight} of them being processed at the same time.
+     * If a chunk fails the returned future fails, but the keys of the chunks sent before might have been set.
+     */
+    default CompletableFuture<StateResults> bulkChunked(String filterName, int chunkSize, int maxChunksInFlight,
+                                                        String... keys) {
+        return ChunkedStateCommand.execute(this::bulkBits, filterName, keys, chunkSize, maxChunksInFlight);
+    }
+
+    /**
+     * Sends the keys returned by an iterator to a filter as successive BULK commands of up to {@code batchSize} keys,
+     * with at most {@code maxBatchesInFlight} of them outstanding. Keys are pulled lazily, so memory usage does not
+     * depend on the number of keys.
+     * <p>
+     * Keys are pulled on the {@link ForkJoinPool#commonPool()}, never on the calling thread nor on the threads reading
+     * replies. Use {@link #bulkStream(String, Iterator, int, int, BiConsumer, Executor)} to pull them on
+     * another executor, e.g. when the iterator blocks on I/O.
+     *
+     * @return a future that resolves once every key was sent, with the number of new and already present keys
+     */
+    default CompletableFuture<BulkSummary> bulkStream(String filterName, Iterator<String> keys,
+                                                      int batchSize, int maxBatchesInFlight) {
+        return bulkStream(filterName, keys, batchSize, maxBatchesInFlight, null, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Same as {@link #bulkStream(String, Iterator, int, int)} but {@code resultConsumer} is also called with the
+     * result of each key as soon as its batch completes. It is never called concurrently, but keys from different
+     * batches might be reported in a different order than they were returned by the iterator.
+     */
+    default CompletableFuture<BulkSummary> bulkStream(String filterName, Iterator<String> keys,
+                                                      int batchSize, int maxBatchesInFlight,
+                                                      BiConsumer<String, StateResult> resultConsumer) {
+        return bulkStream(filterName, keys, batchSize, maxBatchesInFlight, resultConsumer, ForkJoinPool.commonPool());
+    }
 
-    Future<BloomdInfo> info(String filterName);
+    /**
+     * Same as {@link #bulkStream(String, Iterator, int, int, BiConsumer)} but keys are pulled, and results reported,
+     * on {@code executor}.
+     *
+     * @param resultConsumer may be {@code null}
+     */
+    default CompletableFuture<BulkSummary> bulkStream(String filterName, Iterator<String> keys,
+                                                      int batchSize, int maxBatchesInFlight,
+                                                      BiConsumer<String, StateResult> resultConsumer,
+                                                      Executor executor) {
+        return StreamingBulkCommand.execute(this::bulkBits, filterName, keys, batchSize, maxBatchesInFlight,
+                resultConsumer, executor);
+    }
+
+    /**
+     * Same as {@link #bulkStream(String, Iterator, int, int)}. The stream is closed once the returned future
+     * completes.
+     */
+    default CompletableFuture<BulkSummary> bulkStream(String filterName, Stream<String> keys,
+                                                      int batchSize, int maxBatchesInFlight) {
+        return bulkStream(filterName, keys, batchSize, maxBatchesInFlight, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Same as {@link #bulkStream(String, Stream, int, int)} but keys are pulled on {@code executor}.
+     */
+    default CompletableFuture<BulkSummary> bulkStream(String filterName, Stream<String> keys,
+                                                      int batchSize, int maxBatchesInFlight, Executor executor) {
+        CompletableFuture<BulkSummary> summary;
+        try {
+            summary = bulkStream(filterName, keys.iterator(), batchSize, maxBatchesInFlight, null, executor);
+        } catch (RuntimeException e) {
+            keys.close();
+            throw e;
+        }
+        return summary.whenComplete((result, err) -> keys.close());
+    }
 
-    Future<Boolean> flush(String filterName);
+    default CompletableFuture<BulkSummary> bulkStream(String filterName, Spliterator<String> keys,
+                                                      int batchSize, int maxBatchesInFlight) {
+        return bulkStream(filterName, Spliterators.iterator(keys), batchSize, maxBatchesInFlight);
+    }
+
+    CompletableFuture<BloomdInfo> info(String filterName);
+
+    CompletableFuture<Boolean> flush(String filterName);
+
+    /**
+     * @return a view of this client whose commands fail with a {@link java.util.concurrent.TimeoutException} if
+     * they don't complete within the timeout. Connections stay usable: the late reply of an expired command is
+     * read and discarded
+     */
+    default BloomdClient withTimeout(long timeout, TimeUnit unit) {
+        return new DeadlineBloomdClient(this, unit.toNanos(timeout), null);
+    }
 
     /**
      * @return a future that will resolve to a {@link BloomdClient} implementation
@@ -55,4 +172,13 @@ public interface BloomdClient {
     static CompletableFuture<BloomdClient> newInstance(String host, int port, int maxConnections, int connectionTimeoutMillis, int acquireTimeoutMillis) {
         return new BloomdClientPool(host, port, maxConnections, connectionTimeoutMillis, acquireTimeoutMillis).acquire();
     }
+
+    /**
+     * @return a future that will resolve to a {@link BloomdClient} implementation once the min idle connections of
+     * the config are open
+     */
+    static CompletableFuture<BloomdClient> newInstance(BloomdClientConfig config) {
+        BloomdClientPool pool = new BloomdClientPool(config);
+        return pool.ready().thenCompose(ready -> pool.acquire());
+    }
 }
@@ -0,0 +1,281 @@
+package bloomd;
+
+/**
+ * Settings of the connections to a bloomd server. Use the {@link Builder} to create instances.
+ */
+public class BloomdClientConfig {
+
+    /**
+     * Netty transport used by the connections.
+     */
+    public enum Transport {
+        /**
+         * Uses the native epoll transport when available, falling back to NIO otherwise.
+         */
+        AUTO,
+        NIO,
+        /**
+         * Uses the native epoll transport, which is only available on Linux.
+         */
+        EPOLL
+    }
+
+    private final String host;
+    private final int port;
+    private final int maxConnections;
+    private final int connectTimeoutMillis;
+    private final int acquireTimeoutMillis;
+    private final FlushPolicy flushPolicy;
+    private final Transport transport;
+    private final boolean tcpNoDelay;
+    private final Integer sendBufferSize;
+    private final Integer receiveBufferSize;
+    private final Integer writeBufferLowWaterMark;
+    private final Integer writeBufferHighWaterMark;
+    private final SharedEventLoopGroup eventLoopGroup;
+    private final int minIdleConnections;
+
+    private BloomdClientConfig(String host, int port, int maxConnections, int minIdleConnections,
+                               int connectTimeoutMillis, int acquireTimeoutMillis, FlushPolicy flushPolicy, Transport transport,
+                               boolean tcpNoDelay, Integer sendBufferSize, Integer receiveBufferSize,
+                               Integer writeBufferLowWaterMark, Integer writeBufferHighWaterMark,
+                               SharedEventLoopGroup eventLoopGroup) {
+        this.host = host;
+        this.port = port;
+        this.maxConnections = maxConnections;
+        this.minIdleConnections = minIdleConnections;
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+        this.flushPolicy = flushPolicy;
+        this.transport = transport;
+        this.tcpNoDelay = tcpNoDelay;
+        this.sendBufferSize = sendBufferSize;
+        this.receiveBufferSize = receiveBufferSize;
+        this.writeBufferLowWaterMark = writeBufferLowWaterMark;
+        this.writeBufferHighWaterMark = writeBufferHighWaterMark;
+        this.eventLoopGroup = eventLoopGroup;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    /**
+     * @return number of connections opened when the pool is created and kept open afterwards
+     */
+    public int getMinIdleConnections() {
+        return minIdleConnections;
+    }
+
+    public int getConnectTimeoutMillis() {
+        return connectTimeoutMillis;
+    }
+
+    public int getAcquireTimeoutMillis() {
+        return acquireTimeoutMillis;
+    }
+
+    public FlushPolicy getFlushPolicy() {
+        return flushPolicy;
+    }
+
+    public Transport getTransport() {
+        return transport;
+    }
+
+    public boolean isTcpNoDelay() {
+        return tcpNoDelay;
+    }
+
+    /**
+     * @return the SO_SNDBUF size, or null to use the OS default
+     */
+    public Integer getSendBufferSize() {
+        return sendBufferSize;
+    }
+
+    /**
+     * @return the SO_RCVBUF size, or null to use the OS default
+     */
+    public Integer getReceiveBufferSize() {
+        return receiveBufferSize;
+    }
+
+    /**
+     * @return the write buffer low water mark, or null to use netty's default
+     */
+    public Integer getWriteBufferLowWaterMark() {
+        return writeBufferLowWaterMark;
+    }
+
+    /**
+     * @return the write buffer high water mark, or null to use netty's default
+     */
+    public Integer getWriteBufferHighWaterMark() {
+        return writeBufferHighWaterMark;
+    }
+
+    /**
+     * @return the event loop group shared with other pools, or null if the pool creates its own
+     */
+    public SharedEventLoopGroup getEventLoopGroup() {
+        return eventLoopGroup;
+    }
+
+    @Override
+    public String toString() {
+        return "BloomdClientConfig{" +
+                "host='" + host + '\'' +
+                ", port=" + port +
+                ", maxConnections=" + maxConnections +
+                ", minIdleConnections=" + minIdleConnections +
+                ", connectTimeoutMillis=" + connectTimeoutMillis +
+                ", acquireTimeoutMillis=" + acquireTimeoutMillis +
+                ", flushPolicy=" + flushPolicy +
+                ", transport=" + transport +
+                ", tcpNoDelay=" + tcpNoDelay +
+                ", sendBufferSize=" + sendBufferSize +
+                ", receiveBufferSize=" + receiveBufferSize +
+                ", writeBufferLowWaterMark=" + writeBufferLowWaterMark +
+                ", writeBufferHighWaterMark=" + writeBufferHighWaterMark +
+                ", eventLoopGroup=" + eventLoopGroup +
+                '}';
+    }
+
+    public static class Builder {
+        private String host;
+        private int port = 8673;
+        private int maxConnections = 1;
+        private int minIdleConnections = 0;
+        private int connectTimeoutMillis = 2_000;
+        private int acquireTimeoutMillis = 2_000;
+        private FlushPolicy flushPolicy = FlushPolicy.DEFAULT;
+        private Transport transport = Transport.AUTO;
+        private boolean tcpNoDelay = true;
+        private Integer sendBufferSize;
+        private Integer receiveBufferSize;
+        private Integer writeBufferLowWaterMark;
+        private Integer writeBufferHighWaterMark;
+        private SharedEventLoopGroup eventLoopGroup;
+
+        public Builder setHost(String host) {
+            this.host = host;
+            return this;
+        }
+
+        public Builder setPort(int port) {
+            this.port = port;
+            return this;
+        }
+
+        public Builder setMaxConnections(int maxConnections) {
+            if (maxConnections < 1) {
+                throw new IllegalArgumentException("maxConnections has to be at least 1");
+            }
+            this.maxConnections = maxConnections;
+            return this;
+        }
+
+        /**
+         * Opens this many connections in parallel when the pool is created, so the first commands do not pay for
+         * connecting. A closed connection is replaced right away only if no idle connection is left, otherwise the
+         * pool opens a new one once its idle connections are all in use.
+         */
+        public Builder setMinIdleConnections(int minIdleConnections) {
+            if (minIdleConnections < 0) {
+                throw new IllegalArgumentException("minIdleConnections can not be negative");
+            }
+            this.minIdleConnections = minIdleConnections;
+            return this;
+        }
+
+        public Builder setConnectTimeoutMillis(int connectTimeoutMillis) {
+            this.connectTimeoutMillis = connectTimeoutMillis;
+            return this;
+        }
+
+        public Builder setAcquireTimeoutMillis(int acquireTimeoutMillis) {
+            this.acquireTimeoutMillis = acquireTimeoutMillis;
+            return this;
+        }
+
+        public Builder setFlushPolicy(FlushPolicy flushPolicy) {
+            this.flushPolicy = flushPolicy;
+            return this;
+        }
+
+        public Builder setTransport(Transport transport) {
+            this.transport = transport;
+            return this;
+        }
+
+        public Builder setTcpNoDelay(boolean tcpNoDelay) {
+            this.tcpNoDelay = tcpNoDelay;
+            return this;
+        }
+
+        public Builder setSendBufferSize(Integer sendBufferSize) {
+            if (sendBufferSize != null && sendBufferSize < 1) {
+                throw new IllegalArgumentException("sendBufferSize has to be positive");
+            }
+            this.sendBufferSize = sendBufferSize;
+            return this;
+        }
+
+        public Builder setReceiveBufferSize(Integer receiveBufferSize) {
+            if (receiveBufferSize != null && receiveBufferSize < 1) {
+                throw new IllegalArgumentException("receiveBufferSize has to be positive");
+            }
+            this.receiveBufferSize = receiveBufferSize;
+            return this;
+        }
+
+        /**
+         * Once more than {@code high} bytes are waiting to be written a connection becomes unwritable, until they
+         * go below {@code low} bytes.
+         */
+        public Builder setWriteBufferWaterMarks(int low, int high) {
+            if (low < 0 || high < low) {
+                throw new IllegalArgumentException("Write buffer water marks have to satisfy 0 <= low <= high");
+            }
+            this.writeBufferLowWaterMark = low;
+            this.writeBufferHighWaterMark = high;
+            return this;
+        }
+
+        /**
+         * Makes the pool use an event loop group shared with other pools instead of creating its own. The
+         * transport of the group takes precedence over {@link #setTransport(Transport)}.
+         */
+        public Builder setEventLoopGroup(SharedEventLoopGroup eventLoopGroup) {
+            this.eventLoopGroup = eventLoopGroup;
+            return this;
+        }
+
+        public BloomdClientConfig build() {
+            if (host == null) {
+                throw new IllegalArgumentException("A host is required");
+            }
+
+            if (flushPolicy == null || transport == null) {
+                throw new IllegalArgumentException("flushPolicy and transport can not be null");
+            }
+
+            if (minIdleConnections > maxConnections) {
+                throw new IllegalArgumentException("minIdleConnections can not be greater than maxConnections");
+            }
+
+            return new BloomdClientConfig(host, port, maxConnections, minIdleConnections, connectTimeoutMillis,
+                    acquireTimeoutMillis, flushPolicy, transport, tcpNoDelay, sendBufferSize, receiveBufferSize,
+                    writeBufferLowWaterMark, writeBufferHighWaterMark, eventLoopGroup);
+        }
+    }
+}
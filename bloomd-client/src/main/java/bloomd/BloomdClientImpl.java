@@ -5,14 +5,19 @@ import bloomd.args.StateArgs;
 import bloomd.decoders.*;
 import bloomd.replies.*;
 import io.netty.channel.Channel;
+import io.netty.channel.ChannelOutboundBuffer;
+import io.netty.util.internal.PlatformDependent;
 
 import java.util.List;
 import java.util.Queue;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
-public class BloomdClientImpl implements BloomdClient, BloomdHandler.OnReplyReceivedListener {
+public class BloomdClientImpl implements BloomdClient {
 
     private final BloomdCommandCodec<String, List<BloomdFilter>> listCodec = new ListCodec();
     private final BloomdCommandCodec<String, BloomdInfo> infoCodec = new InfoCodec();
@@ -23,34 +28,54 @@ public class BloomdClientImpl implements BloomdClient, BloomdHandler.OnReplyRece
     private final BloomdCommandCodec<String, Boolean> flushCodec = new SingleArgCodec("flush");
     private final BloomdCommandCodec<StateArgs, StateResult> setCodec = new GenericStateCodec<>("s", true);
     private final BloomdCommandCodec<StateArgs, StateResult> checkCodec = new GenericStateCodec<>("c", true);
-    private final BloomdCommandCodec<StateArgs, List<StateResult>> bulkCodec = new GenericStateCodec<>("b", false);
-    private final BloomdCommandCodec<StateArgs, List<StateResult>> multiCodec = new GenericStateCodec<>("m", false);
-
-    private final Object clientLock = new Object();
+    private final BloomdCommandCodec<StateArgs, StateResults> bulkCodec = new GenericStateCodec<>("b", false);
+    private final BloomdCommandCodec<StateArgs, StateResults> multiCodec = new GenericStateCodec<>("m", false);
 
     private final Channel ch;
     private final BloomdHandler bloomdHandler;
-    private final Queue<CompletableFuture> commandsQueue;
-    private boolean blocked = false;
+
+    // commands submitted by any thread, waiting to be written by the channel's event loop
+    private final Queue<BloomdCommand<?, ?>> submissions;
+    private final AtomicBoolean drainScheduled = new AtomicBoolean(false);
+    private final Runnable drainTask = this::drainSubmissions;
+
+    // written commands not flushed yet; only accessed from the event loop
+    private final FlushPolicy flushPolicy;
+    private final Runnable flushTask = this::scheduledFlush;
+    private int unflushedWrites = 0;
+    private boolean flushScheduled = false;
+
+    // commands submitted and not completed yet
+    private final AtomicInteger outstandingCommands = new AtomicInteger();
+
+    // commands of the views returned by withTimeout whose deadline expired
+    private final LongAdder expiredCommands = new LongAdder();
+
+    private volatile boolean blocked = false;
 
     public BloomdClientImpl(Channel channel) {
+        this(channel, FlushPolicy.DEFAULT);
+    }
+
+    public BloomdClientImpl(Channel channel, FlushPolicy flushPolicy) {
         this.ch = channel;
-        this.bloomdHandler = new BloomdHandler(this);
-        this.commandsQueue = new ConcurrentLinkedQueue<>();
+        this.flushPolicy = flushPolicy;
+        this.bloomdHandler = new BloomdHandler();
+        this.submissions = PlatformDependent.newMpscQueue();
     }
 
     @Override
-    public Future<List<BloomdFilter>> list() {
+    public CompletableFuture<List<BloomdFilter>> list() {
         return list(null);
     }
 
     @Override
-    public Future<List<BloomdFilter>> list(String prefix) {
+    public CompletableFuture<List<BloomdFilter>> list(String prefix) {
         return sendCommand(listCodec, prefix == null ? "" : prefix);
     }
 
     @Override
-    public Future<CreateResult> create(String filterName) {
+    public CompletableFuture<CreateResult> create(String filterName) {
         CreateFilterArgs args = new CreateFilterArgs.Builder()
                 .setFilterName(filterName)
                 .build();
@@ -59,43 +84,48 @@ public class BloomdClientImpl implements BloomdClient, BloomdHandler.OnReplyRece
     }
 
     @Override
-    public Future<CreateResult> create(CreateFilterArgs args) {
+    public CompletableFuture<CreateResult> create(CreateFilterArgs args) {
         checkFilterNameValid(args.getFilterName());
         return sendCommand(createCodec, args);
     }
 
     @Override
-    public Future<Boolean> drop(String filterName) {
+    public CompletableFuture<Boolean> drop(String filterName) {
         checkFilterNameValid(filterName);
         return sendCommand(dropCodec, filterName);
     }
 
     @Override
-    public Future<Boolean> close(String filterName) {
+    public CompletableFuture<Boolean> close(String filterName) {
         checkFilterNameValid(filterName);
         return sendCommand(closeCodec, filterName);
     }
 
     @Override
-    public Future<ClearResult> clear(String filterName) {
+    public CompletableFuture<ClearResult> clear(String filterName) {
         checkFilterNameValid(filterName);
         return sendCommand(clearCodec, filterName);
     }
 
     @Override
-    public Future<StateResult> check(String filterName, String key) {
+    public CompletableFuture<StateResult> check(String filterName, String key) {
         StateArgs args = new StateArgs.Builder().setFilterName(filterName).addKey(key).build();
         return sendCommand(checkCodec, args);
     }
 
     @Override
-    public Future<StateResult> set(String filterName, String key) {
+    public CompletableFuture<StateResult> set(String filterName, String key) {
         StateArgs args = new StateArgs.Builder().setFilterName(filterName).addKey(key).build();
         return sendCommand(setCodec, args);
     }
 
     @Override
-    public Future<List<StateResult>> multi(String filterName, String... keys) {
+    public CompletableFuture<List<StateResult>> multi(String filterName, String... keys) {
+        return multiBits(filterName, keys).thenApply(StateResults::asList);
+    }
+
+    @Override
+    public CompletableFuture<StateResults> multiBits(String filterName, String... keys) {
         StateArgs.Builder builder = new StateArgs.Builder().setFilterName(filterName);
         for (String key : keys) {
             builder.addKey(key);
@@ -104,7 +134,12 @@ public class BloomdClientImpl implements BloomdClient, BloomdHandler.OnReplyRece
     }
 
     @Override
-    public Future<List<StateResult>> bulk(String filterName, String... keys) {
+    public CompletableFuture<List<StateResult>> bulk(String filterName, String... keys) {
+        return bulkBits(filterName, keys).thenApply(StateResults::asList);
+    }
+
+    @Override
+    public CompletableFuture<StateResults> bulkBits(String filterName, String... keys) {
         StateArgs.Builder builder = new StateArgs.Builder().setFilterName(filterName);
         for (String key : keys) {
             builder.addKey(key);
@@ -113,13 +148,13 @@ public class BloomdClientImpl implements BloomdClient, BloomdHandler.OnReplyRece
     }
 
     @Override
-    public Future<BloomdInfo> info(String filterName) {
+    public CompletableFuture<BloomdInfo> info(String filterName) {
         checkFilterNameValid(filterName);
         return sendCommand(infoCodec, filterName);
     }
 
     @Override
-    public Future<Boolean> flush(String filterName) {
+    public CompletableFuture<Boolean> flush(String filterName) {
         checkFilterNameValid(filterName);
         return sendCommand(flushCodec, filterName);
     }
@@ -139,51 +174,120 @@ public class BloomdClientImpl implements BloomdClient, BloomdHandler.OnReplyRece
             throw new IllegalStateException("Client is not connected to the server");
         }
 
-        // queue a future to be completed with the result of this command
+        // queue the command to be written by the event loop, which is what keeps
+        // the order in which commands are written and replies are decoded
         CompletableFuture<R> replyCompletableFuture = new CompletableFuture<>();
-        synchronized (clientLock) {
-            commandsQueue.add(replyCompletableFuture);
+        outstandingCommands.incrementAndGet();
+        submissions.add(new BloomdCommand<>(codec, args, replyCompletableFuture, outstandingCommands));
+
+        if (drainScheduled.compareAndSet(false, true)) {
+            try {
+                ch.eventLoop().execute(drainTask);
+            } catch (RejectedExecutionException e) {
+                drainScheduled.set(false);
+                failSubmissions(new IllegalStateException("Client is not connected to the server", e));
+            }
+        }
 
-            // replace the codec in the pipeline with the appropriate instance
-            bloomdHandler.queueCodec(codec);
+        return replyCompletableFuture;
+    }
 
-            // sends the command arguments through the pipeline
-            ch.writeAndFlush(args);
+    /**
+     * Writes all the submitted commands, flushing them as dictated by the {@link FlushPolicy}.
+     * Always runs in the channel's event loop.
+     */
+    private void drainSubmissions() {
+        // reset the flag before polling so that commands submitted from now on schedule a new drain
+        drainScheduled.set(false);
+
+        if (!ch.isActive()) {
+            failSubmissions(new IllegalStateException("Connection has been dropped"));
+            return;
         }
 
-        return replyCompletableFuture;
+        BloomdCommand<?, ?> command;
+        while ((command = submissions.poll()) != null) {
+            if (command.getFuture().isDone()) {
+                // expired or cancelled before being written, there is no reply to wait for
+                command.abandon();
+                continue;
+            }
+
+            ch.write(command, ch.voidPromise());
+
+            if (++unflushedWrites >= flushPolicy.getMaxPendingWrites()) {
+                flush();
+            }
+        }
+
+        if (unflushedWrites > 0 && !flushScheduled) {
+            flushScheduled = true;
+
+            long maxDelayNanos = flushPolicy.getMaxDelayNanos();
+            if (maxDelayNanos == 0) {
+                // runs after the tasks already queued, so concurrent submissions share the flush
+                ch.eventLoop().execute(flushTask);
+            } else {
+                ch.eventLoop().schedule(flushTask, maxDelayNanos, TimeUnit.NANOSECONDS);
+            }
+        }
     }
 
-    public BloomdHandler getBloomdHandler() {
-        return bloomdHandler;
+    private void scheduledFlush() {
+        flushScheduled = false;
+        flush();
     }
 
-    @Override
-    public void onReplyReceived(Object reply) {
-        //noinspection unchecked
-        CompletableFuture<Object> future = commandsQueue.poll();
-        if (future == null) {
-            throw new IllegalStateException("Promise queue is empty, received reply");
+    private void flush() {
+        if (unflushedWrites > 0) {
+            unflushedWrites = 0;
+            ch.flush();
         }
-        future.complete(reply);
     }
 
-    @Override
-    public void onDisconnect() {
-        CompletableFuture<Object> future;
-        //noinspection unchecked
-        while ((future = commandsQueue.poll()) != null) {
-            future.completeExceptionally(new IllegalStateException("Connection has been dropped"));
+    private void failSubmissions(Exception e) {
+        BloomdCommand<?, ?> command;
+        while ((command = submissions.poll()) != null) {
+            command.fail(e);
         }
     }
 
     @Override
-    public void onError(Exception e) {
-        CompletableFuture<Object> future;
-        //noinspection unchecked
-        while ((future = commandsQueue.poll()) != null) {
-            future.completeExceptionally(e);
-        }
+    public BloomdClient withTimeout(long timeout, TimeUnit unit) {
+        return new DeadlineBloomdClient(this, unit.toNanos(timeout), expiredCommands);
+    }
+
+    /**
+     * @return number of commands sent through {@link #withTimeout(long, TimeUnit)} views whose deadline expired
+     */
+    public long getExpiredCommands() {
+        return expiredCommands.sum();
+    }
+
+    /**
+     * @return number of replies read off the connection and discarded because their command had already expired
+     */
+    public long getDiscardedReplies() {
+        return bloomdHandler.getDiscardedReplies();
+    }
+
+    /**
+     * @return number of commands sent through this client that have not been completed yet
+     */
+    public int getOutstandingCommands() {
+        return outstandingCommands.get();
+    }
+
+    /**
+     * @return number of bytes written to the channel that are still waiting to be sent over the network
+     */
+    public long getPendingWriteBytes() {
+        ChannelOutboundBuffer outboundBuffer = ch.unsafe().outboundBuffer();
+        return outboundBuffer == null ? 0 : outboundBuffer.totalPendingWriteBytes();
+    }
+
+    public BloomdHandler getBloomdHandler() {
+        return bloomdHandler;
     }
 
     public Channel getChannel() {
@@ -1,45 +1,109 @@
 package bloomd;
 
 import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.pool.ChannelHealthChecker;
 import io.netty.channel.pool.ChannelPoolHandler;
 import io.netty.channel.pool.FixedChannelPool;
-import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.util.AttributeKey;
 import io.netty.util.concurrent.Future;
 import io.netty.util.concurrent.GenericFutureListener;
+import io.netty.util.concurrent.ImmediateEventExecutor;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class BloomdClientPool {
 
+    private static final long REPLENISH_RETRY_DELAY_MILLIS = 1_000;
+    private static final AttributeKey<Boolean> REUSED = AttributeKey.valueOf("bloomdReused");
+
     private final AtomicBoolean closed = new AtomicBoolean(false);
     private final FixedChannelPool channelPool;
     private final ClientInitializer initializer;
+    private final SharedEventLoopGroup eventLoopGroup;
     private final EventLoopGroup group;
+    private final int minIdleConnections;
+    private final AtomicInteger openConnections = new AtomicInteger();
+    private final AtomicBoolean replenishing = new AtomicBoolean(false);
+    private final CompletableFuture<Void> ready;
 
     public BloomdClientPool(String host, int port, int maxConnections, int connectTimeoutMillis, int acquireTimeoutMillis) {
-        group = new NioEventLoopGroup();
-        initializer = new ClientInitializer();
+        this(host, port, maxConnections, connectTimeoutMillis, acquireTimeoutMillis, FlushPolicy.DEFAULT);
+    }
+
+    public BloomdClientPool(String host, int port, int maxConnections, int connectTimeoutMillis, int acquireTimeoutMillis, FlushPolicy flushPolicy) {
+        this(new BloomdClientConfig.Builder()
+                .setHost(host)
+                .setPort(port)
+                .setMaxConnections(maxConnections)
+                .setConnectTimeoutMillis(connectTimeoutMillis)
+                .setAcquireTimeoutMillis(acquireTimeoutMillis)
+                .setFlushPolicy(flushPolicy)
+                .setTransport(BloomdClientConfig.Transport.NIO)
+                .build());
+    }
+
+    public BloomdClientPool(BloomdClientConfig config) {
+        eventLoopGroup = config.getEventLoopGroup() != null
+                ? config.getEventLoopGroup()
+                : new SharedEventLoopGroup(config.getTransport(), 0);
+        group = eventLoopGroup.retain();
+        minIdleConnections = config.getMinIdleConnections();
+        initializer = new ClientInitializer(config.getFlushPolicy());
 
         Bootstrap cb = new Bootstrap()
                 .group(group)
-                .channel(NioSocketChannel.class)
-                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeoutMillis)
-                .remoteAddress(host, port);
+                .channel(eventLoopGroup.channelClass())
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, config.getConnectTimeoutMillis())
+                .option(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
+                .option(ChannelOption.TCP_NODELAY, config.isTcpNoDelay())
+                .remoteAddress(config.getHost(), config.getPort());
+
+        if (config.getSendBufferSize() != null) {
+            cb.option(ChannelOption.SO_SNDBUF, config.getSendBufferSize());
+        }
+
+        if (config.getReceiveBufferSize() != null) {
+            cb.option(ChannelOption.SO_RCVBUF, config.getReceiveBufferSize());
+        }
+
+        if (config.getWriteBufferHighWaterMark() != null) {
+            // options are applied in order and netty rejects a low water mark above the current high one
+            // (and the other way around), so the order depends on netty's defaults (32k low, 64k high)
+            if (config.getWriteBufferHighWaterMark() < 32 * 1024) {
+                cb.option(ChannelOption.WRITE_BUFFER_LOW_WATER_MARK, config.getWriteBufferLowWaterMark());
+                cb.option(ChannelOption.WRITE_BUFFER_HIGH_WATER_MARK, config.getWriteBufferHighWaterMark());
+            } else {
+                cb.option(ChannelOption.WRITE_BUFFER_HIGH_WATER_MARK, config.getWriteBufferHighWaterMark());
+                cb.option(ChannelOption.WRITE_BUFFER_LOW_WATER_MARK, config.getWriteBufferLowWaterMark());
+            }
+        }
 
         ChannelPoolHandler poolHandler = new ChannelPoolHandler() {
             @Override
             public void channelCreated(Channel ch) throws Exception {
                 initializer.initChannel(ch);
+
+                openConnections.incrementAndGet();
+                ch.closeFuture().addListener(future -> {
+                    if (openConnections.decrementAndGet() < minIdleConnections) {
+                        replenish();
+                    }
+                });
             }
 
             @Override
             public void channelAcquired(Channel ch) throws Exception {
+                ch.attr(REUSED).set(Boolean.TRUE);
                 initializer.unlockClient(ch);
             }
 
@@ -51,8 +115,114 @@ public class BloomdClientPool {
 
         channelPool = new FixedChannelPool(
                 cb, poolHandler, ChannelHealthChecker.ACTIVE,
-                FixedChannelPool.AcquireTimeoutAction.FAIL, acquireTimeoutMillis,
-                maxConnections, Integer.MAX_VALUE, true);
+                FixedChannelPool.AcquireTimeoutAction.FAIL, config.getAcquireTimeoutMillis(),
+                config.getMaxConnections(), Integer.MAX_VALUE, true);
+
+        ready = minIdleConnections > 0 ? warmUp() : CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * @return a future that resolves once the minimum number of idle connections of the pool are open, or fails if
+     * they could not be opened
+     */
+    public CompletableFuture<Void> ready() {
+        return ready;
+    }
+
+    /**
+     * @return the number of connections currently open, both idle and acquired
+     */
+    public int getOpenConnections() {
+        return openConnections.get();
+    }
+
+    /**
+     * Opens the min idle connections in parallel, by acquiring them all before releasing them back to the pool.
+     */
+    private CompletableFuture<Void> warmUp() {
+        CompletableFuture<Void> warmedUp = new CompletableFuture<>();
+        List<Future<Channel>> acquires = new ArrayList<>();
+        AtomicInteger pending = new AtomicInteger(minIdleConnections);
+
+        for (int i = 0; i < minIdleConnections; i++) {
+            acquires.add(channelPool.acquire());
+        }
+
+        for (Future<Channel> acquire : acquires) {
+            acquire.addListener(done -> {
+                if (pending.decrementAndGet() > 0) {
+                    return;
+                }
+
+                Throwable cause = null;
+                for (Future<Channel> channel : acquires) {
+                    if (channel.isSuccess()) {
+                        channelPool.release(channel.getNow());
+                    } else if (cause == null) {
+                        cause = channel.cause();
+                    }
+                }
+
+                if (cause != null) {
+                    warmedUp.completeExceptionally(cause);
+                } else {
+                    warmedUp.complete(null);
+                }
+            });
+        }
+
+        return warmedUp;
+    }
+
+    /**
+     * Opens connections to replace the ones that were closed while the pool is below its min idle connections.
+     * <p>
+     * They are opened one at a time by acquiring a channel and releasing it right away, so idle channels are never
+     * held away from {@link #acquire()}. Once the pool hands out one of its idle channels instead of opening a new
+     * one, replenishing stops: the pool opens the missing connections on demand when its idle ones run out, and the
+     * next closed connection replenishes again.
+     */
+    private void replenish() {
+        if (closed.get() || openConnections.get() >= minIdleConnections || !replenishing.compareAndSet(false, true)) {
+            return;
+        }
+
+        channelPool.acquire().addListener((Future<Channel> acquire) -> {
+            if (!acquire.isSuccess()) {
+                finishReplenishing(true);
+                return;
+            }
+
+            Channel channel = acquire.getNow();
+            // only channels handed out again by the pool go through channelAcquired
+            boolean opened = channel.attr(REUSED).get() == null;
+            channelPool.release(channel);
+
+            if (opened) {
+                finishReplenishing(false);
+            } else {
+                replenishing.set(false);
+            }
+        });
+    }
+
+    private void finishReplenishing(boolean failed) {
+        replenishing.set(false);
+
+        if (!failed) {
+            replenish();
+            return;
+        }
+
+        if (closed.get()) {
+            return;
+        }
+
+        try {
+            group.schedule((Runnable) this::replenish, REPLENISH_RETRY_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // the pool was closed concurrently and its event loop group is shutting down
+        }
     }
 
     /**
@@ -111,11 +281,15 @@ public class BloomdClientPool {
     }
 
     /**
-     * Closes the connections for all clients in the pool
+     * Closes the connections for all clients in the pool, and shuts down its event loop group unless it is still
+     * shared with other pools.
      */
     public Future<?> closeConnections() {
-        closed.set(true);
+        if (closed.getAndSet(true)) {
+            return ImmediateEventExecutor.INSTANCE.newSucceededFuture(null);
+        }
+
         channelPool.close();
-        return group.shutdownGracefully();
+        return eventLoopGroup.release();
     }
 }
@@ -0,0 +1,74 @@
+package bloomd;
+
+import bloomd.decoders.BloomdCommandCodec;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A command submitted to a channel: the codec used to write it and read its reply, its arguments
+ * and the future to complete once the reply is received.
+ * <p>
+ * Commands are completed through {@link #complete(Object)} and {@link #fail(Throwable)}, which also keep
+ * the count of outstanding commands of the client that sent them. The future may also be completed by someone
+ * else, typically when the deadline of the command expires, in which case the reply is discarded once read.
+ */
+class BloomdCommand<ARG, OUTPUT> {
+    private final BloomdCommandCodec<ARG, OUTPUT> codec;
+    private final ARG args;
+    private final CompletableFuture<OUTPUT> future;
+    private final AtomicInteger outstanding;
+
+    BloomdCommand(BloomdCommandCodec<ARG, OUTPUT> codec, ARG args, CompletableFuture<OUTPUT> future) {
+        this(codec, args, future, null);
+    }
+
+    /**
+     * @param outstanding incremented by the caller when the command is submitted, decremented once it completes
+     */
+    BloomdCommand(BloomdCommandCodec<ARG, OUTPUT> codec, ARG args, CompletableFuture<OUTPUT> future,
+                  AtomicInteger outstanding) {
+        this.codec = codec;
+        this.args = args;
+        this.future = future;
+        this.outstanding = outstanding;
+    }
+
+    public BloomdCommandCodec<ARG, OUTPUT> getCodec() {
+        return codec;
+    }
+
+    public ARG getArgs() {
+        return args;
+    }
+
+    public CompletableFuture<OUTPUT> getFuture() {
+        return future;
+    }
+
+    /**
+     * @return false if the future had already been completed, e.g. because the deadline of the command expired
+     */
+    boolean complete(OUTPUT result) {
+        done();
+        return future.complete(result);
+    }
+
+    void fail(Throwable cause) {
+        done();
+        future.completeExceptionally(cause);
+    }
+
+    /**
+     * Drops a command that is not going to be written because its future was already completed.
+     */
+    void abandon() {
+        done();
+    }
+
+    private void done() {
+        if (outstanding != null) {
+            outstanding.decrementAndGet();
+        }
+    }
+}
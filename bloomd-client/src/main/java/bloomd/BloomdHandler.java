@@ -1,74 +1,87 @@
 package bloomd;
 
-import bloomd.decoders.BloomdCommandCodec;
+import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.MessageToMessageCodec;
 
 import java.util.ArrayDeque;
 import java.util.List;
 import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
 
-public class BloomdHandler extends MessageToMessageCodec<String, Object> {
+/**
+ * Writes {@link BloomdCommand}s and completes their futures as replies are received.
+ * <p>
+ * bloomd replies in the same order commands are received, so commands are kept in a queue from the moment
+ * they are written until their reply is decoded, even if they expire in the meantime. This handler is only ever
+ * accessed from the channel's event loop, hence the queue does not need to be thread safe.
+ */
+public class BloomdHandler extends MessageToMessageCodec<ByteBuf, BloomdCommand<Object, Object>> {
 
-    private final Queue<BloomdCommandCodec<Object, Object>> encoders;
-    private final Queue<BloomdCommandCodec<Object, Object>> decoders;
-    private final OnReplyReceivedListener onReplyReceivedListener;
+    private static final byte[] CRLF = {'\r', '\n'};
 
-    public BloomdHandler(OnReplyReceivedListener onReplyReceivedListener) {
-        this.onReplyReceivedListener = onReplyReceivedListener;
-        encoders = new ConcurrentLinkedQueue<>();
-        decoders = new ArrayDeque<>();
-    }
+    private final Queue<BloomdCommand<Object, Object>> inFlight = new ArrayDeque<>();
 
-    @Override
-    protected void encode(ChannelHandlerContext ctx, Object msg, List<Object> out) throws Exception {
-        BloomdCommandCodec<Object, Object> codec = encoders.poll();
+    // only written from the event loop
+    private volatile long discardedReplies = 0;
 
-        // send command
-        String command = codec.buildCommand(msg);
-        ctx.writeAndFlush(command + "\r\n");
+    @Override
+    protected void encode(ChannelHandlerContext ctx, BloomdCommand<Object, Object> command, List<Object> out) throws Exception {
+        // write the command straight into a pooled buffer; the caller takes care of flushing
+        ByteBuf buf = ctx.alloc().ioBuffer();
+        try {
+            command.getCodec().writeCommand(command.getArgs(), buf);
+            buf.writeBytes(CRLF);
+        } catch (Throwable e) {
+            buf.release();
+            command.fail(e);
+            throw e;
+        }
+        out.add(buf);
 
-        decoders.add(codec);
+        inFlight.add(command);
     }
 
     @Override
-    protected void decode(ChannelHandlerContext ctx, String msg, List<Object> out) throws Exception {
-        BloomdCommandCodec<Object, Object> currentCodec = decoders.peek();
+    protected void decode(ChannelHandlerContext ctx, ByteBuf msg, List<Object> out) throws Exception {
+        BloomdCommand<Object, Object> current = inFlight.peek();
+        if (current == null) {
+            throw new IllegalStateException("Received a reply but there are no commands in flight");
+        }
 
-        Object result = null;
-        Exception failure;
+        Object result;
         try {
-            result = currentCodec.decode(msg);
-            failure = null;
+            result = current.getCodec().decode(msg);
         } catch (Exception e) {
-            failure = e;
+            inFlight.poll();
+            current.fail(e);
+            return;
         }
 
-        if (failure != null) {
-            onReplyReceivedListener.onError(failure);
-            decoders.poll();
-        } else if (result != null) {
-            onReplyReceivedListener.onReplyReceived(result);
-            decoders.poll();
+        // some replies span several lines, in which case the codec returns null until it is done
+        if (result != null) {
+            inFlight.poll();
+            if (!current.complete(result)) {
+                // the command expired while in flight: its reply has been read off the connection all the same,
+                // so the next reply goes to the right command
+                discardedReplies++;
+            }
         }
     }
 
+    /**
+     * @return number of replies read for commands that had already completed, typically because they expired
+     */
+    public long getDiscardedReplies() {
+        return discardedReplies;
+    }
+
     @Override
     public void channelInactive(ChannelHandlerContext ctx) throws Exception {
         super.channelInactive(ctx);
-        onReplyReceivedListener.onDisconnect();
-    }
-
-    public <I, O> void queueCodec(BloomdCommandCodec<I, O> codec) {
-        encoders.add((BloomdCommandCodec<Object, Object>) codec);
-    }
 
-    public interface OnReplyReceivedListener {
-        void onReplyReceived(Object reply);
-
-        void onDisconnect();
-
-        void onError(Exception e);
+        BloomdCommand<Object, Object> command;
+        while ((command = inFlight.poll()) != null) {
+            command.fail(new IllegalStateException("Connection has been dropped"));
+        }
     }
 }
@@ -0,0 +1,77 @@
+package bloomd;
+
+/**
+ * Snapshot of how the keys checked through a {@link CachingBloomdClient} were answered.
+ */
+public class CacheStats {
+
+    private final long hits;
+    private final long misses;
+    private final long entries;
+    private final long usedBytes;
+    private final long maxBytes;
+    private final long evictions;
+
+    public CacheStats(long hits, long misses, long entries, long usedBytes, long maxBytes, long evictions) {
+        this.hits = hits;
+        this.misses = misses;
+        this.entries = entries;
+        this.usedBytes = usedBytes;
+        this.maxBytes = maxBytes;
+        this.evictions = evictions;
+    }
+
+    /**
+     * @return number of keys answered from the cache
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return number of keys sent to the server
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    public double getHitRatio() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    public long getEntries() {
+        return entries;
+    }
+
+    /**
+     * @return estimated heap used by the entries of the cache
+     */
+    public long getUsedBytes() {
+        return usedBytes;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * @return number of entries removed to keep the cache within its max size
+     */
+    public long getEvictions() {
+        return evictions;
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStats{" +
+                "hits=" + hits +
+                ", misses=" + misses +
+                ", hitRatio=" + getHitRatio() +
+                ", entries=" + entries +
+                ", usedBytes=" + usedBytes +
+                ", maxBytes=" + maxBytes +
+                ", evictions=" + evictions +
+                '}';
+    }
+}
@@ -0,0 +1,439 @@
+package bloomd;
+
+import bloomd.args.CreateFilterArgs;
+import bloomd.replies.*;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link BloomdClient} remembering the keys known to be in a filter, so that checking them again is answered
+ * locally.
+ * <p>
+ * Keys are only ever added to a bloom filter, so a key checked as {@link StateResult#YES}, or set, stays there
+ * until its filter is cleared or dropped. Such keys are cached, and {@code check} and {@code multi} only send the
+ * keys that are not cached to the server. Keys that are not in the filter are never cached, since they may be set
+ * at any time.
+ * <p>
+ * The cache of a filter is invalidated when it is cleared, dropped or created through this client. Changes made
+ * by other clients are not seen: keys of a filter they drop or clear are still answered as present.
+ * <p>
+ * The cache is a segmented LRU bounded by the estimated heap used by its entries: new keys enter a probation
+ * segment and are promoted to a protected segment when checked again, so that a burst of keys checked once does
+ * not evict the hot ones. Entries are spread over independently locked stripes, each with its share of the max
+ * size. See {@link #getStats()} for the hit ratio and the memory used.
+ */
+public class CachingBloomdClient implements BloomdClient {
+
+    // rough heap used by an entry besides the characters of its filter name and key: the entry of the linked map,
+    // the cache key, the value and both strings
+    private static final int ENTRY_OVERHEAD_BYTES = 160;
+
+    private final BloomdClient client;
+    private final Segment[] segments;
+    private final long maxBytes;
+    private final ConcurrentMap<String, AtomicLong> generations = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    private CachingBloomdClient(Builder builder) {
+        this.client = builder.client;
+        this.maxBytes = builder.maxBytes;
+        this.segments = new Segment[builder.concurrencyLevel];
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = new Segment(builder.maxBytes / segments.length, builder.protectedRatio);
+        }
+    }
+
+    @Override
+    public CompletableFuture<List<BloomdFilter>> list() {
+        return client.list();
+    }
+
+    @Override
+    public CompletableFuture<List<BloomdFilter>> list(String prefix) {
+        return client.list(prefix);
+    }
+
+    @Override
+    public CompletableFuture<CreateResult> create(String filterName) {
+        invalidate(filterName);
+        return invalidateOnCompletion(filterName, client.create(filterName));
+    }
+
+    @Override
+    public CompletableFuture<CreateResult> create(CreateFilterArgs args) {
+        invalidate(args.getFilterName());
+        return invalidateOnCompletion(args.getFilterName(), client.create(args));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> drop(String filterName) {
+        invalidate(filterName);
+        return invalidateOnCompletion(filterName, client.drop(filterName));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> close(String filterName) {
+        return client.close(filterName);
+    }
+
+    @Override
+    public CompletableFuture<ClearResult> clear(String filterName) {
+        invalidate(filterName);
+        return invalidateOnCompletion(filterName, client.clear(filterName));
+    }
+
+    @Override
+    public CompletableFuture<StateResult> check(String filterName, String key) {
+        long generation = generation(filterName);
+        if (isCached(filterName, key, generation)) {
+            hits.increment();
+            return CompletableFuture.completedFuture(StateResult.YES);
+        }
+
+        misses.increment();
+        return client.check(filterName, key).thenApply(result -> {
+            if (result == StateResult.YES) {
+                cache(filterName, key, generation);
+            }
+            return result;
+        });
+    }
+
+    @Override
+    public CompletableFuture<StateResult> set(String filterName, String key) {
+        long generation = generation(filterName);
+        return client.set(filterName, key).thenApply(result -> {
+            // whether it was new or not, the key is in the filter now
+            cache(filterName, key, generation);
+            return result;
+        });
+    }
+
+    @Override
+    public CompletableFuture<List<StateResult>> multi(String filterName, String... keys) {
+        return multiBits(filterName, keys).thenApply(StateResults::asList);
+    }
+
+    @Override
+    public CompletableFuture<StateResults> multiBits(String filterName, String... keys) {
+        long generation = generation(filterName);
+        long[] words = new long[(keys.length + 63) >>> 6];
+        int[] missing = new int[keys.length];
+        int missingCount = 0;
+
+        for (int i = 0; i < keys.length; i++) {
+            if (isCached(filterName, keys[i], generation)) {
+                words[i >>> 6] |= 1L << i;
+            } else {
+                missing[missingCount++] = i;
+            }
+        }
+        hits.add(keys.length - missingCount);
+        misses.add(missingCount);
+
+        if (missingCount == 0) {
+            return CompletableFuture.completedFuture(new StateResults(words, keys.length));
+        }
+
+        String[] remaining = keys;
+        if (missingCount < keys.length) {
+            remaining = new String[missingCount];
+            for (int i = 0; i < missingCount; i++) {
+                remaining[i] = keys[missing[i]];
+            }
+        }
+
+        String[] sent = remaining;
+        return client.multiBits(filterName, sent).thenApply(results -> {
+            if (sent == keys) {
+                results.forEachYes(i -> cache(filterName, keys[i], generation));
+                return results;
+            }
+
+            results.forEachYes(i -> {
+                int index = missing[i];
+                words[index >>> 6] |= 1L << index;
+                cache(filterName, sent[i], generation);
+            });
+            return new StateResults(words, keys.length);
+        });
+    }
+
+    @Override
+    public CompletableFuture<List<StateResult>> bulk(String filterName, String... keys) {
+        return bulkBits(filterName, keys).thenApply(StateResults::asList);
+    }
+
+    @Override
+    public CompletableFuture<StateResults> bulkBits(String filterName, String... keys) {
+        long generation = generation(filterName);
+        return client.bulkBits(filterName, keys).thenApply(results -> {
+            for (String key : keys) {
+                cache(filterName, key, generation);
+            }
+            return results;
+        });
+    }
+
+    @Override
+    public CompletableFuture<BloomdInfo> info(String filterName) {
+        return client.info(filterName);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> flush(String filterName) {
+        return client.flush(filterName);
+    }
+
+    public CacheStats getStats() {
+        long entries = 0;
+        long usedBytes = 0;
+        long evictions = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                entries += segment.probation.size() + segment.protectedEntries.size();
+                usedBytes += segment.probationBytes + segment.protectedBytes;
+                evictions += segment.evictions;
+            }
+        }
+        return new CacheStats(hits.sum(), misses.sum(), entries, usedBytes, maxBytes, evictions);
+    }
+
+    /**
+     * Forgets every key cached for the filter. Their entries are freed as they are looked up or evicted.
+     */
+    public void invalidate(String filterName) {
+        generations.computeIfAbsent(filterName, name -> new AtomicLong()).incrementAndGet();
+    }
+
+    private <T> CompletableFuture<T> invalidateOnCompletion(String filterName, CompletableFuture<T> future) {
+        // again once done, in case a check sent in the meantime was answered before the filter changed
+        return future.whenComplete((result, err) -> invalidate(filterName));
+    }
+
+    private long generation(String filterName) {
+        AtomicLong generation = generations.get(filterName);
+        return generation == null ? 0 : generation.get();
+    }
+
+    private boolean isCached(String filterName, String key, long generation) {
+        CacheKey cacheKey = new CacheKey(filterName, key);
+        Segment segment = segmentFor(cacheKey);
+        synchronized (segment) {
+            return segment.contains(cacheKey, generation);
+        }
+    }
+
+    private void cache(String filterName, String key, long generation) {
+        // the filter was invalidated while the command was in flight
+        if (generation != generation(filterName)) {
+            return;
+        }
+
+        CacheKey cacheKey = new CacheKey(filterName, key);
+        Segment segment = segmentFor(cacheKey);
+        synchronized (segment) {
+            segment.put(cacheKey, generation);
+        }
+    }
+
+    private Segment segmentFor(CacheKey key) {
+        int hash = key.hash;
+        hash ^= hash >>> 16;
+        return segments[(hash & Integer.MAX_VALUE) % segments.length];
+    }
+
+    private static final class CacheKey {
+        final String filterName;
+        final String key;
+        final int hash;
+
+        CacheKey(String filterName, String key) {
+            this.filterName = filterName;
+            this.key = key;
+            this.hash = 31 * filterName.hashCode() + key.hashCode();
+        }
+
+        int bytes() {
+            return ENTRY_OVERHEAD_BYTES + 2 * (filterName.length() + key.length());
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof CacheKey)) {
+                return false;
+            }
+            CacheKey other = (CacheKey) o;
+            return hash == other.hash && key.equals(other.key) && filterName.equals(other.filterName);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static final class Entry {
+        final int bytes;
+        // generation of the filter the key was cached in, a stale entry is a miss
+        long generation;
+
+        Entry(int bytes, long generation) {
+            this.bytes = bytes;
+            this.generation = generation;
+        }
+    }
+
+    /**
+     * Segmented LRU, guarded by its own lock. Both segments are linked maps in access order, least recently used
+     * first.
+     */
+    private static final class Segment {
+        final long maxBytes;
+        final long maxProtectedBytes;
+        final LinkedHashMap<CacheKey, Entry> probation = new LinkedHashMap<>(16, 0.75f, true);
+        final LinkedHashMap<CacheKey, Entry> protectedEntries = new LinkedHashMap<>(16, 0.75f, true);
+        long probationBytes;
+        long protectedBytes;
+        long evictions;
+
+        Segment(long maxBytes, double protectedRatio) {
+            this.maxBytes = maxBytes;
+            this.maxProtectedBytes = (long) (maxBytes * protectedRatio);
+        }
+
+        boolean contains(CacheKey key, long generation) {
+            Entry entry = protectedEntries.get(key);
+            if (entry != null) {
+                if (entry.generation == generation) {
+                    return true;
+                }
+                protectedEntries.remove(key);
+                protectedBytes -= entry.bytes;
+                return false;
+            }
+
+            entry = probation.remove(key);
+            if (entry == null) {
+                return false;
+            }
+
+            probationBytes -= entry.bytes;
+            if (entry.generation != generation) {
+                return false;
+            }
+
+            // checked again while on probation, so it is worth protecting
+            protectedEntries.put(key, entry);
+            protectedBytes += entry.bytes;
+            while (protectedBytes > maxProtectedBytes) {
+                Map.Entry<CacheKey, Entry> eldest = removeEldest(protectedEntries);
+                protectedBytes -= eldest.getValue().bytes;
+                probation.put(eldest.getKey(), eldest.getValue());
+                probationBytes += eldest.getValue().bytes;
+            }
+            return true;
+        }
+
+        void put(CacheKey key, long generation) {
+            Entry entry = protectedEntries.get(key);
+            if (entry == null) {
+                entry = probation.get(key);
+            }
+
+            if (entry != null) {
+                entry.generation = generation;
+                return;
+            }
+
+            int bytes = key.bytes();
+            if (bytes > maxBytes) {
+                return;
+            }
+
+            probation.put(key, new Entry(bytes, generation));
+            probationBytes += bytes;
+            while (probationBytes + protectedBytes > maxBytes) {
+                LinkedHashMap<CacheKey, Entry> victims = probation.isEmpty() ? protectedEntries : probation;
+                long freed = removeEldest(victims).getValue().bytes;
+                if (victims == probation) {
+                    probationBytes -= freed;
+                } else {
+                    protectedBytes -= freed;
+                }
+                evictions++;
+            }
+        }
+
+        private static Map.Entry<CacheKey, Entry> removeEldest(LinkedHashMap<CacheKey, Entry> entries) {
+            Iterator<Map.Entry<CacheKey, Entry>> iterator = entries.entrySet().iterator();
+            Map.Entry<CacheKey, Entry> eldest = iterator.next();
+            iterator.remove();
+            return eldest;
+        }
+    }
+
+    public static class Builder {
+        private BloomdClient client;
+        private long maxBytes = 64L * 1024 * 1024;
+        private double protectedRatio = 0.8;
+        private int concurrencyLevel = 16;
+
+        public Builder setClient(BloomdClient client) {
+            this.client = client;
+            return this;
+        }
+
+        /**
+         * Max estimated heap used by the entries of the cache, 64MB by default.
+         */
+        public Builder setMaxBytes(long maxBytes) {
+            if (maxBytes < 1) {
+                throw new IllegalArgumentException("maxBytes has to be positive");
+            }
+            this.maxBytes = maxBytes;
+            return this;
+        }
+
+        /**
+         * Share of the cache kept for keys checked more than once.
+         */
+        public Builder setProtectedRatio(double protectedRatio) {
+            if (protectedRatio < 0 || protectedRatio >= 1) {
+                throw new IllegalArgumentException("protectedRatio has to be in [0, 1)");
+            }
+            this.protectedRatio = protectedRatio;
+            return this;
+        }
+
+        /**
+         * Number of independently locked stripes of the cache.
+         */
+        public Builder setConcurrencyLevel(int concurrencyLevel) {
+            if (concurrencyLevel < 1) {
+                throw new IllegalArgumentException("concurrencyLevel has to be at least 1");
+            }
+            this.concurrencyLevel = concurrencyLevel;
+            return this;
+        }
+
+        public CachingBloomdClient build() {
+            if (client == null) {
+                throw new IllegalArgumentException("A client is required");
+            }
+            return new CachingBloomdClient(this);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package bloomd;
+
+import bloomd.replies.StateResults;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+
+/**
+ * Sends a MULTI or BULK command with lots of keys as several smaller commands, keeping a bounded number of them in
+ * flight, and puts the results back together in the original order.
+ */
+final class ChunkedStateCommand {
+
+    private final BiFunction<String, String[], CompletableFuture<StateResults>> command;
+    private final String filterName;
+    private final String[] keys;
+    private final int chunkSize;
+    private final int chunks;
+
+    private final long[] words;
+    private final AtomicInteger nextChunk = new AtomicInteger();
+    private final AtomicInteger completedChunks = new AtomicInteger();
+    // chunks waiting to be sent by the thread in sendChunks, so that chunks completing synchronously do not recurse
+    private final AtomicInteger chunksToSend = new AtomicInteger();
+    private final CompletableFuture<StateResults> result = new CompletableFuture<>();
+
+    private ChunkedStateCommand(BiFunction<String, String[], CompletableFuture<StateResults>> command,
+                                String filterName, String[] keys, int chunkSize) {
+        this.command = command;
+        this.filterName = filterName;
+        this.keys = keys;
+        this.chunkSize = chunkSize;
+        this.chunks = (keys.length + chunkSize - 1) / chunkSize;
+        this.words = new long[(keys.length + 63) >>> 6];
+    }
+
+    static CompletableFuture<StateResults> execute(BiFunction<String, String[], CompletableFuture<StateResults>> command,
+                                                   String filterName, String[] keys,
+                                                   int chunkSize, int maxChunksInFlight) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunkSize has to be at least 1");
+        }
+
+        if (maxChunksInFlight < 1) {
+            throw new IllegalArgumentException("maxChunksInFlight has to be at least 1");
+        }
+
+        if (keys.length <= chunkSize) {
+            return command.apply(filterName, keys);
+        }
+
+        ChunkedStateCommand chunked = new ChunkedStateCommand(command, filterName, keys, chunkSize);
+        for (int i = 0; i < Math.min(maxChunksInFlight, chunked.chunks); i++) {
+            chunked.sendChunks();
+        }
+        return chunked.result;
+    }
+
+    /**
+     * Sends one more chunk, or leaves it to the thread already sending chunks.
+     */
+    private void sendChunks() {
+        if (chunksToSend.getAndIncrement() != 0) {
+            return;
+        }
+
+        do {
+            sendNextChunk();
+        } while (chunksToSend.decrementAndGet() != 0);
+    }
+
+    private void sendNextChunk() {
+        int chunk = nextChunk.getAndIncrement();
+        if (chunk >= chunks || result.isDone()) {
+            return;
+        }
+
+        int from = chunk * chunkSize;
+        int to = Math.min(from + chunkSize, keys.length);
+
+        CompletableFuture<StateResults> chunkResult;
+        try {
+            chunkResult = command.apply(filterName, Arrays.copyOfRange(keys, from, to));
+        } catch (RuntimeException e) {
+            chunkResult = Futures.failed(e);
+        }
+
+        chunkResult.whenComplete((states, err) -> {
+            if (err != null) {
+                // no more chunks are sent once one of them fails
+                result.completeExceptionally(Futures.unwrap(err));
+                return;
+            }
+
+            // chunks do not have to be aligned to words, so concurrent chunks could share one
+            synchronized (words) {
+                states.forEachYes(index -> {
+                    int key = from + index;
+                    words[key >>> 6] |= 1L << key;
+                });
+            }
+
+            if (completedChunks.incrementAndGet() == chunks) {
+                synchronized (words) {
+                    result.complete(new StateResults(words, keys.length));
+                }
+            } else {
+                sendChunks();
+            }
+        });
+    }
+}
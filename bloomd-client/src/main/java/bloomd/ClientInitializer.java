@@ -4,10 +4,6 @@ import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
 import io.netty.channel.ChannelPipeline;
-import io.netty.handler.codec.DelimiterBasedFrameDecoder;
-import io.netty.handler.codec.Delimiters;
-import io.netty.handler.codec.string.StringDecoder;
-import io.netty.handler.codec.string.StringEncoder;
 
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -20,14 +16,20 @@ public class ClientInitializer {
 
     private static final Logger LOG = Logger.getLogger(ClientInitializer.class.getSimpleName());
 
-    private static final StringDecoder DECODER = new StringDecoder();
-    private static final StringEncoder ENCODER = new StringEncoder();
-
     private final Map<Channel, BloomdClient> registry = new ConcurrentHashMap<>();
+    private final FlushPolicy flushPolicy;
+
+    public ClientInitializer() {
+        this(FlushPolicy.DEFAULT);
+    }
+
+    public ClientInitializer(FlushPolicy flushPolicy) {
+        this.flushPolicy = flushPolicy;
+    }
 
     public void initChannel(Channel ch) {
         // associate this new channel with a new BloomdClient implementation
-        BloomdClientImpl bloomdClient = new BloomdClientImpl(ch);
+        BloomdClientImpl bloomdClient = new BloomdClientImpl(ch, flushPolicy);
         bloomdClient.setBlocked(false);
         registry.put(ch, bloomdClient);
 
@@ -43,10 +45,9 @@ public class ClientInitializer {
             }
         });
 
-        // Add the text line codec combination first
-        pipeline.addLast(new DelimiterBasedFrameDecoder(Integer.MAX_VALUE, Delimiters.lineDelimiter()));
-        pipeline.addLast(DECODER);
-        pipeline.addLast(ENCODER);
+        // Split replies into lines first. Lines are handed over as ByteBufs and commands
+        // are encoded by the BloomdHandler itself, so no string codecs are needed
+        pipeline.addLast(new ReplyLineDecoder());
 
         // and then business logic
         pipeline.addLast(bloomdClient.getBloomdHandler());
@@ -0,0 +1,48 @@
+package bloomd;
+
+import java.util.List;
+
+/**
+ * Picks the connection a {@link MultiplexedBloomdClient} sends each command on.
+ */
+public interface ConnectionSelector {
+
+    /**
+     * Load of one of the connections to pick from.
+     */
+    interface ConnectionLoad {
+        /**
+         * @return number of commands sent on the connection that have not been completed yet
+         */
+        int getInFlight();
+
+        /**
+         * @return number of bytes written to the connection that are still waiting to be sent over the network
+         */
+        long getPendingWriteBytes();
+    }
+
+    /**
+     * Called concurrently for every command. If the picked connection turns out to be at its in flight limit,
+     * the command is sent on any other connection with free slots.
+     *
+     * @return the index of the connection to use
+     */
+    int select(List<? extends ConnectionLoad> connections);
+
+    /**
+     * @return a selector that picks the connection with the fewest commands in flight, so a slow command like a
+     * big BULK or LIST only delays the commands that could not be sent anywhere else. Ties are broken by the number
+     * of pending bytes, and then spread among the connections.
+     */
+    static ConnectionSelector leastOutstanding() {
+        return new LeastOutstandingSelector();
+    }
+
+    /**
+     * @return a selector that goes through the connections in order, regardless of their load
+     */
+    static ConnectionSelector roundRobin() {
+        return new RoundRobinSelector();
+    }
+}
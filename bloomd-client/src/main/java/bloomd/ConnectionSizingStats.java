@@ -0,0 +1,82 @@
+package bloomd;
+
+/**
+ * Snapshot of how a {@link MultiplexedBloomdClient} is sizing its connections.
+ */
+public class ConnectionSizingStats {
+
+    private final int connections;
+    private final int minConnections;
+    private final int maxConnections;
+    private final long grows;
+    private final long shrinks;
+    private final double averageInFlight;
+    private final long maxBacklogWaitMicros;
+
+    public ConnectionSizingStats(int connections, int minConnections, int maxConnections, long grows, long shrinks,
+                                 double averageInFlight, long maxBacklogWaitMicros) {
+        this.connections = connections;
+        this.minConnections = minConnections;
+        this.maxConnections = maxConnections;
+        this.grows = grows;
+        this.shrinks = shrinks;
+        this.averageInFlight = averageInFlight;
+        this.maxBacklogWaitMicros = maxBacklogWaitMicros;
+    }
+
+    /**
+     * @return number of connections in use
+     */
+    public int getConnections() {
+        return connections;
+    }
+
+    public int getMinConnections() {
+        return minConnections;
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    /**
+     * @return number of times a connection was added
+     */
+    public long getGrows() {
+        return grows;
+    }
+
+    /**
+     * @return number of times a connection was returned to the pool
+     */
+    public long getShrinks() {
+        return shrinks;
+    }
+
+    /**
+     * @return average number of commands in flight per connection, as of the last evaluation
+     */
+    public double getAverageInFlight() {
+        return averageInFlight;
+    }
+
+    /**
+     * @return longest time a command waited for a free slot during the last evaluation interval
+     */
+    public long getMaxBacklogWaitMicros() {
+        return maxBacklogWaitMicros;
+    }
+
+    @Override
+    public String toString() {
+        return "ConnectionSizingStats{" +
+                "connections=" + connections +
+                ", minConnections=" + minConnections +
+                ", maxConnections=" + maxConnections +
+                ", grows=" + grows +
+                ", shrinks=" + shrinks +
+                ", averageInFlight=" + averageInFlight +
+                ", maxBacklogWaitMicros=" + maxBacklogWaitMicros +
+                '}';
+    }
+}
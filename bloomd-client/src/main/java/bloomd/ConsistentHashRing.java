@@ -0,0 +1,136 @@
+package bloomd;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Immutable consistent hash ring. Every node is placed at {@code virtualNodes} points of a 64 bit ring and a key
+ * belongs to the node of the first point at or after its own hash, wrapping around.
+ * <p>
+ * Points only depend on the name of their node, so adding a node only moves the keys that now fall right before
+ * its points (about {@code 1 / nodes} of them), all of them to the new node, and removing one only moves its own
+ * keys.
+ */
+final class ConsistentHashRing<T> {
+
+    private final int virtualNodes;
+    private final Map<String, T> nodes;
+
+    // sorted hashes of the points and the name of the node of each point
+    private final long[] points;
+    private final String[] owners;
+
+    ConsistentHashRing(int virtualNodes) {
+        this(virtualNodes, Collections.emptyMap());
+    }
+
+    private ConsistentHashRing(int virtualNodes, Map<String, T> nodes) {
+        if (virtualNodes < 1) {
+            throw new IllegalArgumentException("virtualNodes has to be at least 1");
+        }
+
+        this.virtualNodes = virtualNodes;
+        this.nodes = Collections.unmodifiableMap(nodes);
+
+        long[] hashes = new long[nodes.size() * virtualNodes];
+        String[] names = new String[hashes.length];
+        int i = 0;
+        for (String name : nodes.keySet()) {
+            for (int v = 0; v < virtualNodes; v++) {
+                hashes[i] = hash(name + "#" + v);
+                names[i] = name;
+                i++;
+            }
+        }
+
+        // sort the points by hash, keeping their owners along
+        Integer[] order = new Integer[hashes.length];
+        for (int j = 0; j < order.length; j++) {
+            order[j] = j;
+        }
+        Arrays.sort(order, (a, b) -> {
+            int byHash = Long.compare(hashes[a], hashes[b]);
+            // ties are broken by name so that the ring does not depend on the order nodes were added in
+            return byHash != 0 ? byHash : names[a].compareTo(names[b]);
+        });
+
+        this.points = new long[hashes.length];
+        this.owners = new String[hashes.length];
+        for (int j = 0; j < order.length; j++) {
+            points[j] = hashes[order[j]];
+            owners[j] = names[order[j]];
+        }
+    }
+
+    ConsistentHashRing<T> withNode(String name, T node) {
+        if (nodes.containsKey(name)) {
+            throw new IllegalArgumentException("Node already exists: " + name);
+        }
+
+        Map<String, T> updated = new LinkedHashMap<>(nodes);
+        updated.put(name, node);
+        return new ConsistentHashRing<>(virtualNodes, updated);
+    }
+
+    ConsistentHashRing<T> withoutNode(String name) {
+        if (!nodes.containsKey(name)) {
+            throw new IllegalArgumentException("Node does not exist: " + name);
+        }
+
+        Map<String, T> updated = new LinkedHashMap<>(nodes);
+        updated.remove(name);
+        return new ConsistentHashRing<>(virtualNodes, updated);
+    }
+
+    /**
+     * @return the name of the node the key belongs to
+     */
+    String nodeNameFor(String key) {
+        if (points.length == 0) {
+            throw new IllegalStateException("There are no nodes in the ring");
+        }
+
+        long hash = hash(key);
+        int index = Arrays.binarySearch(points, hash);
+        if (index < 0) {
+            index = -index - 1;
+        } else {
+            // several points may share the hash, the first one wins
+            while (index > 0 && points[index - 1] == hash) {
+                index--;
+            }
+        }
+
+        return owners[index == points.length ? 0 : index];
+    }
+
+    T nodeFor(String key) {
+        return nodes.get(nodeNameFor(key));
+    }
+
+    Map<String, T> getNodes() {
+        return nodes;
+    }
+
+    /**
+     * 64 bit FNV-1a of the UTF-8 bytes, followed by the MurmurHash3 finalizer so that keys sharing a prefix,
+     * like the points of a node, spread evenly.
+     */
+    static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
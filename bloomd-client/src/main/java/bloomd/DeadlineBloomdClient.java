@@ -0,0 +1,142 @@
+package bloomd;
+
+import bloomd.args.CreateFilterArgs;
+import bloomd.replies.*;
+import io.netty.util.Timeout;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * View of a {@link BloomdClient} whose commands fail with a {@link TimeoutException} once their deadline expires.
+ * <p>
+ * Deadlines are scheduled on the {@link SharedTimer}, a {@link io.netty.util.HashedWheelTimer} ticking every 10ms, so
+ * they cost a constant time to schedule and cancel whatever the number of commands in flight. Expiring a command
+ * only completes its future: a {@link BloomdClientImpl} does not write commands that expired while waiting to be
+ * written, and reads and discards the reply of those that were already sent, so the connection stays usable.
+ */
+final class DeadlineBloomdClient implements BloomdClient {
+
+    private final BloomdClient delegate;
+    private final long timeoutNanos;
+    private final LongAdder expiredCommands;
+
+    /**
+     * @param expiredCommands incremented every time a command expires, or {@code null}
+     */
+    DeadlineBloomdClient(BloomdClient delegate, long timeoutNanos, LongAdder expiredCommands) {
+        if (timeoutNanos <= 0) {
+            throw new IllegalArgumentException("timeout has to be positive");
+        }
+
+        this.delegate = delegate;
+        this.timeoutNanos = timeoutNanos;
+        this.expiredCommands = expiredCommands;
+    }
+
+    @Override
+    public CompletableFuture<List<BloomdFilter>> list() {
+        return expireAfterTimeout(delegate.list());
+    }
+
+    @Override
+    public CompletableFuture<List<BloomdFilter>> list(String prefix) {
+        return expireAfterTimeout(delegate.list(prefix));
+    }
+
+    @Override
+    public CompletableFuture<CreateResult> create(String filterName) {
+        return expireAfterTimeout(delegate.create(filterName));
+    }
+
+    @Override
+    public CompletableFuture<CreateResult> create(CreateFilterArgs args) {
+        return expireAfterTimeout(delegate.create(args));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> drop(String filterName) {
+        return expireAfterTimeout(delegate.drop(filterName));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> close(String filterName) {
+        return expireAfterTimeout(delegate.close(filterName));
+    }
+
+    @Override
+    public CompletableFuture<ClearResult> clear(String filterName) {
+        return expireAfterTimeout(delegate.clear(filterName));
+    }
+
+    @Override
+    public CompletableFuture<StateResult> check(String filterName, String key) {
+        return expireAfterTimeout(delegate.check(filterName, key));
+    }
+
+    @Override
+    public CompletableFuture<StateResult> set(String filterName, String key) {
+        return expireAfterTimeout(delegate.set(filterName, key));
+    }
+
+    @Override
+    public CompletableFuture<List<StateResult>> multi(String filterName, String... keys) {
+        // expire the future of the command itself rather than the converted one
+        return multiBits(filterName, keys).thenApply(StateResults::asList);
+    }
+
+    @Override
+    public CompletableFuture<StateResults> multiBits(String filterName, String... keys) {
+        return expireAfterTimeout(delegate.multiBits(filterName, keys));
+    }
+
+    @Override
+    public CompletableFuture<List<StateResult>> bulk(String filterName, String... keys) {
+        return bulkBits(filterName, keys).thenApply(StateResults::asList);
+    }
+
+    @Override
+    public CompletableFuture<StateResults> bulkBits(String filterName, String... keys) {
+        return expireAfterTimeout(delegate.bulkBits(filterName, keys));
+    }
+
+    @Override
+    public CompletableFuture<BloomdInfo> info(String filterName) {
+        return expireAfterTimeout(delegate.info(filterName));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> flush(String filterName) {
+        return expireAfterTimeout(delegate.flush(filterName));
+    }
+
+    @Override
+    public BloomdClient withTimeout(long timeout, TimeUnit unit) {
+        return new DeadlineBloomdClient(delegate, unit.toNanos(timeout), expiredCommands);
+    }
+
+    private <T> CompletableFuture<T> expireAfterTimeout(CompletableFuture<T> future) {
+        if (future.isDone()) {
+            return future;
+        }
+
+        Timeout deadline = SharedTimer.TIMER.newTimeout(ignore -> {
+            TimeoutException timeout = new TimeoutException(
+                    "No reply after " + TimeUnit.NANOSECONDS.toMillis(timeoutNanos) + "ms");
+            // counted before completing so that callers see the count once their future fails
+            if (expiredCommands != null) {
+                expiredCommands.increment();
+            }
+
+            if (!future.completeExceptionally(timeout) && expiredCommands != null) {
+                expiredCommands.decrement();
+            }
+        }, timeoutNanos, TimeUnit.NANOSECONDS);
+
+        future.whenComplete((result, err) -> deadline.cancel());
+        return future;
+    }
+}
@@ -0,0 +1,55 @@
+package bloomd;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Controls how writes to a connection are coalesced into flushes, i.e. syscalls.
+ * <p>
+ * Commands written to a connection are flushed once {@code maxPendingWrites} of them are pending, or at the
+ * latest {@code maxDelay} after the first of them was written. A delay of zero flushes at the end of the
+ * current event loop tick, which coalesces all the commands submitted concurrently without adding latency.
+ */
+public class FlushPolicy {
+
+    /**
+     * Flushes at the end of every event loop tick, in batches of at most 128 commands.
+     */
+    public static final FlushPolicy DEFAULT = new FlushPolicy(128, 0, TimeUnit.NANOSECONDS);
+
+    /**
+     * Flushes every command as soon as it is written.
+     */
+    public static final FlushPolicy IMMEDIATE = new FlushPolicy(1, 0, TimeUnit.NANOSECONDS);
+
+    private final int maxPendingWrites;
+    private final long maxDelayNanos;
+
+    public FlushPolicy(int maxPendingWrites, long maxDelay, TimeUnit unit) {
+        if (maxPendingWrites < 1) {
+            throw new IllegalArgumentException("maxPendingWrites has to be at least 1");
+        }
+
+        if (maxDelay < 0) {
+            throw new IllegalArgumentException("maxDelay can not be negative");
+        }
+
+        this.maxPendingWrites = maxPendingWrites;
+        this.maxDelayNanos = unit.toNanos(maxDelay);
+    }
+
+    public int getMaxPendingWrites() {
+        return maxPendingWrites;
+    }
+
+    public long getMaxDelayNanos() {
+        return maxDelayNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "FlushPolicy{" +
+                "maxPendingWrites=" + maxPendingWrites +
+                ", maxDelayNanos=" + maxDelayNanos +
+                '}';
+    }
+}
@@ -0,0 +1,30 @@
+package bloomd;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Helpers to deal with {@link CompletableFuture}s.
+ */
+final class Futures {
+
+    private Futures() {
+    }
+
+    static <T> CompletableFuture<T> failed(Throwable cause) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(cause);
+        return future;
+    }
+
+    /**
+     * @return the actual cause of a failure reported by a composed future
+     */
+    static Throwable unwrap(Throwable err) {
+        while ((err instanceof CompletionException || err instanceof ExecutionException) && err.getCause() != null) {
+            err = err.getCause();
+        }
+        return err;
+    }
+}
@@ -0,0 +1,389 @@
+package bloomd;
+
+import bloomd.args.CreateFilterArgs;
+import bloomd.replies.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * {@link BloomdClient} backing some logical filters with several physical filters, {@code name.0} to
+ * {@code name.K-1}, so that a single hot filter is not limited by what one bloomd filter can take. Every key
+ * belongs to one shard, picked by hashing the key, so a key is always set and checked on the same physical filter.
+ * <p>
+ * MULTI and BULK commands are split per shard, sent in parallel and their results put back in the order of the
+ * keys. Commands on the whole filter (create, drop, clear, ...) are sent to every shard and their results combined,
+ * as are {@link #info(String)} and the entries of {@link #list()}. Filters that are not sharded are passed through.
+ * <p>
+ * Shards are plain filters of the underlying client, so wrapping a {@link ShardedBloomdClient} spreads the shards
+ * of a filter over several servers. The number of shards of a filter can not change once it has been created,
+ * since keys would then map to other shards.
+ * <p>
+ * The capacity given to {@link #create(CreateFilterArgs)} is divided among the shards, but every shard gets at
+ * least {@value #MIN_SHARD_CAPACITY}, the lowest capacity {@link CreateFilterArgs} accepts. A filter with less
+ * than {@code shards * MIN_SHARD_CAPACITY} capacity therefore takes more memory, and has a lower false positive
+ * rate, than the same filter without shards.
+ */
+public class KeyShardedBloomdClient implements BloomdClient {
+
+    public static final int MIN_SHARD_CAPACITY = 100_000;
+
+    private final BloomdClient client;
+    private final Map<String, Integer> shardsByFilter;
+
+    private KeyShardedBloomdClient(Builder builder) {
+        this.client = builder.client;
+        this.shardsByFilter = new HashMap<>(builder.shardsByFilter);
+    }
+
+    @Override
+    public CompletableFuture<List<BloomdFilter>> list() {
+        return list("");
+    }
+
+    @Override
+    public CompletableFuture<List<BloomdFilter>> list(String prefix) {
+        return client.list(prefix).thenApply(this::mergeShards);
+    }
+
+    @Override
+    public CompletableFuture<CreateResult> create(String filterName) {
+        return create(new CreateFilterArgs.Builder().setFilterName(filterName).build());
+    }
+
+    @Override
+    public CompletableFuture<CreateResult> create(CreateFilterArgs args) {
+        int shards = shardsOf(args.getFilterName());
+        if (shards == 0) {
+            return client.create(args);
+        }
+
+        // the capacity is split among the shards, which keeps the same memory and false positive rate overall only
+        // while every shard gets at least the min capacity, see the class doc
+        Integer capacity = args.getCapacity() == null
+                ? null
+                : Math.max(MIN_SHARD_CAPACITY, ceilDiv(args.getCapacity(), shards));
+        return allShards(args.getFilterName(), shards, shardName -> client.create(new CreateFilterArgs.Builder()
+                .setFilterName(shardName)
+                .setCapacity(capacity)
+                .setProb(args.getFalsePositiveProbability())
+                .setInMemory(args.getInMemory())
+                .build()))
+                .thenApply(results -> {
+                    if (results.contains(CreateResult.DELETE_IN_PROGRESS)) {
+                        return CreateResult.DELETE_IN_PROGRESS;
+                    }
+                    // only reported as existing if no shard was missing
+                    return results.contains(CreateResult.DONE) ? CreateResult.DONE : CreateResult.EXISTS;
+                });
+    }
+
+    @Override
+    public CompletableFuture<Boolean> drop(String filterName) {
+        return onAllShards(filterName, client::drop, KeyShardedBloomdClient::allTrue);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> close(String filterName) {
+        return onAllShards(filterName, client::close, KeyShardedBloomdClient::allTrue);
+    }
+
+    @Override
+    public CompletableFuture<ClearResult> clear(String filterName) {
+        return onAllShards(filterName, client::clear, results -> {
+            if (results.contains(ClearResult.FILTER_DOES_NOT_EXISTS)) {
+                return ClearResult.FILTER_DOES_NOT_EXISTS;
+            }
+            return results.contains(ClearResult.CANNOT_CLEAR) ? ClearResult.CANNOT_CLEAR : ClearResult.CLEARED;
+        });
+    }
+
+    @Override
+    public CompletableFuture<StateResult> check(String filterName, String key) {
+        return client.check(physicalFilterOf(filterName, key), key);
+    }
+
+    @Override
+    public CompletableFuture<StateResult> set(String filterName, String key) {
+        return client.set(physicalFilterOf(filterName, key), key);
+    }
+
+    @Override
+    public CompletableFuture<List<StateResult>> multi(String filterName, String... keys) {
+        return multiBits(filterName, keys).thenApply(StateResults::asList);
+    }
+
+    @Override
+    public CompletableFuture<StateResults> multiBits(String filterName, String... keys) {
+        return splitByShard(client::multiBits, filterName, keys);
+    }
+
+    @Override
+    public CompletableFuture<List<StateResult>> bulk(String filterName, String... keys) {
+        return bulkBits(filterName, keys).thenApply(StateResults::asList);
+    }
+
+    @Override
+    public CompletableFuture<StateResults> bulkBits(String filterName, String... keys) {
+        return splitByShard(client::bulkBits, filterName, keys);
+    }
+
+    @Override
+    public CompletableFuture<BloomdInfo> info(String filterName) {
+        return onAllShards(filterName, client::info, infos -> {
+            long capacity = 0, checks = 0, checkHits = 0, checkMisses = 0, pageIns = 0, pageOuts = 0;
+            long sets = 0, setHits = 0, setMisses = 0, size = 0, storage = 0;
+            boolean inMemory = true;
+            float probability = 0;
+
+            for (BloomdInfo info : infos) {
+                capacity += info.getCapacity();
+                checks += info.getChecks();
+                checkHits += info.getCheckHits();
+                checkMisses += info.getCheckMisses();
+                inMemory &= info.isInMemory();
+                pageIns += info.getPageIns();
+                pageOuts += info.getPageOuts();
+                // every key is only ever checked against one shard
+                probability = Math.max(probability, info.getProbability());
+                sets += info.getSets();
+                setHits += info.getSetHits();
+                setMisses += info.getSetMisses();
+                size += info.getSize();
+                storage += info.getStorage();
+            }
+
+            return new BloomdInfo(capacity, checks, checkHits, checkMisses, inMemory, pageIns, pageOuts,
+                                  probability, sets, setHits, setMisses, size, storage);
+        });
+    }
+
+    @Override
+    public CompletableFuture<Boolean> flush(String filterName) {
+        return onAllShards(filterName, client::flush, KeyShardedBloomdClient::allTrue);
+    }
+
+    /**
+     * @return the number of shards of the filter, or 0 if it is not sharded
+     */
+    public int shardsOf(String filterName) {
+        Integer shards = shardsByFilter.get(filterName);
+        return shards == null ? 0 : shards;
+    }
+
+    /**
+     * @return the name of the physical filter the key of the given filter lives in
+     */
+    public String physicalFilterOf(String filterName, String key) {
+        int shards = shardsOf(filterName);
+        return shards == 0 ? filterName : shardName(filterName, shardOf(key, shards));
+    }
+
+    /**
+     * Maps the key to a shard using {@link String#hashCode()}, which is the same on every JVM, mixed with the
+     * MurmurHash3 finalizer and scaled to the number of shards with a multiplication instead of a division.
+     */
+    static int shardOf(String key, int shards) {
+        int hash = key.hashCode();
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        hash ^= hash >>> 16;
+        return (int) (((hash & 0xffffffffL) * shards) >>> 32);
+    }
+
+    private static String shardName(String filterName, int shard) {
+        return filterName + "." + shard;
+    }
+
+    private CompletableFuture<StateResults> splitByShard(
+            BiFunction<String, String[], CompletableFuture<StateResults>> command, String filterName, String[] keys) {
+        int shards = shardsOf(filterName);
+        if (shards == 0) {
+            return command.apply(filterName, keys);
+        }
+
+        // index of every key in each shard, in order
+        int[] shardOfKey = new int[keys.length];
+        int[] keysPerShard = new int[shards];
+        for (int i = 0; i < keys.length; i++) {
+            shardOfKey[i] = shardOf(keys[i], shards);
+            keysPerShard[shardOfKey[i]]++;
+        }
+
+        String[][] shardKeys = new String[shards][];
+        int[][] shardIndexes = new int[shards][];
+        for (int shard = 0; shard < shards; shard++) {
+            shardKeys[shard] = new String[keysPerShard[shard]];
+            shardIndexes[shard] = new int[keysPerShard[shard]];
+        }
+
+        int[] filled = new int[shards];
+        for (int i = 0; i < keys.length; i++) {
+            int shard = shardOfKey[i];
+            shardKeys[shard][filled[shard]] = keys[i];
+            shardIndexes[shard][filled[shard]++] = i;
+        }
+
+        List<CompletableFuture<StateResults>> results = new ArrayList<>(shards);
+        List<int[]> indexes = new ArrayList<>(shards);
+        for (int shard = 0; shard < shards; shard++) {
+            if (shardKeys[shard].length > 0) {
+                results.add(command.apply(shardName(filterName, shard), shardKeys[shard]));
+                indexes.add(shardIndexes[shard]);
+            }
+        }
+
+        if (results.size() == 1) {
+            // all the keys are in the same shard, so their results are already in order
+            return results.get(0);
+        }
+
+        return CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[results.size()]))
+                .thenApply(done -> {
+                    long[] words = new long[(keys.length + 63) >>> 6];
+                    for (int i = 0; i < results.size(); i++) {
+                        int[] shardIndex = indexes.get(i);
+                        results.get(i).join().forEachYes(index -> {
+                            int key = shardIndex[index];
+                            words[key >>> 6] |= 1L << key;
+                        });
+                    }
+                    return new StateResults(words, keys.length);
+                });
+    }
+
+    private <T, R> CompletableFuture<R> onAllShards(String filterName,
+                                                     Function<String, CompletableFuture<T>> command,
+                                                     Function<List<T>, R> combine) {
+        int shards = shardsOf(filterName);
+        if (shards == 0) {
+            return command.apply(filterName).thenApply(result -> {
+                List<T> single = new ArrayList<>(1);
+                single.add(result);
+                return combine.apply(single);
+            });
+        }
+
+        return allShards(filterName, shards, command).thenApply(combine);
+    }
+
+    private <T> CompletableFuture<List<T>> allShards(String filterName, int shards,
+                                                     Function<String, CompletableFuture<T>> command) {
+        List<CompletableFuture<T>> results = new ArrayList<>(shards);
+        for (int shard = 0; shard < shards; shard++) {
+            results.add(command.apply(shardName(filterName, shard)));
+        }
+
+        return CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[shards]))
+                .thenApply(done -> {
+                    List<T> values = new ArrayList<>(shards);
+                    for (CompletableFuture<T> result : results) {
+                        values.add(result.join());
+                    }
+                    return values;
+                });
+    }
+
+    /**
+     * Replaces the shards of every sharded filter by a single entry for the logical filter.
+     */
+    private List<BloomdFilter> mergeShards(List<BloomdFilter> filters) {
+        Map<String, BloomdFilter> merged = new LinkedHashMap<>();
+        for (BloomdFilter filter : filters) {
+            String name = filter.getFilterName();
+            String logicalName = logicalNameOf(name);
+            if (logicalName == null) {
+                merged.put(name, filter);
+                continue;
+            }
+
+            BloomdFilter current = merged.get(logicalName);
+            merged.put(logicalName, current == null
+                    ? new BloomdFilter(logicalName, filter.getFalsePositiveProbability(), filter.getSizeBytes(),
+                                       filter.getCapacity(), filter.getSize())
+                    : new BloomdFilter(logicalName,
+                                       Math.max(current.getFalsePositiveProbability(), filter.getFalsePositiveProbability()),
+                                       current.getSizeBytes() + filter.getSizeBytes(),
+                                       current.getCapacity() + filter.getCapacity(),
+                                       current.getSize() + filter.getSize()));
+        }
+        return new ArrayList<>(merged.values());
+    }
+
+    /**
+     * @return the name of the sharded filter the physical filter is a shard of, or null
+     */
+    private String logicalNameOf(String physicalName) {
+        int dot = physicalName.lastIndexOf('.');
+        if (dot < 0) {
+            return null;
+        }
+
+        String logicalName = physicalName.substring(0, dot);
+        int shards = shardsOf(logicalName);
+        if (shards == 0) {
+            return null;
+        }
+
+        try {
+            int shard = Integer.parseInt(physicalName.substring(dot + 1));
+            return shard >= 0 && shard < shards ? logicalName : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static boolean allTrue(List<Boolean> results) {
+        return !results.contains(Boolean.FALSE);
+    }
+
+    private static int ceilDiv(int value, int divisor) {
+        return (int) ((value + (long) divisor - 1) / divisor);
+    }
+
+    public static class Builder {
+        private BloomdClient client;
+        private final Map<String, Integer> shardsByFilter = new HashMap<>();
+
+        /**
+         * The client the physical filters are accessed through, for instance a {@link ShardedBloomdClient} to
+         * spread them over several servers.
+         */
+        public Builder setClient(BloomdClient client) {
+            this.client = client;
+            return this;
+        }
+
+        /**
+         * Backs the filter with {@code shards} physical filters named {@code filterName.0} to
+         * {@code filterName.<shards - 1>}.
+         */
+        public Builder addShardedFilter(String filterName, int shards) {
+            if (filterName == null || filterName.trim().isEmpty()) {
+                throw new IllegalArgumentException("Invalid filter name: " + filterName);
+            }
+
+            if (shards < 1) {
+                throw new IllegalArgumentException("shards has to be at least 1");
+            }
+
+            shardsByFilter.put(filterName, shards);
+            return this;
+        }
+
+        public KeyShardedBloomdClient build() {
+            if (client == null) {
+                throw new IllegalArgumentException("A client is required");
+            }
+            return new KeyShardedBloomdClient(this);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package bloomd;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @see ConnectionSelector#leastOutstanding()
+ */
+class LeastOutstandingSelector implements ConnectionSelector {
+
+    // where scans start, so idle connections are used evenly
+    private final AtomicInteger nextStart = new AtomicInteger();
+
+    @Override
+    public int select(List<? extends ConnectionLoad> connections) {
+        int size = connections.size();
+        int start = Math.floorMod(nextStart.getAndIncrement(), size);
+
+        int selected = start;
+        int leastInFlight = Integer.MAX_VALUE;
+        long leastPendingBytes = Long.MAX_VALUE;
+        for (int i = 0; i < size; i++) {
+            int index = start + i < size ? start + i : start + i - size;
+            ConnectionLoad connection = connections.get(index);
+
+            int inFlight = connection.getInFlight();
+            if (inFlight > leastInFlight) {
+                continue;
+            }
+
+            // pending bytes are only looked at to break ties, reading them is not free
+            long pendingBytes = inFlight == 0 ? 0 : connection.getPendingWriteBytes();
+            if (inFlight < leastInFlight || pendingBytes < leastPendingBytes) {
+                selected = index;
+                leastInFlight = inFlight;
+                leastPendingBytes = pendingBytes;
+
+                if (inFlight == 0) {
+                    break;
+                }
+            }
+        }
+        return selected;
+    }
+}
@@ -0,0 +1,566 @@
+package bloomd;
+
+import bloomd.args.CreateFilterArgs;
+import bloomd.replies.*;
+
+import io.netty.util.concurrent.GlobalEventExecutor;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.RandomAccess;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * {@link BloomdClient} that shares a small set of connections among all its callers.
+ * <p>
+ * bloomd replies to commands in the order they were received, so there is no need to lease a connection per
+ * operation: commands from every caller are pipelined on the connections taken from the {@link BloomdClientPool},
+ * up to {@code maxInFlightPerConnection} commands per connection. Commands submitted while every connection is
+ * at its limit wait in a backlog until a reply frees a slot.
+ * <p>
+ * The connection of each command is picked by a {@link ConnectionSelector}, by default the one with the fewest
+ * commands in flight.
+ * <p>
+ * Clients created through the {@link Builder} can adapt the number of connections they use between a min and
+ * a max: a connection is added when commands pile up on the existing ones or wait too long for a free slot, and
+ * returned to the pool once it has been idle for a while. See {@link #getSizingStats()}.
+ * <p>
+ * Commands sent concurrently may end up on different connections, so wait for a command to complete before
+ * sending another one that depends on it.
+ */
+public class MultiplexedBloomdClient implements BloomdClient {
+
+    private static final int RETIRED = -1;
+
+    private final BloomdClientPool pool;
+    private final int maxInFlightPerConnection;
+    private final ConnectionSelector selector;
+    private final Queue<Consumer<Connection>> backlog = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger drainers = new AtomicInteger();
+
+    // every connection this client can grow to, of which only the first activeConnections are used
+    private final List<Connection> connections;
+    private final List<Connection> active = new ActiveConnections();
+    private volatile int activeConnections;
+
+    private final int minConnections;
+    private final int growInFlightThreshold;
+    private final long growBacklogWaitNanos;
+    private final long shrinkIdleNanos;
+    private final LongAccumulator maxBacklogWaitNanos = new LongAccumulator(Math::max, 0);
+    private final AtomicLong grows = new AtomicLong();
+    private final AtomicLong shrinks = new AtomicLong();
+    private final LongAdder expiredCommands = new LongAdder();
+    private volatile double lastAverageInFlight;
+    private volatile long lastMaxBacklogWaitNanos;
+    private final ScheduledFuture<?> sizing;
+
+    public MultiplexedBloomdClient(BloomdClientPool pool, int connections, int maxInFlightPerConnection) {
+        this(pool, connections, maxInFlightPerConnection, ConnectionSelector.leastOutstanding());
+    }
+
+    public MultiplexedBloomdClient(BloomdClientPool pool, int connections, int maxInFlightPerConnection,
+                                   ConnectionSelector selector) {
+        this(new Builder()
+                .setPool(pool)
+                .setConnections(connections, connections)
+                .setMaxInFlightPerConnection(maxInFlightPerConnection)
+                .setSelector(selector));
+    }
+
+    private MultiplexedBloomdClient(Builder builder) {
+        this.pool = builder.pool;
+        this.maxInFlightPerConnection = builder.maxInFlightPerConnection;
+        this.selector = builder.selector;
+        this.minConnections = builder.minConnections;
+        this.growInFlightThreshold = builder.growInFlightThreshold;
+        this.growBacklogWaitNanos = builder.growBacklogWaitNanos;
+        this.shrinkIdleNanos = builder.shrinkIdleNanos;
+
+        this.connections = new ArrayList<>(builder.maxConnections);
+        for (int i = 0; i < builder.maxConnections; i++) {
+            Connection connection = new Connection();
+            if (i >= minConnections) {
+                connection.inFlight.set(RETIRED);
+            }
+            this.connections.add(connection);
+        }
+        this.activeConnections = minConnections;
+
+        if (minConnections < builder.maxConnections) {
+            long interval = builder.evaluationIntervalNanos;
+            sizing = builder.scheduler.scheduleWithFixedDelay(this::resize, interval, interval, TimeUnit.NANOSECONDS);
+        } else {
+            sizing = null;
+        }
+    }
+
+    @Override
+    public CompletableFuture<List<BloomdFilter>> list() {
+        return execute(BloomdClientImpl::list);
+    }
+
+    @Override
+    public CompletableFuture<List<BloomdFilter>> list(String prefix) {
+        return execute(client -> client.list(prefix));
+    }
+
+    @Override
+    public CompletableFuture<CreateResult> create(String filterName) {
+        return execute(client -> client.create(filterName));
+    }
+
+    @Override
+    public CompletableFuture<CreateResult> create(CreateFilterArgs args) {
+        return execute(client -> client.create(args));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> drop(String filterName) {
+        return execute(client -> client.drop(filterName));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> close(String filterName) {
+        return execute(client -> client.close(filterName));
+    }
+
+    @Override
+    public CompletableFuture<ClearResult> clear(String filterName) {
+        return execute(client -> client.clear(filterName));
+    }
+
+    @Override
+    public CompletableFuture<StateResult> check(String filterName, String key) {
+        return execute(client -> client.check(filterName, key));
+    }
+
+    @Override
+    public CompletableFuture<StateResult> set(String filterName, String key) {
+        return execute(client -> client.set(filterName, key));
+    }
+
+    @Override
+    public CompletableFuture<List<StateResult>> multi(String filterName, String... keys) {
+        return multiBits(filterName, keys).thenApply(StateResults::asList);
+    }
+
+    @Override
+    public CompletableFuture<StateResults> multiBits(String filterName, String... keys) {
+        return execute(client -> client.multiBits(filterName, keys));
+    }
+
+    @Override
+    public CompletableFuture<List<StateResult>> bulk(String filterName, String... keys) {
+        return bulkBits(filterName, keys).thenApply(StateResults::asList);
+    }
+
+    @Override
+    public CompletableFuture<StateResults> bulkBits(String filterName, String... keys) {
+        return execute(client -> client.bulkBits(filterName, keys));
+    }
+
+    @Override
+    public CompletableFuture<BloomdInfo> info(String filterName) {
+        return execute(client -> client.info(filterName));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> flush(String filterName) {
+        return execute(client -> client.flush(filterName));
+    }
+
+    /**
+     * Commands of the returned view that expire while waiting in the backlog are not sent at all.
+     */
+    @Override
+    public BloomdClient withTimeout(long timeout, TimeUnit unit) {
+        return new DeadlineBloomdClient(this, unit.toNanos(timeout), expiredCommands);
+    }
+
+    /**
+     * @return number of commands sent through {@link #withTimeout(long, TimeUnit)} views whose deadline expired
+     */
+    public long getExpiredCommands() {
+        return expiredCommands.sum();
+    }
+
+    public BloomdClientPool getPool() {
+        return pool;
+    }
+
+    /**
+     * @return the number of connections currently in use and how they were resized
+     */
+    public ConnectionSizingStats getSizingStats() {
+        return new ConnectionSizingStats(activeConnections, minConnections, connections.size(), grows.get(),
+                shrinks.get(), lastAverageInFlight, lastMaxBacklogWaitNanos / 1_000);
+    }
+
+    /**
+     * Returns the connections held by this client to the pool. Commands still in flight are not affected.
+     */
+    public CompletableFuture<Void> release() {
+        if (sizing != null) {
+            sizing.cancel(false);
+        }
+
+        List<CompletableFuture<Void>> releases = new ArrayList<>();
+        for (Connection connection : connections) {
+            releases.add(connection.release());
+        }
+        return CompletableFuture.allOf(releases.toArray(new CompletableFuture<?>[releases.size()]));
+    }
+
+    private <T> CompletableFuture<T> execute(Function<BloomdClientImpl, CompletableFuture<T>> command) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+
+        // commands already waiting go first
+        Connection connection = backlog.isEmpty() ? reserve() : null;
+        if (connection != null) {
+            dispatch(connection, command, result);
+        } else {
+            long queuedAt = System.nanoTime();
+            backlog.add(reservedConnection -> {
+                maxBacklogWaitNanos.accumulate(System.nanoTime() - queuedAt);
+                dispatch(reservedConnection, command, result);
+            });
+            drainBacklog();
+        }
+
+        return result;
+    }
+
+    /**
+     * Dispatches backlogged commands while there are free slots. Only one thread drains at a time, which also
+     * keeps commands failing synchronously from recursing through here; calls made while another thread is
+     * draining make that thread go through the backlog once more.
+     */
+    private void drainBacklog() {
+        if (drainers.getAndIncrement() != 0) {
+            return;
+        }
+
+        int missed = 1;
+        do {
+            while (!backlog.isEmpty()) {
+                Connection connection = reserve();
+                if (connection == null) {
+                    // a slot will be freed by a command in flight, which drains the backlog again
+                    break;
+                }
+
+                Consumer<Connection> task = backlog.poll();
+                if (task == null) {
+                    connection.inFlight.decrementAndGet();
+                    break;
+                }
+
+                task.accept(connection);
+            }
+
+            missed = drainers.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    /**
+     * Reserves a slot on the connection picked by the selector or, if it is at its in flight limit, on the
+     * next connection that is not.
+     */
+    private Connection reserve() {
+        int size = activeConnections;
+        int selected = selector.select(active);
+        for (int i = 0; i < size; i++) {
+            Connection connection = connections.get((selected + i) % size);
+            if (connection.tryReserve()) {
+                return connection;
+            }
+        }
+        return null;
+    }
+
+    private <T> void dispatch(Connection connection,
+                              Function<BloomdClientImpl, CompletableFuture<T>> command,
+                              CompletableFuture<T> result) {
+        if (result.isDone()) {
+            // expired or cancelled while in the backlog
+            connection.inFlight.decrementAndGet();
+            drainBacklog();
+            return;
+        }
+
+        connection.lastUsedNanos = System.nanoTime();
+
+        CompletableFuture<BloomdClientImpl> client;
+        try {
+            client = connection.client();
+        } catch (RuntimeException e) {
+            client = Futures.failed(e);
+        }
+
+        client.thenCompose(command)
+                .whenComplete((reply, err) -> {
+                    connection.inFlight.decrementAndGet();
+                    drainBacklog();
+
+                    if (err != null) {
+                        result.completeExceptionally(Futures.unwrap(err));
+                    } else {
+                        result.complete(reply);
+                    }
+                });
+    }
+
+    /**
+     * Grows by one connection when the connections are too busy, or shrinks by one when the last one has been idle
+     * for long enough. Runs periodically on the scheduler.
+     */
+    private synchronized void resize() {
+        int size = activeConnections;
+
+        long totalInFlight = 0;
+        for (int i = 0; i < size; i++) {
+            totalInFlight += Math.max(0, connections.get(i).inFlight.get());
+        }
+        double averageInFlight = (double) totalInFlight / size;
+        long backlogWaitNanos = maxBacklogWaitNanos.getThenReset();
+        lastAverageInFlight = averageInFlight;
+        lastMaxBacklogWaitNanos = backlogWaitNanos;
+
+        if (averageInFlight >= growInFlightThreshold || backlogWaitNanos >= growBacklogWaitNanos) {
+            if (size < connections.size()) {
+                connections.get(size).inFlight.set(0);
+                activeConnections = size + 1;
+                grows.incrementAndGet();
+                drainBacklog();
+            }
+            return;
+        }
+
+        if (size > minConnections) {
+            Connection last = connections.get(size - 1);
+            // retiring the connection only succeeds if there are no commands in flight, and no more can be reserved
+            if (System.nanoTime() - last.lastUsedNanos >= shrinkIdleNanos && last.inFlight.compareAndSet(0, RETIRED)) {
+                activeConnections = size - 1;
+                shrinks.incrementAndGet();
+                last.release();
+            }
+        }
+    }
+
+    /**
+     * The connections in use, as seen by the {@link ConnectionSelector}.
+     */
+    private class ActiveConnections extends AbstractList<Connection> implements RandomAccess {
+        @Override
+        public Connection get(int index) {
+            return connections.get(index);
+        }
+
+        @Override
+        public int size() {
+            return activeConnections;
+        }
+    }
+
+    private class Connection implements ConnectionSelector.ConnectionLoad {
+        // RETIRED while the connection is not in use
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private volatile long lastUsedNanos = System.nanoTime();
+        private volatile CompletableFuture<BloomdClientImpl> client;
+        private final Lock lock = new ReentrantLock();
+
+        @Override
+        public int getInFlight() {
+            int current = inFlight.get();
+            return current == RETIRED ? Integer.MAX_VALUE : current;
+        }
+
+        @Override
+        public long getPendingWriteBytes() {
+            CompletableFuture<BloomdClientImpl> current = client;
+            return current != null && current.isDone() && !current.isCompletedExceptionally()
+                    ? current.join().getPendingWriteBytes()
+                    : 0;
+        }
+
+        boolean tryReserve() {
+            int current;
+            do {
+                current = inFlight.get();
+                if (current >= maxInFlightPerConnection || current == RETIRED) {
+                    return false;
+                }
+            } while (!inFlight.compareAndSet(current, current + 1));
+            return true;
+        }
+
+        /**
+         * @return the client of this connection, acquiring a new one from the pool if it was dropped
+         */
+        CompletableFuture<BloomdClientImpl> client() {
+            // connected clients are returned without locking, callers may be virtual threads
+            CompletableFuture<BloomdClientImpl> current = client;
+            if (current != null && (!current.isDone() || isUsable(current))) {
+                return current;
+            }
+
+            lock.lock();
+            try {
+                if (client != null && client.isDone() && !isUsable(client)) {
+                    if (!client.isCompletedExceptionally()) {
+                        // the pool closes inactive channels on release
+                        pool.release(client.join());
+                    }
+                    client = null;
+                }
+
+                if (client == null) {
+                    client = pool.acquire().thenApply(BloomdClientImpl.class::cast);
+                }
+
+                return client;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private boolean isUsable(CompletableFuture<BloomdClientImpl> client) {
+            return !client.isCompletedExceptionally() && client.join().getChannel().isActive();
+        }
+
+        CompletableFuture<Void> release() {
+            CompletableFuture<BloomdClientImpl> current;
+            lock.lock();
+            try {
+                current = client;
+                client = null;
+            } finally {
+                lock.unlock();
+            }
+
+            if (current == null) {
+                return CompletableFuture.completedFuture(null);
+            }
+
+            return current.handle((bloomdClient, err) -> bloomdClient)
+                    .thenCompose(bloomdClient -> bloomdClient == null
+                            ? CompletableFuture.completedFuture(null)
+                            : pool.release(bloomdClient));
+        }
+    }
+
+    public static class Builder {
+        private BloomdClientPool pool;
+        private int minConnections = 1;
+        private int maxConnections = 1;
+        private int maxInFlightPerConnection = 128;
+        private ConnectionSelector selector = ConnectionSelector.leastOutstanding();
+        private int growInFlightThreshold = 32;
+        private long growBacklogWaitNanos = TimeUnit.MILLISECONDS.toNanos(1);
+        private long shrinkIdleNanos = TimeUnit.SECONDS.toNanos(30);
+        private long evaluationIntervalNanos = TimeUnit.MILLISECONDS.toNanos(100);
+        private ScheduledExecutorService scheduler = GlobalEventExecutor.INSTANCE;
+
+        public Builder setPool(BloomdClientPool pool) {
+            this.pool = pool;
+            return this;
+        }
+
+        /**
+         * The client starts with {@code min} connections and adds more, up to {@code max}, while they are busy.
+         * The pool needs to allow at least {@code max} connections.
+         */
+        public Builder setConnections(int min, int max) {
+            if (min < 1 || max < min) {
+                throw new IllegalArgumentException("Connections have to satisfy 1 <= min <= max");
+            }
+            this.minConnections = min;
+            this.maxConnections = max;
+            return this;
+        }
+
+        public Builder setMaxInFlightPerConnection(int maxInFlightPerConnection) {
+            if (maxInFlightPerConnection < 1) {
+                throw new IllegalArgumentException("maxInFlightPerConnection has to be at least 1");
+            }
+            this.maxInFlightPerConnection = maxInFlightPerConnection;
+            return this;
+        }
+
+        public Builder setSelector(ConnectionSelector selector) {
+            this.selector = selector;
+            return this;
+        }
+
+        /**
+         * A connection is added when the average number of commands in flight per connection reaches this value.
+         */
+        public Builder setGrowInFlightThreshold(int growInFlightThreshold) {
+            if (growInFlightThreshold < 1) {
+                throw new IllegalArgumentException("growInFlightThreshold has to be at least 1");
+            }
+            this.growInFlightThreshold = growInFlightThreshold;
+            return this;
+        }
+
+        /**
+         * A connection is added when a command waited this long for a free slot on the connections.
+         */
+        public Builder setGrowBacklogWait(long wait, TimeUnit unit) {
+            this.growBacklogWaitNanos = unit.toNanos(wait);
+            return this;
+        }
+
+        /**
+         * A connection is returned to the pool once it was not used for this long, as long as there are more than
+         * the min connections.
+         */
+        public Builder setShrinkIdleTime(long idleTime, TimeUnit unit) {
+            this.shrinkIdleNanos = unit.toNanos(idleTime);
+            return this;
+        }
+
+        /**
+         * How often the connections are resized, by at most one connection each time.
+         */
+        public Builder setEvaluationInterval(long interval, TimeUnit unit) {
+            if (interval < 1) {
+                throw new IllegalArgumentException("interval has to be positive");
+            }
+            this.evaluationIntervalNanos = unit.toNanos(interval);
+            return this;
+        }
+
+        public Builder setScheduler(ScheduledExecutorService scheduler) {
+            this.scheduler = scheduler;
+            return this;
+        }
+
+        public MultiplexedBloomdClient build() {
+            if (pool == null) {
+                throw new IllegalArgumentException("A pool is required");
+            }
+
+            if (selector == null || scheduler == null) {
+                throw new IllegalArgumentException("selector and scheduler can not be null");
+            }
+
+            return new MultiplexedBloomdClient(this);
+        }
+    }
+}
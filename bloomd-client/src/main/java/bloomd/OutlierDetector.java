@@ -0,0 +1,407 @@
+package bloomd;
+
+import io.netty.util.concurrent.GlobalEventExecutor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.logging.Logger;
+
+/**
+ * Tracks the health of the endpoints (servers) of a multi-endpoint client and temporarily ejects the outliers, so
+ * that traffic moves to the healthy ones before hard timeouts fire, e.g. while a server is paging filters in from
+ * disk.
+ * <p>
+ * Every endpoint keeps moving averages of the latency and the error rate of the commands it served. Periodically,
+ * a healthy endpoint is ejected if its error rate is above {@code maxErrorRate}, or if its latency is more than
+ * {@code latencyFactor} times the median latency of the other healthy endpoints (and above {@code minLatency}).
+ * At most {@code maxEjectedFraction} of the endpoints are ejected at a time.
+ * <p>
+ * Once its ejection time is over, an endpoint is probed: a single command at a time is sent to it, and it is back
+ * to healthy after a probe succeeds within the latency threshold. A probe that fails or is too slow ejects it
+ * again, for twice as long each time, up to {@code maxEjectionTime}.
+ * <p>
+ * A detector tracks the endpoints of a single client, see
+ * {@link ReplicatedBloomdClient.Builder#setOutlierDetector(OutlierDetector)}.
+ */
+public class OutlierDetector {
+
+    private static final Logger LOG = Logger.getLogger(OutlierDetector.class.getSimpleName());
+
+    public enum State {
+        HEALTHY, EJECTED, PROBING
+    }
+
+    private final double ewmaWeight;
+    private final double latencyFactor;
+    private final long minLatencyNanos;
+    private final double maxErrorRate;
+    private final int minSamples;
+    private final double maxEjectedFraction;
+    private final long baseEjectionNanos;
+    private final long maxEjectionNanos;
+    private final LongSupplier clock;
+    private final List<Endpoint> endpoints = new CopyOnWriteArrayList<>();
+    private final AtomicLong ejections = new AtomicLong();
+    private final ScheduledFuture<?> evaluation;
+
+    // latency above which an endpoint is too slow, refreshed by every evaluation
+    private volatile double latencyThresholdNanos = Double.MAX_VALUE;
+
+    private OutlierDetector(Builder builder) {
+        this.ewmaWeight = builder.ewmaWeight;
+        this.latencyFactor = builder.latencyFactor;
+        this.minLatencyNanos = builder.minLatencyNanos;
+        this.maxErrorRate = builder.maxErrorRate;
+        this.minSamples = builder.minSamples;
+        this.maxEjectedFraction = builder.maxEjectedFraction;
+        this.baseEjectionNanos = builder.baseEjectionNanos;
+        this.maxEjectionNanos = builder.maxEjectionNanos;
+        this.clock = builder.clock;
+
+        long interval = builder.evaluationIntervalNanos;
+        this.evaluation = builder.scheduler.scheduleWithFixedDelay(this::evaluate, interval, interval,
+                TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return the state of every endpoint by name
+     */
+    public Map<String, State> getStates() {
+        Map<String, State> states = new LinkedHashMap<>();
+        for (Endpoint endpoint : endpoints) {
+            states.put(endpoint.name, endpoint.state);
+        }
+        return states;
+    }
+
+    /**
+     * @return number of times an endpoint was ejected, including after failed probes
+     */
+    public long getEjections() {
+        return ejections.get();
+    }
+
+    /**
+     * Stops evaluating the endpoints, which stay in their current state.
+     */
+    public void stop() {
+        evaluation.cancel(false);
+    }
+
+    Endpoint addEndpoint(String name) {
+        for (Endpoint endpoint : endpoints) {
+            if (endpoint.name.equals(name)) {
+                throw new IllegalArgumentException("Endpoint already exists: " + name);
+            }
+        }
+
+        Endpoint endpoint = new Endpoint(name);
+        endpoints.add(endpoint);
+        return endpoint;
+    }
+
+    synchronized void evaluate() {
+        long now = clock.getAsLong();
+        List<Endpoint> healthy = new ArrayList<>();
+        int ejected = 0;
+
+        for (Endpoint endpoint : endpoints) {
+            switch (endpoint.state) {
+                case HEALTHY:
+                    healthy.add(endpoint);
+                    break;
+                case EJECTED:
+                    if (now - endpoint.ejectedUntilNanos >= 0) {
+                        endpoint.state = State.PROBING;
+                    }
+                    ejected++;
+                    break;
+                case PROBING:
+                    // a probe that never completes counts as failed
+                    if (endpoint.probeInFlight.get() && now - endpoint.probeStartNanos > baseEjectionNanos) {
+                        endpoint.eject(now);
+                    }
+                    ejected++;
+                    break;
+            }
+        }
+
+        List<Endpoint> outliers = new ArrayList<>();
+        for (Endpoint endpoint : healthy) {
+            if (endpoint.samples.get() < minSamples) {
+                continue;
+            }
+
+            if (endpoint.errorRate() > maxErrorRate || endpoint.latencyNanos() > latencyThreshold(healthy, endpoint)) {
+                outliers.add(endpoint);
+            }
+        }
+
+        // the worst outliers first, in case not all of them can be ejected
+        outliers.sort((a, b) -> Double.compare(b.latencyNanos() * (1 + b.errorRate()),
+                                               a.latencyNanos() * (1 + a.errorRate())));
+        for (Endpoint outlier : outliers) {
+            if (ejected + 1 > maxEjectedFraction * endpoints.size()) {
+                break;
+            }
+            outlier.eject(now);
+            healthy.remove(outlier);
+            ejected++;
+        }
+
+        latencyThresholdNanos = latencyThreshold(healthy, null);
+    }
+
+    /**
+     * @return the latency above which an endpoint is an outlier compared to the other healthy endpoints
+     */
+    private double latencyThreshold(List<Endpoint> healthy, Endpoint excluded) {
+        List<Double> latencies = new ArrayList<>();
+        for (Endpoint endpoint : healthy) {
+            if (endpoint != excluded && endpoint.samples.get() >= minSamples) {
+                latencies.add(endpoint.latencyNanos());
+            }
+        }
+
+        if (latencies.isEmpty()) {
+            return Double.MAX_VALUE;
+        }
+
+        Collections.sort(latencies);
+        int middle = latencies.size() / 2;
+        double median = latencies.size() % 2 == 1
+                ? latencies.get(middle)
+                : (latencies.get(middle - 1) + latencies.get(middle)) / 2;
+        return Math.max(minLatencyNanos, latencyFactor * median);
+    }
+
+    final class Endpoint {
+        final String name;
+        private final AtomicLong latencyBits = new AtomicLong(Double.doubleToRawLongBits(0));
+        private final AtomicLong errorRateBits = new AtomicLong(Double.doubleToRawLongBits(0));
+        private final AtomicLong samples = new AtomicLong();
+        private final AtomicBoolean probeInFlight = new AtomicBoolean();
+        private volatile State state = State.HEALTHY;
+        private volatile long ejectedUntilNanos;
+        private volatile long probeStartNanos;
+        private int consecutiveEjections;
+
+        Endpoint(String name) {
+            this.name = name;
+        }
+
+        State getState() {
+            return state;
+        }
+
+        boolean isHealthy() {
+            return state == State.HEALTHY;
+        }
+
+        /**
+         * @return true if the caller may send a probe, which it has to report with {@link #completeProbe}
+         */
+        boolean tryProbe() {
+            if (state == State.PROBING && probeInFlight.compareAndSet(false, true)) {
+                probeStartNanos = clock.getAsLong();
+                return true;
+            }
+            return false;
+        }
+
+        void completeProbe(long latencyNanos, boolean success) {
+            synchronized (OutlierDetector.this) {
+                if (state == State.PROBING && probeInFlight.get()) {
+                    if (success && latencyNanos <= latencyThresholdNanos) {
+                        recover(latencyNanos);
+                    } else {
+                        eject(clock.getAsLong());
+                    }
+                }
+                probeInFlight.set(false);
+            }
+        }
+
+        /**
+         * Records a command served by the endpoint while healthy, with its latency if it succeeded.
+         */
+        void record(long latencyNanos, boolean success) {
+            if (success) {
+                update(latencyBits, latencyNanos, latencyNanos() == 0);
+            }
+            update(errorRateBits, success ? 0 : 1, samples.get() == 0);
+            samples.incrementAndGet();
+        }
+
+        double latencyNanos() {
+            return Double.longBitsToDouble(latencyBits.get());
+        }
+
+        double errorRate() {
+            return Double.longBitsToDouble(errorRateBits.get());
+        }
+
+        // called holding the lock of the detector
+        private void eject(long now) {
+            // only shifted while it does not overflow, past that it is above any max anyway
+            long ejection = consecutiveEjections < Long.numberOfLeadingZeros(baseEjectionNanos)
+                    ? Math.min(baseEjectionNanos << consecutiveEjections, maxEjectionNanos)
+                    : maxEjectionNanos;
+            if (consecutiveEjections < Integer.MAX_VALUE) {
+                consecutiveEjections++;
+            }
+            ejectedUntilNanos = now + ejection;
+            state = State.EJECTED;
+            probeInFlight.set(false);
+            ejections.incrementAndGet();
+            LOG.warning(String.format("Ejecting %s for %dms: latency %.2fms, error rate %.2f", name,
+                    TimeUnit.NANOSECONDS.toMillis(ejectedUntilNanos - now), latencyNanos() / 1e6, errorRate()));
+        }
+
+        // called holding the lock of the detector
+        private void recover(long latencyNanos) {
+            latencyBits.set(Double.doubleToRawLongBits(latencyNanos));
+            errorRateBits.set(Double.doubleToRawLongBits(0));
+            samples.set(0);
+            consecutiveEjections = 0;
+            state = State.HEALTHY;
+            LOG.info(String.format("%s recovered", name));
+        }
+
+        private void update(AtomicLong average, double sample, boolean first) {
+            long current;
+            double updated;
+            do {
+                current = average.get();
+                double value = Double.longBitsToDouble(current);
+                updated = first ? sample : value + ewmaWeight * (sample - value);
+            } while (!average.compareAndSet(current, Double.doubleToRawLongBits(updated)));
+        }
+    }
+
+    public static class Builder {
+        private double ewmaWeight = 0.1;
+        private double latencyFactor = 3;
+        private long minLatencyNanos = TimeUnit.MILLISECONDS.toNanos(5);
+        private double maxErrorRate = 0.5;
+        private int minSamples = 10;
+        private double maxEjectedFraction = 0.5;
+        private long baseEjectionNanos = TimeUnit.SECONDS.toNanos(10);
+        private long maxEjectionNanos = TimeUnit.MINUTES.toNanos(5);
+        private long evaluationIntervalNanos = TimeUnit.MILLISECONDS.toNanos(100);
+        private ScheduledExecutorService scheduler = GlobalEventExecutor.INSTANCE;
+        private LongSupplier clock = System::nanoTime;
+
+        /**
+         * Weight of every new command in the moving averages of an endpoint, between 0 (excluded) and 1.
+         */
+        public Builder setEwmaWeight(double ewmaWeight) {
+            if (ewmaWeight <= 0 || ewmaWeight > 1) {
+                throw new IllegalArgumentException("ewmaWeight has to be in (0, 1]");
+            }
+            this.ewmaWeight = ewmaWeight;
+            return this;
+        }
+
+        /**
+         * An endpoint is ejected when its latency is this many times the median of the other healthy endpoints.
+         */
+        public Builder setLatencyFactor(double latencyFactor) {
+            if (latencyFactor <= 1) {
+                throw new IllegalArgumentException("latencyFactor has to be larger than 1");
+            }
+            this.latencyFactor = latencyFactor;
+            return this;
+        }
+
+        /**
+         * Endpoints are never ejected for a latency below this one, however fast the others are.
+         */
+        public Builder setMinLatency(long latency, TimeUnit unit) {
+            this.minLatencyNanos = unit.toNanos(latency);
+            return this;
+        }
+
+        public Builder setMaxErrorRate(double maxErrorRate) {
+            if (maxErrorRate <= 0 || maxErrorRate >= 1) {
+                throw new IllegalArgumentException("maxErrorRate has to be in (0, 1)");
+            }
+            this.maxErrorRate = maxErrorRate;
+            return this;
+        }
+
+        /**
+         * Number of commands an endpoint has to serve before it is judged.
+         */
+        public Builder setMinSamples(int minSamples) {
+            if (minSamples < 1) {
+                throw new IllegalArgumentException("minSamples has to be at least 1");
+            }
+            this.minSamples = minSamples;
+            return this;
+        }
+
+        public Builder setMaxEjectedFraction(double maxEjectedFraction) {
+            if (maxEjectedFraction < 0 || maxEjectedFraction >= 1) {
+                throw new IllegalArgumentException("maxEjectedFraction has to be in [0, 1)");
+            }
+            this.maxEjectedFraction = maxEjectedFraction;
+            return this;
+        }
+
+        /**
+         * An endpoint is ejected for {@code base} the first time, and twice as long every time it fails a probe,
+         * up to {@code max}.
+         */
+        public Builder setEjectionTime(long base, long max, TimeUnit unit) {
+            if (base < 1 || max < base) {
+                throw new IllegalArgumentException("Ejection times have to satisfy 1 <= base <= max");
+            }
+            this.baseEjectionNanos = unit.toNanos(base);
+            this.maxEjectionNanos = unit.toNanos(max);
+            return this;
+        }
+
+        public Builder setEvaluationInterval(long interval, TimeUnit unit) {
+            if (interval < 1) {
+                throw new IllegalArgumentException("interval has to be positive");
+            }
+            this.evaluationIntervalNanos = unit.toNanos(interval);
+            return this;
+        }
+
+        public Builder setScheduler(ScheduledExecutorService scheduler) {
+            this.scheduler = scheduler;
+            return this;
+        }
+
+        /**
+         * Source of the current time in nanoseconds, {@link System#nanoTime()} unless replaced by tests.
+         */
+        Builder setClock(LongSupplier clock) {
+            this.clock = clock;
+            return this;
+        }
+
+        public OutlierDetector build() {
+            if (scheduler == null) {
+                throw new IllegalArgumentException("scheduler can not be null");
+            }
+
+            if (clock == null) {
+                throw new IllegalArgumentException("clock can not be null");
+            }
+            return new OutlierDetector(this);
+        }
+    }
+}
@@ -0,0 +1,542 @@
+package bloomd;
+
+import bloomd.args.CreateFilterArgs;
+import bloomd.replies.*;
+import io.netty.util.Timeout;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * {@link BloomdClient} keeping every filter on several bloomd servers (replicas).
+ * <p>
+ * Writes ({@code set}, {@code bulk} and the commands on whole filters) are sent to every replica and complete
+ * once {@code writeQuorum} of them succeeded, with the result of the replica completing the quorum. They fail once
+ * enough replicas failed that the quorum can not be reached anymore.
+ * <p>
+ * Reads ({@code check}, {@code multi}, {@code info} and {@code list}) go to a single replica, the one with the
+ * lowest moving average (EWMA) of its recent read latencies, weighted by the reads it has in flight so that a
+ * replica that was fast but is now busy gets skipped. If it did not reply after a hedge delay, the read is sent to
+ * the next best replica too and the first reply wins. The hedge delay follows a percentile of the recent read
+ * latencies of all replicas, by default the 95th, so only about 5% of the reads are sent twice. A read that fails
+ * is retried on the next replica.
+ * <p>
+ * With an {@link OutlierDetector}, replicas that get much slower than the others or keep failing are ejected:
+ * reads only go to them if every healthy replica failed. Once its ejection time is over, a replica is probed with
+ * copies of some reads, whose results are ignored, until it answers in time again. Writes are still sent to ejected
+ * replicas, so that they do not miss any key, but the quorum is usually reached by the healthy ones.
+ */
+public class ReplicatedBloomdClient implements BloomdClient {
+
+    private final List<Replica> replicas;
+    private final List<MultiplexedBloomdClient> ownedClients;
+    private final int writeQuorum;
+    private final boolean hedging;
+    private final LatencyPercentile readLatencies;
+    private final long minHedgeDelayNanos;
+    private final LongAdder hedgedReads = new LongAdder();
+    private final OutlierDetector outlierDetector;
+
+    private ReplicatedBloomdClient(Builder builder) {
+        List<Replica> replicas = new ArrayList<>();
+        for (Map.Entry<String, BloomdClient> replica : builder.replicas.entrySet()) {
+            OutlierDetector.Endpoint health = builder.outlierDetector == null
+                    ? null
+                    : builder.outlierDetector.addEndpoint(replica.getKey());
+            replicas.add(new Replica(replica.getKey(), replica.getValue(), builder.ewmaWeight, health));
+        }
+        this.replicas = Collections.unmodifiableList(replicas);
+        this.ownedClients = new ArrayList<>(builder.ownedClients);
+        this.writeQuorum = builder.writeQuorum == 0 ? replicas.size() / 2 + 1 : builder.writeQuorum;
+        this.hedging = builder.hedging && replicas.size() > 1;
+        this.readLatencies = new LatencyPercentile(builder.hedgePercentile, builder.initialHedgeDelayNanos);
+        this.minHedgeDelayNanos = builder.minHedgeDelayNanos;
+        this.outlierDetector = builder.outlierDetector;
+    }
+
+    @Override
+    public CompletableFuture<List<BloomdFilter>> list() {
+        return read(BloomdClient::list);
+    }
+
+    @Override
+    public CompletableFuture<List<BloomdFilter>> list(String prefix) {
+        return read(replica -> replica.list(prefix));
+    }
+
+    @Override
+    public CompletableFuture<CreateResult> create(String filterName) {
+        return write(replica -> replica.create(filterName));
+    }
+
+    @Override
+    public CompletableFuture<CreateResult> create(CreateFilterArgs args) {
+        return write(replica -> replica.create(args));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> drop(String filterName) {
+        return write(replica -> replica.drop(filterName));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> close(String filterName) {
+        return write(replica -> replica.close(filterName));
+    }
+
+    @Override
+    public CompletableFuture<ClearResult> clear(String filterName) {
+        return write(replica -> replica.clear(filterName));
+    }
+
+    @Override
+    public CompletableFuture<StateResult> check(String filterName, String key) {
+        return read(replica -> replica.check(filterName, key));
+    }
+
+    @Override
+    public CompletableFuture<StateResult> set(String filterName, String key) {
+        return write(replica -> replica.set(filterName, key));
+    }
+
+    @Override
+    public CompletableFuture<List<StateResult>> multi(String filterName, String... keys) {
+        return multiBits(filterName, keys).thenApply(StateResults::asList);
+    }
+
+    @Override
+    public CompletableFuture<StateResults> multiBits(String filterName, String... keys) {
+        return read(replica -> replica.multiBits(filterName, keys));
+    }
+
+    @Override
+    public CompletableFuture<List<StateResult>> bulk(String filterName, String... keys) {
+        return bulkBits(filterName, keys).thenApply(StateResults::asList);
+    }
+
+    @Override
+    public CompletableFuture<StateResults> bulkBits(String filterName, String... keys) {
+        return write(replica -> replica.bulkBits(filterName, keys));
+    }
+
+    @Override
+    public CompletableFuture<BloomdInfo> info(String filterName) {
+        return read(replica -> replica.info(filterName));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> flush(String filterName) {
+        return write(replica -> replica.flush(filterName));
+    }
+
+    public int getWriteQuorum() {
+        return writeQuorum;
+    }
+
+    /**
+     * @return number of reads that were also sent to a second replica because the first one was too slow
+     */
+    public long getHedgedReads() {
+        return hedgedReads.sum();
+    }
+
+    /**
+     * @return the current delay after which reads are hedged, in microseconds
+     */
+    public long getHedgeDelayMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(hedgeDelayNanos());
+    }
+
+    /**
+     * @return the moving average of the read latencies of every replica by name, in microseconds
+     */
+    public Map<String, Long> getReadLatencies() {
+        Map<String, Long> latencies = new LinkedHashMap<>();
+        for (Replica replica : replicas) {
+            latencies.put(replica.name, (long) (replica.latencyNanos() / 1_000));
+        }
+        return latencies;
+    }
+
+    /**
+     * Returns the connections of the replicas added as pools and stops the outlier detector. Commands still in
+     * flight are not affected.
+     */
+    public CompletableFuture<Void> release() {
+        if (outlierDetector != null) {
+            outlierDetector.stop();
+        }
+
+        List<CompletableFuture<Void>> releases = new ArrayList<>();
+        for (MultiplexedBloomdClient client : ownedClients) {
+            releases.add(client.release());
+        }
+        return CompletableFuture.allOf(releases.toArray(new CompletableFuture<?>[releases.size()]));
+    }
+
+    private long hedgeDelayNanos() {
+        return Math.max(minHedgeDelayNanos, readLatencies.get());
+    }
+
+    private <T> CompletableFuture<T> write(Function<BloomdClient, CompletableFuture<T>> command) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        AtomicInteger successes = new AtomicInteger();
+        AtomicInteger failures = new AtomicInteger();
+        int tolerableFailures = replicas.size() - writeQuorum;
+
+        for (Replica replica : replicas) {
+            send(replica.client, command).whenComplete((value, err) -> {
+                if (err == null) {
+                    if (successes.incrementAndGet() == writeQuorum) {
+                        result.complete(value);
+                    }
+                } else if (failures.incrementAndGet() == tolerableFailures + 1) {
+                    result.completeExceptionally(Futures.unwrap(err));
+                }
+            });
+        }
+        return result;
+    }
+
+    private <T> CompletableFuture<T> read(Function<BloomdClient, CompletableFuture<T>> command) {
+        if (outlierDetector != null) {
+            probe(command);
+        }
+
+        HedgedRead<T> read = new HedgedRead<>(rankReplicas(), command);
+        read.sendNext();
+
+        if (hedging && !read.result.isDone()) {
+            Timeout hedge = SharedTimer.TIMER.newTimeout(ignore -> {
+                if (read.result.isDone()) {
+                    return;
+                }
+
+                // counted before sending so that callers see the count once the hedge replied
+                hedgedReads.increment();
+                if (!read.sendNext()) {
+                    hedgedReads.decrement();
+                }
+            }, hedgeDelayNanos(), TimeUnit.NANOSECONDS);
+            read.result.whenComplete((value, err) -> hedge.cancel());
+        }
+        return read.result;
+    }
+
+    /**
+     * @return the replicas from the most to the least preferred for a read
+     */
+    private Replica[] rankReplicas() {
+        Replica[] ranked = replicas.toArray(new Replica[replicas.size()]);
+        // scores change while replies come in, so each one is read once to keep the ordering consistent
+        double[] scores = new double[ranked.length];
+        for (int i = 0; i < ranked.length; i++) {
+            scores[i] = ranked[i].readScore();
+        }
+
+        // there are only a few replicas
+        for (int i = 1; i < ranked.length; i++) {
+            Replica replica = ranked[i];
+            double score = scores[i];
+            int j = i - 1;
+            while (j >= 0 && scores[j] > score) {
+                ranked[j + 1] = ranked[j];
+                scores[j + 1] = scores[j];
+                j--;
+            }
+            ranked[j + 1] = replica;
+            scores[j + 1] = score;
+        }
+        return ranked;
+    }
+
+    /**
+     * Sends a copy of the read to the ejected replicas that are due for a probe.
+     */
+    private <T> void probe(Function<BloomdClient, CompletableFuture<T>> command) {
+        for (Replica replica : replicas) {
+            if (replica.health.tryProbe()) {
+                long start = System.nanoTime();
+                send(replica.client, command).whenComplete(
+                        (value, err) -> replica.health.completeProbe(System.nanoTime() - start, err == null));
+            }
+        }
+    }
+
+    private static <T> CompletableFuture<T> send(BloomdClient client,
+                                                 Function<BloomdClient, CompletableFuture<T>> command) {
+        try {
+            return command.apply(client);
+        } catch (RuntimeException e) {
+            return Futures.failed(e);
+        }
+    }
+
+    /**
+     * A read sent to the replicas in order of preference, one more every time it is hedged or fails.
+     */
+    private class HedgedRead<T> {
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        private final Replica[] ranked;
+        private final Function<BloomdClient, CompletableFuture<T>> command;
+        private final AtomicInteger sent = new AtomicInteger();
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private volatile Throwable lastError;
+
+        HedgedRead(Replica[] ranked, Function<BloomdClient, CompletableFuture<T>> command) {
+            this.ranked = ranked;
+            this.command = command;
+        }
+
+        /**
+         * @return false if it was already sent to every replica
+         */
+        boolean sendNext() {
+            // counted before claiming a replica so that a failing send never sees none outstanding while another
+            // one is about to be sent
+            outstanding.incrementAndGet();
+            int index = sent.getAndIncrement();
+            if (index >= ranked.length) {
+                if (outstanding.decrementAndGet() == 0 && lastError != null) {
+                    result.completeExceptionally(Futures.unwrap(lastError));
+                }
+                return false;
+            }
+
+            Replica replica = ranked[index];
+            replica.pending.incrementAndGet();
+            long start = System.nanoTime();
+
+            send(replica.client, command).whenComplete((value, err) -> {
+                replica.pending.decrementAndGet();
+                long latency = System.nanoTime() - start;
+                if (replica.health != null && replica.health.isHealthy()) {
+                    replica.health.record(latency, err == null);
+                }
+
+                if (err == null) {
+                    // replies of the slower replicas are measured too, so their average stays up to date
+                    replica.recordLatency(latency);
+                    readLatencies.record(latency);
+
+                    outstanding.decrementAndGet();
+                    result.complete(value);
+                    return;
+                }
+
+                lastError = err;
+                boolean retried = !result.isDone() && sendNext();
+                if (outstanding.decrementAndGet() == 0 && !retried) {
+                    result.completeExceptionally(Futures.unwrap(err));
+                }
+            });
+            return true;
+        }
+    }
+
+    private static final class Replica {
+        final String name;
+        final BloomdClient client;
+        final AtomicInteger pending = new AtomicInteger();
+        final OutlierDetector.Endpoint health;
+        private final double ewmaWeight;
+        private final AtomicLong latencyBits = new AtomicLong(Double.doubleToRawLongBits(0));
+
+        Replica(String name, BloomdClient client, double ewmaWeight, OutlierDetector.Endpoint health) {
+            this.name = name;
+            this.client = client;
+            this.ewmaWeight = ewmaWeight;
+            this.health = health;
+        }
+
+        double latencyNanos() {
+            return Double.longBitsToDouble(latencyBits.get());
+        }
+
+        /**
+         * Replicas that were not measured yet are tried first, but only by a single read until it replies.
+         */
+        double score() {
+            double latency = latencyNanos();
+            int pending = this.pending.get();
+            if (latency == 0) {
+                return pending == 0 ? 0 : Double.MAX_VALUE;
+            }
+            return latency * (pending + 1);
+        }
+
+        /**
+         * Ejected replicas come after every healthy one.
+         */
+        double readScore() {
+            return health == null || health.isHealthy() ? score() : Double.POSITIVE_INFINITY;
+        }
+
+        void recordLatency(long nanos) {
+            long current;
+            double updated;
+            do {
+                current = latencyBits.get();
+                double average = Double.longBitsToDouble(current);
+                updated = average == 0 ? nanos : average + ewmaWeight * (nanos - average);
+            } while (!latencyBits.compareAndSet(current, Double.doubleToRawLongBits(updated)));
+        }
+    }
+
+    /**
+     * Percentile of the last {@code SAMPLES} latencies, recomputed every {@code RECOMPUTE_EVERY} samples by the
+     * thread recording the sample.
+     */
+    private static final class LatencyPercentile {
+        private static final int SAMPLES = 1024;
+        private static final int RECOMPUTE_EVERY = 128;
+
+        private final double percentile;
+        private final AtomicLongArray samples = new AtomicLongArray(SAMPLES);
+        private final AtomicLong recorded = new AtomicLong();
+        private volatile long value;
+
+        LatencyPercentile(double percentile, long initialValue) {
+            this.percentile = percentile;
+            this.value = initialValue;
+        }
+
+        long get() {
+            return value;
+        }
+
+        void record(long nanos) {
+            long count = recorded.getAndIncrement();
+            samples.set((int) (count % SAMPLES), nanos);
+
+            if ((count + 1) % RECOMPUTE_EVERY == 0) {
+                int size = (int) Math.min(count + 1, SAMPLES);
+                long[] sorted = new long[size];
+                for (int i = 0; i < size; i++) {
+                    sorted[i] = samples.get(i);
+                }
+                Arrays.sort(sorted);
+                value = sorted[Math.max(0, (int) Math.ceil(percentile * size) - 1)];
+            }
+        }
+    }
+
+    public static class Builder {
+        private final Map<String, BloomdClient> replicas = new LinkedHashMap<>();
+        private final List<MultiplexedBloomdClient> ownedClients = new ArrayList<>();
+        private int writeQuorum;
+        private double ewmaWeight = 0.2;
+        private boolean hedging = true;
+        private double hedgePercentile = 0.95;
+        private long initialHedgeDelayNanos = TimeUnit.MILLISECONDS.toNanos(5);
+        private long minHedgeDelayNanos = TimeUnit.MILLISECONDS.toNanos(1);
+        private OutlierDetector outlierDetector;
+
+        public Builder addReplica(String name, BloomdClient client) {
+            if (name == null || client == null) {
+                throw new IllegalArgumentException("name and client can not be null");
+            }
+
+            if (replicas.putIfAbsent(name, client) != null) {
+                throw new IllegalArgumentException("Replica already exists: " + name);
+            }
+            return this;
+        }
+
+        /**
+         * Adds a replica reached through a {@link MultiplexedBloomdClient} on the pool, with its default settings.
+         * Its connections are returned to the pool by {@link ReplicatedBloomdClient#release()}.
+         */
+        public Builder addReplica(String name, BloomdClientPool pool) {
+            MultiplexedBloomdClient client = new MultiplexedBloomdClient.Builder().setPool(pool).build();
+            addReplica(name, client);
+            ownedClients.add(client);
+            return this;
+        }
+
+        /**
+         * Number of replicas a write has to succeed on, by default a majority of them.
+         */
+        public Builder setWriteQuorum(int writeQuorum) {
+            if (writeQuorum < 1) {
+                throw new IllegalArgumentException("writeQuorum has to be at least 1");
+            }
+            this.writeQuorum = writeQuorum;
+            return this;
+        }
+
+        /**
+         * Weight of every new latency in the moving average of a replica, between 0 (excluded) and 1.
+         */
+        public Builder setEwmaWeight(double ewmaWeight) {
+            if (ewmaWeight <= 0 || ewmaWeight > 1) {
+                throw new IllegalArgumentException("ewmaWeight has to be in (0, 1]");
+            }
+            this.ewmaWeight = ewmaWeight;
+            return this;
+        }
+
+        public Builder setHedging(boolean hedging) {
+            this.hedging = hedging;
+            return this;
+        }
+
+        /**
+         * Percentile of the recent read latencies after which a read is hedged, between 0 and 1 (excluded).
+         */
+        public Builder setHedgePercentile(double hedgePercentile) {
+            if (hedgePercentile <= 0 || hedgePercentile >= 1) {
+                throw new IllegalArgumentException("hedgePercentile has to be in (0, 1)");
+            }
+            this.hedgePercentile = hedgePercentile;
+            return this;
+        }
+
+        /**
+         * Hedge delay used until enough reads were measured.
+         */
+        public Builder setInitialHedgeDelay(long delay, TimeUnit unit) {
+            this.initialHedgeDelayNanos = unit.toNanos(delay);
+            return this;
+        }
+
+        /**
+         * Reads are never hedged before this delay, however fast the replicas are. Hedges are scheduled on a timer
+         * ticking every 10ms, so they may fire up to 10ms after their delay.
+         */
+        public Builder setMinHedgeDelay(long delay, TimeUnit unit) {
+            this.minHedgeDelayNanos = unit.toNanos(delay);
+            return this;
+        }
+
+        /**
+         * Ejects the replicas that are outliers from reads. The detector can only be used by one client.
+         */
+        public Builder setOutlierDetector(OutlierDetector outlierDetector) {
+            this.outlierDetector = outlierDetector;
+            return this;
+        }
+
+        public ReplicatedBloomdClient build() {
+            if (replicas.isEmpty()) {
+                throw new IllegalArgumentException("At least one replica is required");
+            }
+
+            if (writeQuorum > replicas.size()) {
+                throw new IllegalArgumentException("writeQuorum can not be larger than the number of replicas");
+            }
+            return new ReplicatedBloomdClient(this);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package bloomd;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.ByteToMessageDecoder;
+
+import java.util.List;
+
+/**
+ * Splits the inbound bytes into reply lines without decoding them into Strings. Each line is emitted as a
+ * retained slice of the cumulation buffer with the line delimiter stripped.
+ * <p>
+ * Unlike netty's line based decoders it remembers how much of the pending bytes were already scanned, so
+ * long replies (e.g. a bulk with thousands of keys) arriving over many reads are only scanned once.
+ */
+public class ReplyLineDecoder extends ByteToMessageDecoder {
+
+    private int scannedBytes = 0;
+
+    @Override
+    protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws Exception {
+        int start = in.readerIndex();
+        int eol = in.indexOf(start + scannedBytes, in.writerIndex(), (byte) '\n');
+
+        if (eol < 0) {
+            // remember where to resume scanning once more bytes arrive
+            scannedBytes = in.readableBytes();
+            return;
+        }
+
+        scannedBytes = 0;
+
+        int length = eol - start;
+        if (length > 0 && in.getByte(eol - 1) == '\r') {
+            length--;
+        }
+
+        out.add(in.readSlice(length).retain());
+        in.readerIndex(eol + 1);
+    }
+}
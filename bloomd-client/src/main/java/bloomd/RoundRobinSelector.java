@@ -0,0 +1,17 @@
+package bloomd;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @see ConnectionSelector#roundRobin()
+ */
+class RoundRobinSelector implements ConnectionSelector {
+
+    private final AtomicInteger next = new AtomicInteger();
+
+    @Override
+    public int select(List<? extends ConnectionLoad> connections) {
+        return Math.floorMod(next.getAndIncrement(), connections.size());
+    }
+}
@@ -0,0 +1,197 @@
+package bloomd;
+
+import bloomd.args.CreateFilterArgs;
+import bloomd.replies.*;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * {@link BloomdClient} spreading filters over several bloomd servers. Every command goes to the server its filter
+ * name maps to on a consistent hash ring, except {@link #list()} which is sent to every server and merged.
+ * <p>
+ * Each server (node) is reached through its own client, typically a {@link MultiplexedBloomdClient} on a pool
+ * for that server, and identified by a name, typically its {@code host:port}. Filters are placed by name only, so
+ * every instance configured with the same node names agrees on where each filter lives regardless of the order
+ * nodes are added in.
+ * <p>
+ * Nodes can be added and removed while the client is in use. Only the filters of about {@code 1 / nodes} of the
+ * ring move when a node is added, all of them to the new node; they are not copied over, so they have to be
+ * recreated (or refilled) there.
+ */
+public class ShardedBloomdClient implements BloomdClient {
+
+    private static final Comparator<BloomdFilter> BY_NAME = Comparator.comparing(BloomdFilter::getFilterName);
+
+    private volatile ConsistentHashRing<BloomdClient> ring;
+
+    private ShardedBloomdClient(Builder builder) {
+        ConsistentHashRing<BloomdClient> initial = new ConsistentHashRing<>(builder.virtualNodes);
+        for (Map.Entry<String, BloomdClient> node : builder.nodes.entrySet()) {
+            initial = initial.withNode(node.getKey(), node.getValue());
+        }
+        this.ring = initial;
+    }
+
+    @Override
+    public CompletableFuture<List<BloomdFilter>> list() {
+        return list("");
+    }
+
+    @Override
+    public CompletableFuture<List<BloomdFilter>> list(String prefix) {
+        List<CompletableFuture<List<BloomdFilter>>> lists = new ArrayList<>();
+        for (BloomdClient node : ring.getNodes().values()) {
+            lists.add(node.list(prefix));
+        }
+
+        return CompletableFuture.allOf(lists.toArray(new CompletableFuture<?>[lists.size()]))
+                .thenApply(done -> {
+                    List<BloomdFilter> merged = new ArrayList<>();
+                    for (CompletableFuture<List<BloomdFilter>> list : lists) {
+                        merged.addAll(list.join());
+                    }
+                    merged.sort(BY_NAME);
+                    return merged;
+                });
+    }
+
+    @Override
+    public CompletableFuture<CreateResult> create(String filterName) {
+        return route(filterName, node -> node.create(filterName));
+    }
+
+    @Override
+    public CompletableFuture<CreateResult> create(CreateFilterArgs args) {
+        return route(args.getFilterName(), node -> node.create(args));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> drop(String filterName) {
+        return route(filterName, node -> node.drop(filterName));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> close(String filterName) {
+        return route(filterName, node -> node.close(filterName));
+    }
+
+    @Override
+    public CompletableFuture<ClearResult> clear(String filterName) {
+        return route(filterName, node -> node.clear(filterName));
+    }
+
+    @Override
+    public CompletableFuture<StateResult> check(String filterName, String key) {
+        return route(filterName, node -> node.check(filterName, key));
+    }
+
+    @Override
+    public CompletableFuture<StateResult> set(String filterName, String key) {
+        return route(filterName, node -> node.set(filterName, key));
+    }
+
+    @Override
+    public CompletableFuture<List<StateResult>> multi(String filterName, String... keys) {
+        return route(filterName, node -> node.multi(filterName, keys));
+    }
+
+    @Override
+    public CompletableFuture<StateResults> multiBits(String filterName, String... keys) {
+        return route(filterName, node -> node.multiBits(filterName, keys));
+    }
+
+    @Override
+    public CompletableFuture<List<StateResult>> bulk(String filterName, String... keys) {
+        return route(filterName, node -> node.bulk(filterName, keys));
+    }
+
+    @Override
+    public CompletableFuture<StateResults> bulkBits(String filterName, String... keys) {
+        return route(filterName, node -> node.bulkBits(filterName, keys));
+    }
+
+    @Override
+    public CompletableFuture<BloomdInfo> info(String filterName) {
+        return route(filterName, node -> node.info(filterName));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> flush(String filterName) {
+        return route(filterName, node -> node.flush(filterName));
+    }
+
+    /**
+     * @return the name of the node the filter lives on
+     */
+    public String nodeFor(String filterName) {
+        return ring.nodeNameFor(filterName);
+    }
+
+    /**
+     * @return the clients of every node by name
+     */
+    public Map<String, BloomdClient> getNodes() {
+        return ring.getNodes();
+    }
+
+    public synchronized void addNode(String name, BloomdClient client) {
+        ring = ring.withNode(name, client);
+    }
+
+    /**
+     * @return the client of the removed node, which is left for the caller to release
+     */
+    public synchronized BloomdClient removeNode(String name) {
+        BloomdClient client = ring.getNodes().get(name);
+        ring = ring.withoutNode(name);
+        return client;
+    }
+
+    private <T> CompletableFuture<T> route(String filterName, Function<BloomdClient, CompletableFuture<T>> command) {
+        if (filterName == null) {
+            throw new IllegalArgumentException("Invalid filter name: " + filterName);
+        }
+        return command.apply(ring.nodeFor(filterName));
+    }
+
+    public static class Builder {
+        private final Map<String, BloomdClient> nodes = new LinkedHashMap<>();
+        private int virtualNodes = 160;
+
+        public Builder addNode(String name, BloomdClient client) {
+            if (name == null || client == null) {
+                throw new IllegalArgumentException("name and client can not be null");
+            }
+
+            if (nodes.putIfAbsent(name, client) != null) {
+                throw new IllegalArgumentException("Node already exists: " + name);
+            }
+            return this;
+        }
+
+        /**
+         * Number of points of every node on the ring. More points spread filters more evenly, at the cost of a
+         * larger ring to search.
+         */
+        public Builder setVirtualNodes(int virtualNodes) {
+            if (virtualNodes < 1) {
+                throw new IllegalArgumentException("virtualNodes has to be at least 1");
+            }
+            this.virtualNodes = virtualNodes;
+            return this;
+        }
+
+        public ShardedBloomdClient build() {
+            if (nodes.isEmpty()) {
+                throw new IllegalArgumentException("At least one node is required");
+            }
+            return new ShardedBloomdClient(this);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package bloomd;
+
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.ImmediateEventExecutor;
+
+/**
+ * An {@link EventLoopGroup} that can be shared by several {@link BloomdClientPool}s, so the number of event loop
+ * threads depends on the number of cores instead of the number of pools.
+ * <p>
+ * Pools retain the group when created and release it when their connections are closed. A group created by this
+ * class is started when first retained and shut down once every pool released it, to be started again if
+ * retained later on. A group supplied by the caller is never shut down by the pools.
+ */
+public class SharedEventLoopGroup {
+
+    private static final SharedEventLoopGroup PROCESS_WIDE = new SharedEventLoopGroup(BloomdClientConfig.Transport.AUTO, 0);
+
+    private final BloomdClientConfig.Transport transport;
+    private final int threads;
+    private final boolean external;
+
+    // guarded by this
+    private EventLoopGroup group;
+    private int refCount = 0;
+
+    /**
+     * @param threads number of event loop threads, 0 to use netty's default of twice the number of cores
+     */
+    public SharedEventLoopGroup(BloomdClientConfig.Transport transport, int threads) {
+        if (threads < 0) {
+            throw new IllegalArgumentException("threads can not be negative");
+        }
+
+        this.transport = Transports.resolve(transport);
+        this.threads = threads;
+        this.external = false;
+    }
+
+    /**
+     * Shares a group owned by the caller, who is in charge of shutting it down.
+     *
+     * @throws IllegalArgumentException if the group is neither a NIO nor an epoll one
+     */
+    public SharedEventLoopGroup(EventLoopGroup group) {
+        this.transport = Transports.transportOf(group);
+        this.threads = 0;
+        this.external = true;
+        this.group = group;
+    }
+
+    /**
+     * @return a group shared by every pool of the process that uses it
+     */
+    public static SharedEventLoopGroup processWide() {
+        return PROCESS_WIDE;
+    }
+
+    public BloomdClientConfig.Transport getTransport() {
+        return transport;
+    }
+
+    /**
+     * @return the number of pools using this group
+     */
+    public synchronized int refCount() {
+        return refCount;
+    }
+
+    Class<? extends SocketChannel> channelClass() {
+        return Transports.channelClass(transport);
+    }
+
+    synchronized EventLoopGroup retain() {
+        if (group == null) {
+            group = Transports.newEventLoopGroup(transport, threads);
+        }
+        refCount++;
+        return group;
+    }
+
+    /**
+     * @return a future notified once the group is terminated if this was its last user, or a completed future
+     * otherwise
+     */
+    synchronized Future<?> release() {
+        if (refCount == 0) {
+            throw new IllegalStateException("Event loop group was released more times than retained");
+        }
+
+        if (--refCount > 0 || external) {
+            return ImmediateEventExecutor.INSTANCE.newSucceededFuture(null);
+        }
+
+        Future<?> termination = group.shutdownGracefully();
+        group = null;
+        return termination;
+    }
+}
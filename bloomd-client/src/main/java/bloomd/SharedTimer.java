@@ -0,0 +1,20 @@
+package bloomd;
+
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timer;
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Timer shared by every client for deadlines and hedged reads, a {@link HashedWheelTimer} ticking every 10ms. Its
+ * single daemon thread is only started by the first timeout, and tasks fire up to a tick after their delay.
+ */
+final class SharedTimer {
+
+    static final Timer TIMER = new HashedWheelTimer(
+            new DefaultThreadFactory("bloomd-timer", true), 10, TimeUnit.MILLISECONDS);
+
+    private SharedTimer() {
+    }
+}
@@ -0,0 +1,199 @@
+package bloomd;
+
+import bloomd.replies.BulkSummary;
+import bloomd.replies.StateResult;
+import bloomd.replies.StateResults;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+
+/**
+ * Streams the keys returned by an {@link Iterator} to a filter as successive BULK commands. Keys are pulled from
+ * the iterator only when a batch can be sent, so at most {@code maxBatchesInFlight} batches are kept in memory
+ * regardless of how many keys there are.
+ * <p>
+ * The iterator and the result consumer may be slow (a file, a database cursor, ...), so they are never called from
+ * the reply callbacks, which usually run on the I/O threads. Completed batches are queued and handled by a single
+ * task at a time on the {@code executor}, which reports their results and pulls the next batches. The first batches
+ * are pulled there too, so the calling thread returns right away.
+ */
+final class StreamingBulkCommand {
+
+    private final BiFunction<String, String[], CompletableFuture<StateResults>> command;
+    private final String filterName;
+    private final Iterator<String> keys;
+    private final int batchSize;
+    private final int maxBatchesInFlight;
+    private final BiConsumer<String, StateResult> resultConsumer;
+    private final Executor executor;
+
+    private final Queue<CompletedBatch> completed = new ConcurrentLinkedQueue<>();
+    // number of times drain was requested, only the request taking it from 0 runs it
+    private final AtomicInteger drainRequests = new AtomicInteger();
+    private final CompletableFuture<BulkSummary> result = new CompletableFuture<>();
+
+    // only used by drain, which never runs concurrently
+    private int batchesInFlight = 0;
+    private boolean exhausted = false;
+    private long sentKeys = 0;
+    private long newKeys = 0;
+
+    private StreamingBulkCommand(BiFunction<String, String[], CompletableFuture<StateResults>> command,
+                                 String filterName, Iterator<String> keys, int batchSize, int maxBatchesInFlight,
+                                 BiConsumer<String, StateResult> resultConsumer, Executor executor) {
+        this.command = command;
+        this.filterName = filterName;
+        this.keys = keys;
+        this.batchSize = batchSize;
+        this.maxBatchesInFlight = maxBatchesInFlight;
+        this.resultConsumer = resultConsumer;
+        this.executor = executor;
+    }
+
+    /**
+     * @param resultConsumer called with the result of every key, or {@code null}. Calls are never concurrent but
+     *                       keys of different batches might not be reported in the order they were pulled
+     * @param executor       runs the pulling of keys and the calls to the result consumer
+     */
+    static CompletableFuture<BulkSummary> execute(BiFunction<String, String[], CompletableFuture<StateResults>> command,
+                                                  String filterName, Iterator<String> keys,
+                                                  int batchSize, int maxBatchesInFlight,
+                                                  BiConsumer<String, StateResult> resultConsumer,
+                                                  Executor executor) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize has to be at least 1");
+        }
+
+        if (maxBatchesInFlight < 1) {
+            throw new IllegalArgumentException("maxBatchesInFlight has to be at least 1");
+        }
+
+        if (executor == null) {
+            throw new IllegalArgumentException("executor can not be null");
+        }
+
+        StreamingBulkCommand streaming = new StreamingBulkCommand(command, filterName, keys, batchSize,
+                maxBatchesInFlight, resultConsumer, executor);
+        streaming.requestDrain();
+        return streaming.result;
+    }
+
+    private void requestDrain() {
+        if (drainRequests.getAndIncrement() != 0) {
+            return;
+        }
+
+        try {
+            executor.execute(this::drain);
+        } catch (RuntimeException e) {
+            result.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Handles the completed batches and sends new ones while there is room, until no more drain was requested.
+     * Batches completing synchronously only queue themselves, so this does not recurse.
+     */
+    private void drain() {
+        do {
+            CompletedBatch batch;
+            while ((batch = completed.poll()) != null) {
+                batchesInFlight--;
+                handle(batch);
+            }
+
+            while (!result.isDone() && !exhausted && batchesInFlight < maxBatchesInFlight) {
+                sendNextBatch();
+            }
+
+            if (!result.isDone() && exhausted && batchesInFlight == 0) {
+                result.complete(new BulkSummary(sentKeys, newKeys));
+            }
+        } while (drainRequests.decrementAndGet() != 0);
+    }
+
+    private void handle(CompletedBatch batch) {
+        if (result.isDone()) {
+            return;
+        }
+
+        if (batch.error != null) {
+            // no more batches are sent once one of them fails
+            result.completeExceptionally(Futures.unwrap(batch.error));
+            return;
+        }
+
+        sentKeys += batch.keys.length;
+        newKeys += batch.states.cardinality();
+
+        if (resultConsumer != null) {
+            try {
+                for (int i = 0; i < batch.keys.length; i++) {
+                    resultConsumer.accept(batch.keys[i], batch.states.get(i));
+                }
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+        }
+    }
+
+    private void sendNextBatch() {
+        String[] batch;
+        try {
+            batch = nextBatch();
+        } catch (RuntimeException e) {
+            result.completeExceptionally(e);
+            return;
+        }
+
+        if (batch.length == 0) {
+            return;
+        }
+        batchesInFlight++;
+
+        CompletableFuture<StateResults> batchResult;
+        try {
+            batchResult = command.apply(filterName, batch);
+        } catch (RuntimeException e) {
+            batchResult = Futures.failed(e);
+        }
+
+        batchResult.whenComplete((states, err) -> {
+            completed.add(new CompletedBatch(batch, states, err));
+            requestDrain();
+        });
+    }
+
+    private String[] nextBatch() {
+        String[] batch = new String[batchSize];
+        int size = 0;
+        while (size < batchSize && keys.hasNext()) {
+            batch[size++] = keys.next();
+        }
+
+        if (!keys.hasNext()) {
+            exhausted = true;
+        }
+
+        return size == batchSize ? batch : Arrays.copyOf(batch, size);
+    }
+
+    private static final class CompletedBatch {
+        final String[] keys;
+        final StateResults states;
+        final Throwable error;
+
+        CompletedBatch(String[] keys, StateResults states, Throwable error) {
+            this.keys = keys;
+            this.states = states;
+            this.error = error;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package bloomd;
+
+import io.netty.channel.EventLoop;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoop;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Creates the event loop groups and channels of a {@link BloomdClientConfig.Transport}.
+ */
+final class Transports {
+
+    private static final Logger LOG = Logger.getLogger(Transports.class.getSimpleName());
+
+    private Transports() {
+    }
+
+    /**
+     * @return the transport that will actually be used, resolving {@link BloomdClientConfig.Transport#AUTO}
+     * @throws IllegalStateException if epoll is explicitly requested but is not available
+     */
+    static BloomdClientConfig.Transport resolve(BloomdClientConfig.Transport transport) {
+        switch (transport) {
+            case NIO:
+                return BloomdClientConfig.Transport.NIO;
+            case EPOLL:
+                Throwable cause = epollUnavailabilityCause();
+                if (cause != null) {
+                    throw new IllegalStateException("Native epoll transport is not available", cause);
+                }
+                return BloomdClientConfig.Transport.EPOLL;
+            default:
+                Throwable unavailable = epollUnavailabilityCause();
+                if (unavailable == null) {
+                    return BloomdClientConfig.Transport.EPOLL;
+                }
+                LOG.log(Level.FINE, "Native epoll transport is not available, falling back to NIO", unavailable);
+                return BloomdClientConfig.Transport.NIO;
+        }
+    }
+
+    static EventLoopGroup newEventLoopGroup(BloomdClientConfig.Transport transport, int threads) {
+        return transport == BloomdClientConfig.Transport.EPOLL ? Epoll.newEventLoopGroup(threads) : new NioEventLoopGroup(threads);
+    }
+
+    static Class<? extends SocketChannel> channelClass(BloomdClientConfig.Transport transport) {
+        return transport == BloomdClientConfig.Transport.EPOLL ? Epoll.channelClass() : NioSocketChannel.class;
+    }
+
+    /**
+     * @return the transport of a group created elsewhere
+     * @throws IllegalArgumentException if the group is neither a NIO nor an epoll one
+     */
+    static BloomdClientConfig.Transport transportOf(EventLoopGroup group) {
+        if (group instanceof NioEventLoopGroup || group instanceof NioEventLoop) {
+            return BloomdClientConfig.Transport.NIO;
+        }
+
+        if (isEpollGroup(group)) {
+            return BloomdClientConfig.Transport.EPOLL;
+        }
+
+        throw new IllegalArgumentException("Unsupported event loop group, has to be a NIO or an epoll one: "
+                + group.getClass().getName());
+    }
+
+    private static boolean isEpollGroup(EventLoopGroup group) {
+        try {
+            return Epoll.isGroup(group);
+        } catch (LinkageError e) {
+            // netty-transport-native-epoll is not in the classpath, so the group can not be an epoll one
+            return false;
+        }
+    }
+
+    private static Throwable epollUnavailabilityCause() {
+        try {
+            return Epoll.unavailabilityCause();
+        } catch (LinkageError e) {
+            // netty-transport-native-epoll is not in the classpath
+            return e;
+        }
+    }
+
+    /**
+     * Keeps references to the epoll classes out of {@link Transports} so it can be loaded without them.
+     */
+    private static final class Epoll {
+        static Throwable unavailabilityCause() {
+            return io.netty.channel.epoll.Epoll.unavailabilityCause();
+        }
+
+        static EventLoopGroup newEventLoopGroup(int threads) {
+            return new io.netty.channel.epoll.EpollEventLoopGroup(threads);
+        }
+
+        static Class<? extends SocketChannel> channelClass() {
+            return io.netty.channel.epoll.EpollSocketChannel.class;
+        }
+
+        static boolean isGroup(EventLoopGroup group) {
+            // event loops of the group are package private, but they are children of an EpollEventLoopGroup
+            return group instanceof io.netty.channel.epoll.EpollEventLoopGroup
+                    || group instanceof EventLoop
+                    && ((EventLoop) group).parent() instanceof io.netty.channel.epoll.EpollEventLoopGroup;
+        }
+    }
+}
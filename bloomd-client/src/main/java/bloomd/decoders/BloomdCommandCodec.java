@@ -1,5 +1,10 @@
 package bloomd.decoders;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+
+import java.nio.charset.StandardCharsets;
+
 /**
  * @param <ARG>
  * @param <OUTPUT>
@@ -7,5 +12,25 @@ package bloomd.decoders;
 public interface BloomdCommandCodec<ARG, OUTPUT> {
     String buildCommand(ARG args);
 
+    /**
+     * Writes the command for the provided args straight into the outbound buffer, without the line delimiter.
+     * <p>
+     * By default this encodes the output of {@link #buildCommand(Object)}. Codecs used in the hot path should
+     * override it to avoid building an intermediate String.
+     */
+    default void writeCommand(ARG args, ByteBuf out) {
+        ByteBufUtil.writeUtf8(out, buildCommand(args));
+    }
+
     OUTPUT decode(String msg) throws Exception;
-}
\ No newline at end of file
+
+    /**
+     * Decodes a single reply line, without the line delimiter.
+     * <p>
+     * By default the line is decoded as an UTF-8 String and passed to {@link #decode(String)}. Codecs whose
+     * replies can be large should override it to parse the bytes directly.
+     */
+    default OUTPUT decode(ByteBuf line) throws Exception {
+        return decode(line.toString(StandardCharsets.UTF_8));
+    }
+}
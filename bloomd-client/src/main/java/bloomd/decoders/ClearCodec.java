@@ -1,14 +1,26 @@
 package bloomd.decoders;
 
 import bloomd.replies.ClearResult;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+
+import java.nio.charset.StandardCharsets;
 
 public class ClearCodec implements BloomdCommandCodec<String, ClearResult> {
 
+    private static final byte[] CLEAR_PREFIX = "clear ".getBytes(StandardCharsets.US_ASCII);
+
     @Override
     public String buildCommand(String filterName) {
         return "clear " + filterName;
     }
 
+    @Override
+    public void writeCommand(String filterName, ByteBuf out) {
+        out.writeBytes(CLEAR_PREFIX);
+        ByteBufUtil.writeUtf8(out, filterName);
+    }
+
     @Override
     public ClearResult decode(String msg) throws Exception {
         switch (msg) {
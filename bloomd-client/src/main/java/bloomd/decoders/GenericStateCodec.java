@@ -3,9 +3,11 @@ package bloomd.decoders;
 import bloomd.FilterDoesNotExistException;
 import bloomd.args.StateArgs;
 import bloomd.replies.StateResult;
+import bloomd.replies.StateResults;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.nio.charset.StandardCharsets;
 
 /**
  * Generic codec implementation for the SET, CHECK, MULTI and BULK commands.
@@ -15,10 +17,12 @@ import java.util.List;
 public class GenericStateCodec<T> implements BloomdCommandCodec<StateArgs, T> {
 
     private final String cmd;
+    private final byte[] cmdPrefix;
     private final boolean singleItem;
 
     public GenericStateCodec(String cmd, boolean singleItem) {
         this.cmd = cmd;
+        this.cmdPrefix = (cmd + " ").getBytes(StandardCharsets.US_ASCII);
         this.singleItem = singleItem;
     }
 
@@ -38,19 +42,92 @@ public class GenericStateCodec<T> implements BloomdCommandCodec<StateArgs, T> {
         return command.toString();
     }
 
+    @Override
+    public void writeCommand(StateArgs args, ByteBuf out) {
+        out.writeBytes(cmdPrefix);
+        ByteBufUtil.writeUtf8(out, args.getFilterName());
+
+        for (String key : args.getKeys()) {
+            out.writeByte(' ');
+            ByteBufUtil.writeUtf8(out, key);
+        }
+    }
+
     @Override
     public T decode(String msg) throws Exception {
-        List<StateResult> checkResults = parseStateResult(msg);
+        return toOutput(parseStateResult(msg));
+    }
+
+    @Override
+    public T decode(ByteBuf line) throws Exception {
+        return toOutput(parseStateResult(line));
+    }
+
+    private T toOutput(StateResults results) {
         if (singleItem) {
-            T result = (T) checkResults.get(0);
+            T result = (T) results.get(0);
             return result;
         } else {
-            T result = (T) checkResults;
+            T result = (T) results;
             return result;
         }
     }
 
-    private List<StateResult> parseStateResult(String msg) {
+    /**
+     * Parses a reply of space separated Yes/No tokens straight off the buffer into a bit set. Anything
+     * else is decoded as a String and handled as an error reply.
+     */
+    private StateResults parseStateResult(ByteBuf line) {
+        int start = line.readerIndex();
+        int end = line.writerIndex();
+
+        // tokens are separated by a single space, ignoring a possible trailing one
+        int last = end;
+        while (last > start && line.getByte(last - 1) == ' ') {
+            last--;
+        }
+
+        int count = 1;
+        for (int i = start; i < last; i++) {
+            if (line.getByte(i) == ' ') {
+                count++;
+            }
+        }
+
+        long[] words = new long[(count + 63) >>> 6];
+        int n = 0;
+        int i = start;
+        while (i < last) {
+            if (line.getByte(i) == 'Y' && i + 3 <= last && line.getByte(i + 1) == 'e' && line.getByte(i + 2) == 's') {
+                words[n >>> 6] |= 1L << n;
+                n++;
+                i += 3;
+            } else if (line.getByte(i) == 'N' && i + 2 <= last && line.getByte(i + 1) == 'o') {
+                n++;
+                i += 2;
+            } else {
+                break;
+            }
+
+            if (i < last) {
+                if (line.getByte(i) != ' ') {
+                    break;
+                }
+                i++;
+            }
+        }
+
+        if (n != count || i < last) {
+            // not a list of states: either an error reply or garbage
+            String msg = line.toString(StandardCharsets.UTF_8);
+            parseStateResult(msg);
+            throw new IllegalStateException("Invalid result: " + msg);
+        }
+
+        return new StateResults(words, count);
+    }
+
+    private StateResults parseStateResult(String msg) {
         switch (msg) {
             case "Filter does not exist":
                 throw new FilterDoesNotExistException(msg);
@@ -58,7 +135,7 @@ public class GenericStateCodec<T> implements BloomdCommandCodec<StateArgs, T> {
             default:
                 String[] parts = msg.split(" ");
 
-                List<StateResult> result = new ArrayList<>();
+                StateResults.Builder result = new StateResults.Builder(parts.length);
 
                 for (String part : parts) {
                     switch (part) {
@@ -73,7 +150,7 @@ public class GenericStateCodec<T> implements BloomdCommandCodec<StateArgs, T> {
                     }
                 }
 
-                return result;
+                return result.build();
         }
     }
 }
@@ -2,9 +2,15 @@ package bloomd.decoders;
 
 import bloomd.FilterDoesNotExistException;
 import bloomd.replies.BloomdInfo;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+
+import java.nio.charset.StandardCharsets;
 
 public class InfoCodec implements BloomdCommandCodec<String, BloomdInfo> {
 
+    private static final byte[] INFO_PREFIX = "info ".getBytes(StandardCharsets.US_ASCII);
+
     private BloomdInfoBuilder builder = null;
 
     @Override
@@ -12,6 +18,12 @@ public class InfoCodec implements BloomdCommandCodec<String, BloomdInfo> {
         return "info " + filterName;
     }
 
+    @Override
+    public void writeCommand(String filterName, ByteBuf out) {
+        out.writeBytes(INFO_PREFIX);
+        ByteBufUtil.writeUtf8(out, filterName);
+    }
+
     @Override
     public BloomdInfo decode(String msg) throws Exception {
         switch (msg) {
@@ -1,6 +1,10 @@
 package bloomd.decoders;
 
 import bloomd.FilterDoesNotExistException;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+
+import java.nio.charset.StandardCharsets;
 
 /**
  * Single arg commands codec. Used to implement `close`, `drop` and `flush`.
@@ -8,9 +12,11 @@ import bloomd.FilterDoesNotExistException;
 public class SingleArgCodec implements BloomdCommandCodec<String, Boolean> {
 
     private final String command;
+    private final byte[] commandPrefix;
 
     public SingleArgCodec(String command) {
         this.command = command;
+        this.commandPrefix = (command + " ").getBytes(StandardCharsets.US_ASCII);
     }
 
     @Override
@@ -18,6 +24,12 @@ public class SingleArgCodec implements BloomdCommandCodec<String, Boolean> {
         return command + " " + filterName;
     }
 
+    @Override
+    public void writeCommand(String filterName, ByteBuf out) {
+        out.writeBytes(commandPrefix);
+        ByteBufUtil.writeUtf8(out, filterName);
+    }
+
     @Override
     public Boolean decode(String msg) throws Exception {
         switch (msg) {
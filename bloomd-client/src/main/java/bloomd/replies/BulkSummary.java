@@ -0,0 +1,61 @@
+package bloomd.replies;
+
+/**
+ * Aggregated results of streaming keys to a filter through several BULK commands.
+ */
+public class BulkSummary {
+    private final long keys;
+    private final long newKeys;
+
+    public BulkSummary(long keys, long newKeys) {
+        this.keys = keys;
+        this.newKeys = newKeys;
+    }
+
+    /**
+     * @return number of keys sent to the filter
+     */
+    public long getKeys() {
+        return keys;
+    }
+
+    /**
+     * @return number of keys that were added to the filter, i.e. got a {@link StateResult#YES}
+     */
+    public long getNewKeys() {
+        return newKeys;
+    }
+
+    /**
+     * @return number of keys that were already present in the filter, i.e. got a {@link StateResult#NO}
+     */
+    public long getExistingKeys() {
+        return keys - newKeys;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        BulkSummary that = (BulkSummary) o;
+
+        return keys == that.keys && newKeys == that.newKeys;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = (int) (keys ^ (keys >>> 32));
+        result = 31 * result + (int) (newKeys ^ (newKeys >>> 32));
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "BulkSummary{" +
+                "keys=" + keys +
+                ", newKeys=" + newKeys +
+                ", existingKeys=" + getExistingKeys() +
+                '}';
+    }
+}
@@ -0,0 +1,152 @@
+package bloomd.replies;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.function.IntConsumer;
+
+/**
+ * Results of a MULTI or BULK command, packed one bit per key: a set bit means {@link StateResult#YES}.
+ * Results are kept in the same order as the keys sent with the command.
+ */
+public final class StateResults {
+    private final long[] words;
+    private final int size;
+
+    public StateResults(long[] words, int size) {
+        if (size < 0 || words.length < wordsFor(size)) {
+            throw new IllegalArgumentException("Not enough words to hold " + size + " results");
+        }
+        this.words = words;
+        this.size = size;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isYes(int index) {
+        checkIndex(index);
+        return (words[index >>> 6] & (1L << index)) != 0;
+    }
+
+    public StateResult get(int index) {
+        return isYes(index) ? StateResult.YES : StateResult.NO;
+    }
+
+    /**
+     * @return the number of {@link StateResult#YES} results
+     */
+    public int cardinality() {
+        int cardinality = 0;
+        for (long word : words) {
+            cardinality += Long.bitCount(word);
+        }
+        return cardinality;
+    }
+
+    /**
+     * Calls the provided action with the index of every {@link StateResult#YES} result, in ascending order.
+     */
+    public void forEachYes(IntConsumer action) {
+        for (int i = 0; i < words.length; i++) {
+            long word = words[i];
+            while (word != 0) {
+                action.accept((i << 6) + Long.numberOfTrailingZeros(word));
+                word &= word - 1;
+            }
+        }
+    }
+
+    /**
+     * @return an unmodifiable list view of these results
+     */
+    public List<StateResult> asList() {
+        return new ListView();
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+
+    private static int wordsFor(int size) {
+        return (size + 63) >>> 6;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        StateResults that = (StateResults) o;
+
+        if (size != that.size) return false;
+        for (int i = 0; i < wordsFor(size); i++) {
+            if (words[i] != that.words[i]) return false;
+        }
+
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = Arrays.hashCode(Arrays.copyOf(words, wordsFor(size)));
+        result = 31 * result + size;
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return asList().toString();
+    }
+
+    private class ListView extends AbstractList<StateResult> implements RandomAccess {
+        @Override
+        public StateResult get(int index) {
+            return StateResults.this.get(index);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    public static class Builder {
+        private long[] words;
+        private int size;
+
+        public Builder() {
+            this(64);
+        }
+
+        public Builder(int expectedSize) {
+            this.words = new long[Math.max(1, wordsFor(expectedSize))];
+        }
+
+        public Builder add(StateResult result) {
+            return add(result == StateResult.YES);
+        }
+
+        public Builder add(boolean yes) {
+            int word = size >>> 6;
+            if (word == words.length) {
+                words = Arrays.copyOf(words, words.length * 2);
+            }
+
+            if (yes) {
+                words[word] |= 1L << size;
+            }
+
+            size++;
+            return this;
+        }
+
+        public StateResults build() {
+            return new StateResults(Arrays.copyOf(words, wordsFor(size)), size);
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package bloomd.tools;
+
+import bloomd.BloomdClient;
+import bloomd.BloomdClientImpl;
+import bloomd.BloomdClientPool;
+import bloomd.replies.StateResults;
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Loads files of newline delimited keys into a filter.
+ * <p>
+ * The file is memory mapped and sliced into ranges of keys that are copied straight into BULK commands, so keys
+ * are never decoded into Strings. Commands are pipelined over several connections of a {@link BloomdClientPool},
+ * which makes loading bounded by the network rather than by allocations.
+ * <p>
+ * Slicing the file page faults and scans for line delimiters, so it runs on a thread of its own for every load
+ * instead of on the threads reading replies.
+ * <p>
+ * Keys are used verbatim: they are expected not to contain spaces. Empty lines are skipped.
+ */
+public class BulkLoader {
+
+    private final BloomdClientPool pool;
+    private final int connections;
+    private final int batchSize;
+    private final int batchesInFlightPerConnection;
+    private final long regionSize;
+
+    private final RawBulkCodec codec = new RawBulkCodec();
+
+    private BulkLoader(BloomdClientPool pool, int connections, int batchSize,
+                       int batchesInFlightPerConnection, long regionSize) {
+        this.pool = pool;
+        this.connections = connections;
+        this.batchSize = batchSize;
+        this.batchesInFlightPerConnection = batchesInFlightPerConnection;
+        this.regionSize = regionSize;
+    }
+
+    /**
+     * Loads every key of the file into the filter, which has to exist already.
+     *
+     * @return a future that resolves once every key was loaded. If a command fails no more keys are sent and the
+     * future fails, though the keys sent before might have been loaded
+     */
+    public CompletableFuture<LoadReport> load(String filterName, Path file) throws IOException {
+        return new Load(new KeyFileSlicer(file, filterName, batchSize, regionSize)).start();
+    }
+
+    private class Load {
+        private final KeyFileSlicer slicer;
+        // the only thread slicing the file, never blocking the I/O threads
+        private final ExecutorService slicing =
+                Executors.newSingleThreadExecutor(new DefaultThreadFactory("bloomd-bulk-loader", true));
+        private final long startedAt = System.nanoTime();
+
+        private final AtomicLong keys = new AtomicLong();
+        private final AtomicLong newKeys = new AtomicLong();
+        private final AtomicInteger activePipelines = new AtomicInteger(connections * batchesInFlightPerConnection);
+        private final AtomicReference<Throwable> error = new AtomicReference<>();
+        private final CompletableFuture<LoadReport> result = new CompletableFuture<>();
+
+        Load(KeyFileSlicer slicer) {
+            this.slicer = slicer;
+        }
+
+        CompletableFuture<LoadReport> start() {
+            for (int i = 0; i < connections; i++) {
+                pool.acquire().whenComplete((client, err) -> {
+                    if (err != null) {
+                        for (int j = 0; j < batchesInFlightPerConnection; j++) {
+                            pipelineDone(err);
+                        }
+                        return;
+                    }
+
+                    // the connection goes back to the pool once all of its pipelines are done
+                    AtomicInteger connectionPipelines = new AtomicInteger(batchesInFlightPerConnection);
+                    Runnable onPipelineDone = () -> {
+                        if (connectionPipelines.decrementAndGet() == 0) {
+                            pool.release(client);
+                        }
+                    };
+
+                    for (int j = 0; j < batchesInFlightPerConnection; j++) {
+                        slicing.execute(() -> sendNext((BloomdClientImpl) client, onPipelineDone));
+                    }
+                });
+            }
+            return result;
+        }
+
+        private void sendNext(BloomdClientImpl client, Runnable onPipelineDone) {
+            KeyRange range;
+            try {
+                range = error.get() == null ? slicer.next() : null;
+            } catch (IOException e) {
+                range = null;
+                error.compareAndSet(null, e);
+            }
+
+            if (range == null) {
+                onPipelineDone.run();
+                pipelineDone(null);
+                return;
+            }
+
+            int keyCount = range.getKeyCount();
+            CompletableFuture<StateResults> sent;
+            try {
+                sent = client.sendCommand(codec, range);
+            } catch (RuntimeException e) {
+                sent = new CompletableFuture<>();
+                sent.completeExceptionally(e);
+            }
+
+            sent.whenComplete((states, err) -> {
+                if (err != null) {
+                    onPipelineDone.run();
+                    pipelineDone(err);
+                    return;
+                }
+
+                keys.addAndGet(keyCount);
+                newKeys.addAndGet(states.cardinality());
+                slicing.execute(() -> sendNext(client, onPipelineDone));
+            });
+        }
+
+        private void pipelineDone(Throwable err) {
+            if (err != null) {
+                error.compareAndSet(null, err instanceof CompletionException && err.getCause() != null ? err.getCause() : err);
+            }
+
+            if (activePipelines.decrementAndGet() > 0) {
+                return;
+            }
+
+            // no pipeline is left to slice the file
+            slicing.shutdown();
+            try {
+                slicer.close();
+            } catch (IOException ignored) {
+            }
+
+            if (error.get() != null) {
+                result.completeExceptionally(error.get());
+            } else {
+                result.complete(new LoadReport(keys.get(), newKeys.get(), slicer.getFileSize(),
+                        System.nanoTime() - startedAt));
+            }
+        }
+    }
+
+    /**
+     * Usage: BulkLoader host port filter_name file [connections]
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 4) {
+            System.err.println("Usage: BulkLoader host port filter_name file [connections]");
+            System.exit(1);
+        }
+
+        int connections = args.length > 4 ? Integer.parseInt(args[4]) : 4;
+        BloomdClientPool pool = new BloomdClientPool(args[0], Integer.parseInt(args[1]), connections, 2_000, 30_000);
+        try {
+            BulkLoader loader = new Builder()
+                    .setPool(pool)
+                    .setConnections(connections)
+                    .build();
+
+            LoadReport report = loader.load(args[2], Paths.get(args[3])).get();
+            System.out.println(report);
+        } finally {
+            pool.closeConnections().sync();
+        }
+    }
+
+    public static class Builder {
+        private BloomdClientPool pool;
+        private int connections = 4;
+        private int batchSize = 10_000;
+        private int batchesInFlightPerConnection = 4;
+        private long regionSize = 256 * 1024 * 1024;
+
+        public Builder setPool(BloomdClientPool pool) {
+            this.pool = pool;
+            return this;
+        }
+
+        /**
+         * @param connections number of connections of the pool used to send commands in parallel. It should not
+         *                    be greater than the max connections of the pool
+         */
+        public Builder setConnections(int connections) {
+            if (connections < 1) {
+                throw new IllegalArgumentException("connections has to be at least 1");
+            }
+            this.connections = connections;
+            return this;
+        }
+
+        /**
+         * @param batchSize max number of keys sent on each BULK command
+         */
+        public Builder setBatchSize(int batchSize) {
+            if (batchSize < 1) {
+                throw new IllegalArgumentException("batchSize has to be at least 1");
+            }
+            this.batchSize = batchSize;
+            return this;
+        }
+
+        /**
+         * @param batchesInFlightPerConnection number of BULK commands pipelined on each connection
+         */
+        public Builder setBatchesInFlightPerConnection(int batchesInFlightPerConnection) {
+            if (batchesInFlightPerConnection < 1) {
+                throw new IllegalArgumentException("batchesInFlightPerConnection has to be at least 1");
+            }
+            this.batchesInFlightPerConnection = batchesInFlightPerConnection;
+            return this;
+        }
+
+        /**
+         * @param regionSize max number of bytes of the file mapped at once
+         */
+        public Builder setRegionSize(long regionSize) {
+            this.regionSize = regionSize;
+            return this;
+        }
+
+        public BulkLoader build() {
+            if (pool == null) {
+                throw new IllegalArgumentException("A pool is required");
+            }
+            return new BulkLoader(pool, connections, batchSize, batchesInFlightPerConnection, regionSize);
+        }
+    }
+}
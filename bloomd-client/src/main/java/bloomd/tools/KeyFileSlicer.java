@@ -0,0 +1,113 @@
+package bloomd.tools;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufProcessor;
+import io.netty.buffer.Unpooled;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Memory maps a file of newline delimited keys and slices it into {@link KeyRange}s of up to {@code batchSize}
+ * keys. The file is mapped in regions that end on a line delimiter, so keys never span two regions.
+ */
+final class KeyFileSlicer implements AutoCloseable {
+
+    private final FileChannel channel;
+    private final long fileSize;
+    private final String filterName;
+    private final int batchSize;
+    private final long regionSize;
+
+    private long nextRegionStart = 0;
+    private ByteBuf region;
+
+    KeyFileSlicer(Path file, String filterName, int batchSize, long regionSize) throws IOException {
+        if (regionSize < 1 || regionSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("regionSize has to be between 1 and " + Integer.MAX_VALUE);
+        }
+
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        this.fileSize = channel.size();
+        this.filterName = filterName;
+        this.batchSize = batchSize;
+        this.regionSize = regionSize;
+    }
+
+    long getFileSize() {
+        return fileSize;
+    }
+
+    /**
+     * @return the next range of keys, or {@code null} once the whole file was sliced
+     */
+    synchronized KeyRange next() throws IOException {
+        for (; ; ) {
+            if (region == null || !region.isReadable()) {
+                if (!mapNextRegion()) {
+                    return null;
+                }
+            }
+
+            int start = region.readerIndex();
+            int end = region.writerIndex();
+            int index = start;
+            int keyCount = 0;
+            while (index < end && keyCount < batchSize) {
+                int lf = region.forEachByte(index, end - index, ByteBufProcessor.FIND_LF);
+                int lineEnd = lf < 0 ? end : lf;
+                int keyEnd = lineEnd > index && region.getByte(lineEnd - 1) == '\r' ? lineEnd - 1 : lineEnd;
+                if (keyEnd > index) {
+                    keyCount++;
+                }
+                index = lineEnd + 1;
+            }
+
+            index = Math.min(index, end);
+            region.readerIndex(index);
+
+            // a range made only of empty lines is skipped
+            if (keyCount > 0) {
+                return new KeyRange(filterName, region.slice(start, index - start), keyCount);
+            }
+        }
+    }
+
+    private boolean mapNextRegion() throws IOException {
+        if (nextRegionStart >= fileSize) {
+            region = null;
+            return false;
+        }
+
+        long size = Math.min(regionSize, fileSize - nextRegionStart);
+        MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, nextRegionStart, size);
+
+        int length = (int) size;
+        if (nextRegionStart + size < fileSize) {
+            // cut the region after its last line delimiter, the next one starts with the remaining partial line
+            int lastLf = length - 1;
+            while (lastLf >= 0 && mapped.get(lastLf) != '\n') {
+                lastLf--;
+            }
+
+            if (lastLf < 0) {
+                throw new IOException("Found a line longer than " + size + " bytes at offset " + nextRegionStart);
+            }
+            length = lastLf + 1;
+        }
+
+        mapped.limit(length);
+        region = Unpooled.wrappedBuffer(mapped);
+        nextRegionStart += length;
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        // mapped regions remain valid after closing the channel, they are unmapped once garbage collected
+        channel.close();
+    }
+}
@@ -0,0 +1,30 @@
+package bloomd.tools;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * A slice of a key file holding {@code keyCount} newline delimited keys. Empty lines are not counted as keys.
+ */
+final class KeyRange {
+    private final String filterName;
+    private final ByteBuf keys;
+    private final int keyCount;
+
+    KeyRange(String filterName, ByteBuf keys, int keyCount) {
+        this.filterName = filterName;
+        this.keys = keys;
+        this.keyCount = keyCount;
+    }
+
+    String getFilterName() {
+        return filterName;
+    }
+
+    ByteBuf getKeys() {
+        return keys;
+    }
+
+    int getKeyCount() {
+        return keyCount;
+    }
+}
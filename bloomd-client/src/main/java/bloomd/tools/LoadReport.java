@@ -0,0 +1,56 @@
+package bloomd.tools;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Results of loading a key file with a {@link BulkLoader}.
+ */
+public class LoadReport {
+    private final long keys;
+    private final long newKeys;
+    private final long bytes;
+    private final long elapsedNanos;
+
+    public LoadReport(long keys, long newKeys, long bytes, long elapsedNanos) {
+        this.keys = keys;
+        this.newKeys = newKeys;
+        this.bytes = bytes;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public long getKeys() {
+        return keys;
+    }
+
+    /**
+     * @return number of keys that were not present in the filter before loading the file
+     */
+    public long getNewKeys() {
+        return newKeys;
+    }
+
+    /**
+     * @return size of the loaded file
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    public long getElapsed(TimeUnit unit) {
+        return unit.convert(elapsedNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public double getKeysPerSecond() {
+        return elapsedNanos == 0 ? 0 : keys * 1e9 / elapsedNanos;
+    }
+
+    public double getMegabytesPerSecond() {
+        return elapsedNanos == 0 ? 0 : bytes * 1e9 / elapsedNanos / (1024 * 1024);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Loaded %d keys (%d new) from %d bytes in %d ms: %.0f keys/s, %.1f MB/s",
+                keys, newKeys, bytes, getElapsed(TimeUnit.MILLISECONDS), getKeysPerSecond(), getMegabytesPerSecond());
+    }
+}
@@ -0,0 +1,73 @@
+package bloomd.tools;
+
+import bloomd.decoders.BloomdCommandCodec;
+import bloomd.decoders.GenericStateCodec;
+import bloomd.replies.StateResults;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufProcessor;
+import io.netty.buffer.ByteBufUtil;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * BULK codec that copies keys straight from a {@link KeyRange} into the command, replacing line delimiters with
+ * spaces, so keys are never decoded into Strings.
+ */
+final class RawBulkCodec implements BloomdCommandCodec<KeyRange, StateResults> {
+
+    private static final byte[] PREFIX = "b ".getBytes(StandardCharsets.US_ASCII);
+
+    private final GenericStateCodec<StateResults> replyCodec = new GenericStateCodec<>("b", false);
+
+    @Override
+    public String buildCommand(KeyRange args) {
+        StringBuilder command = new StringBuilder("b ").append(args.getFilterName());
+        forEachKey(args.getKeys(), (index, length) ->
+                command.append(' ').append(args.getKeys().toString(index, length, StandardCharsets.UTF_8)));
+        return command.toString();
+    }
+
+    @Override
+    public void writeCommand(KeyRange args, ByteBuf out) {
+        ByteBuf keys = args.getKeys();
+        out.ensureWritable(PREFIX.length + args.getFilterName().length() + keys.readableBytes() + 1);
+        out.writeBytes(PREFIX);
+        ByteBufUtil.writeUtf8(out, args.getFilterName());
+        forEachKey(keys, (index, length) -> {
+            out.writeByte(' ');
+            out.writeBytes(keys, index, length);
+        });
+    }
+
+    @Override
+    public StateResults decode(String msg) throws Exception {
+        return replyCodec.decode(msg);
+    }
+
+    @Override
+    public StateResults decode(ByteBuf line) throws Exception {
+        return replyCodec.decode(line);
+    }
+
+    /**
+     * Calls the consumer with the index and length of every non empty line of the buffer, without the
+     * line delimiter.
+     */
+    static void forEachKey(ByteBuf keys, KeyConsumer consumer) {
+        int index = keys.readerIndex();
+        int end = keys.writerIndex();
+        while (index < end) {
+            int lf = keys.forEachByte(index, end - index, ByteBufProcessor.FIND_LF);
+            int lineEnd = lf < 0 ? end : lf;
+            int keyEnd = lineEnd > index && keys.getByte(lineEnd - 1) == '\r' ? lineEnd - 1 : lineEnd;
+            if (keyEnd > index) {
+                consumer.accept(index, keyEnd - index);
+            }
+            index = lineEnd + 1;
+        }
+    }
+
+    interface KeyConsumer {
+        void accept(int index, int length);
+    }
+}
@@ -0,0 +1,70 @@
+package bloomd;
+
+import bloomd.replies.StateResult;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AdaptiveSizingTest {
+
+    @Test
+    public void testConnectionsGrowUnderLoadAndShrinkWhenIdle() throws Exception {
+        try (FakeBloomdServer server = new FakeBloomdServer()) {
+            BloomdClientPool pool = new BloomdClientPool("localhost", server.getPort(), 3, 2000, 1000);
+            MultiplexedBloomdClient client = new MultiplexedBloomdClient.Builder()
+                    .setPool(pool)
+                    .setConnections(1, 3)
+                    .setMaxInFlightPerConnection(4)
+                    .setGrowInFlightThreshold(2)
+                    .setGrowBacklogWait(1, TimeUnit.MILLISECONDS)
+                    .setShrinkIdleTime(50, TimeUnit.MILLISECONDS)
+                    .setEvaluationInterval(5, TimeUnit.MILLISECONDS)
+                    .build();
+
+            try {
+                assertThat(client.getSizingStats().getConnections()).isEqualTo(1);
+                client.create("filter").get(2, TimeUnit.SECONDS);
+
+                // keep the connections busy until every connection is in use
+                long deadline = System.currentTimeMillis() + 5_000;
+                while (client.getSizingStats().getConnections() < 3 && System.currentTimeMillis() < deadline) {
+                    List<CompletableFuture<StateResult>> results = new ArrayList<>();
+                    for (int i = 0; i < 2_000; i++) {
+                        results.add(client.set("filter", "key" + i));
+                    }
+                    for (CompletableFuture<StateResult> result : results) {
+                        result.get(2, TimeUnit.SECONDS);
+                    }
+                }
+
+                ConnectionSizingStats stats = client.getSizingStats();
+                assertThat(stats.getConnections()).isEqualTo(3);
+                // a connection might have been shrunk between rounds and added again
+                assertThat(stats.getGrows() - stats.getShrinks()).isEqualTo(2);
+                assertThat(pool.getOpenConnections()).isEqualTo(3);
+
+                // and back to the min once idle
+                deadline = System.currentTimeMillis() + 5_000;
+                while (client.getSizingStats().getConnections() > 1 && System.currentTimeMillis() < deadline) {
+                    Thread.sleep(10);
+                }
+
+                stats = client.getSizingStats();
+                assertThat(stats.getConnections()).isEqualTo(1);
+                assertThat(stats.getShrinks()).isEqualTo(stats.getGrows());
+                assertThat(stats.getAverageInFlight()).isEqualTo(0);
+
+                // the remaining connection is still usable
+                assertThat(client.check("filter", "key0").get(2, TimeUnit.SECONDS)).isEqualTo(StateResult.YES);
+            } finally {
+                client.release().get(2, TimeUnit.SECONDS);
+                pool.closeConnections();
+            }
+        }
+    }
+}
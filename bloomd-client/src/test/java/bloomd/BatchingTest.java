@@ -0,0 +1,163 @@
+package bloomd;
+
+import bloomd.replies.CreateResult;
+import bloomd.replies.StateResult;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class BatchingTest {
+
+    private FakeBloomdServer server;
+    private BloomdClientPool pool;
+    private MultiplexedBloomdClient multiplexedClient;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new FakeBloomdServer();
+        pool = new BloomdClientPool("localhost", server.getPort(), 2, 2000, 1000);
+        multiplexedClient = new MultiplexedBloomdClient(pool, 2, 64);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        multiplexedClient.release().get(2, TimeUnit.SECONDS);
+        pool.closeConnections();
+        server.close();
+    }
+
+    @Test
+    public void testConcurrentSetsAreBatched() throws Exception {
+        BatchingBloomdClient client = new BatchingBloomdClient(multiplexedClient, 256, 5, TimeUnit.MILLISECONDS);
+        assertThat(client.create("filter").get(2, TimeUnit.SECONDS)).isEqualTo(CreateResult.DONE);
+        long commandsBefore = server.getCommands();
+
+        int threads = 8;
+        int setsPerThread = 500;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<List<CompletableFuture<StateResult>>>> submissions = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                submissions.add(executor.submit(() -> {
+                    List<CompletableFuture<StateResult>> results = new ArrayList<>();
+                    for (int i = 0; i < setsPerThread; i++) {
+                        results.add(client.set("filter", "key-" + thread + "-" + i));
+                    }
+                    return results;
+                }));
+            }
+
+            for (Future<List<CompletableFuture<StateResult>>> submission : submissions) {
+                for (CompletableFuture<StateResult> result : submission.get(5, TimeUnit.SECONDS)) {
+                    assertThat(result.get(5, TimeUnit.SECONDS)).isEqualTo(StateResult.YES);
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        // 4000 sets should have been sent as a handful of bulk commands
+        assertThat(server.getCommands() - commandsBefore).isLessThan(threads * setsPerThread / 10);
+        assertThat(client.check("filter", "key-7-499").get(2, TimeUnit.SECONDS)).isEqualTo(StateResult.YES);
+    }
+
+    @Test
+    public void testFullBatchCancelsItsLinger() throws Exception {
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1);
+        scheduler.setRemoveOnCancelPolicy(true);
+        try {
+            BatchingBloomdClient client = new BatchingBloomdClient(multiplexedClient, 4, 1, TimeUnit.HOURS, scheduler);
+            client.create("filter").get(2, TimeUnit.SECONDS);
+
+            List<CompletableFuture<StateResult>> results = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                results.add(client.set("filter", "key" + i));
+            }
+            for (CompletableFuture<StateResult> result : results) {
+                assertThat(result.get(2, TimeUnit.SECONDS)).isEqualTo(StateResult.YES);
+            }
+
+            // nothing keeps the sent batch around for the next hour
+            assertThat(scheduler.getQueue()).isEmpty();
+        } finally {
+            scheduler.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testEachCallerGetsItsOwnResult() throws Exception {
+        BatchingBloomdClient client = new BatchingBloomdClient(multiplexedClient, 16, 50, TimeUnit.MILLISECONDS);
+        client.create("filter").get(2, TimeUnit.SECONDS);
+        client.set("filter", "existing").get(2, TimeUnit.SECONDS);
+
+        CompletableFuture<StateResult> existing = client.set("filter", "existing");
+        CompletableFuture<StateResult> first = client.set("filter", "new");
+        CompletableFuture<StateResult> second = client.set("filter", "new");
+
+        assertThat(existing.get(2, TimeUnit.SECONDS)).isEqualTo(StateResult.NO);
+        assertThat(first.get(2, TimeUnit.SECONDS)).isEqualTo(StateResult.YES);
+        assertThat(second.get(2, TimeUnit.SECONDS)).isEqualTo(StateResult.NO);
+    }
+
+    @Test
+    public void testConcurrentChecksAreBatched() throws Exception {
+        BatchingBloomdClient client = new BatchingBloomdClient(multiplexedClient, 64, 20, TimeUnit.MILLISECONDS);
+        client.create("filter").get(2, TimeUnit.SECONDS);
+        client.set("filter", "key0").get(2, TimeUnit.SECONDS);
+        client.set("filter", "key1").get(2, TimeUnit.SECONDS);
+
+        long commandsBefore = server.getCommands();
+        List<CompletableFuture<StateResult>> results = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            results.add(client.check("filter", "key" + i));
+        }
+
+        for (int i = 0; i < results.size(); i++) {
+            assertThat(results.get(i).get(2, TimeUnit.SECONDS)).isEqualTo(i < 2 ? StateResult.YES : StateResult.NO);
+        }
+
+        // one full batch of 64 keys and a lingering one with the remaining 36
+        assertThat(server.getCommands() - commandsBefore).isEqualTo(2);
+
+        BatchingStats stats = client.getCheckStats();
+        assertThat(stats.getBatches()).isEqualTo(2);
+        assertThat(stats.getFullBatches()).isEqualTo(1);
+        assertThat(stats.getKeys()).isEqualTo(100);
+        assertThat(stats.getLargestBatch()).isEqualTo(64);
+        assertThat(stats.getAverageBatchSize()).isEqualTo(50);
+
+        assertThat(client.getSetStats().getKeys()).isEqualTo(2);
+    }
+
+    @Test
+    public void testErrorsAreSurfacedToEveryCaller() throws Exception {
+        BatchingBloomdClient client = new BatchingBloomdClient(multiplexedClient, 16, 10, TimeUnit.MILLISECONDS);
+
+        List<CompletableFuture<StateResult>> results = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            results.add(client.set("non-extant-filter", "key" + i));
+        }
+
+        for (CompletableFuture<StateResult> result : results) {
+            try {
+                result.get(2, TimeUnit.SECONDS);
+                fail("Should have failed because the filter does not exist");
+            } catch (Exception e) {
+                assertThat(e.getCause()).isInstanceOf(FilterDoesNotExistException.class);
+            }
+        }
+    }
+}
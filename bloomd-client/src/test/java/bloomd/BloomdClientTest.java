@@ -12,6 +12,7 @@ import bloomd.replies.BloomdInfo;
 import bloomd.replies.ClearResult;
 import bloomd.replies.CreateResult;
 import bloomd.replies.StateResult;
+import bloomd.replies.StateResults;
 
 import static org.assertj.core.api.Java6Assertions.assertThat;
 
@@ -102,6 +103,13 @@ public class BloomdClientTest extends DockerBasedTest {
         assertThat(info.isInMemory()).isTrue();
 
 
+        // results of multiple keys can also be retrieved packed in a bit set
+        StateResults multiBits = sync(client.multiBits(FILTER, "fus", "non-extant-key", "dah"));
+        assertThat(multiBits.size()).isEqualTo(3);
+        assertThat(multiBits.cardinality()).isEqualTo(2);
+        assertThat(multiBits.asList()).isEqualTo(Arrays.asList(StateResult.YES, StateResult.NO, StateResult.YES));
+
+
         // we should be able to drop this filter
         assertThat(sync(client.drop(FILTER))).isTrue();
 
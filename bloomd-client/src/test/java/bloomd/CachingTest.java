@@ -0,0 +1,119 @@
+package bloomd;
+
+import bloomd.replies.StateResult;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CachingTest {
+
+    @Test
+    public void testPresentKeysAreAnsweredLocally() throws Exception {
+        try (FakeBloomdServer server = new FakeBloomdServer()) {
+            BloomdClientPool pool = new BloomdClientPool("localhost", server.getPort(), 1, 2000, 1000);
+            MultiplexedBloomdClient multiplexed = new MultiplexedBloomdClient(pool, 1, 16);
+
+            List<String> sent = new ArrayList<>();
+            BloomdClient recording = (BloomdClient) Proxy.newProxyInstance(BloomdClient.class.getClassLoader(),
+                    new Class[]{BloomdClient.class},
+                    (proxy, method, args) -> {
+                        if (method.getName().equals("check") || method.getName().equals("multiBits")) {
+                            Object[] keys = Arrays.copyOfRange(args, 1, args.length);
+                            synchronized (sent) {
+                                sent.add(method.getName() + " " + Arrays.deepToString(keys));
+                            }
+                        }
+                        return method.invoke(multiplexed, args);
+                    });
+
+            try {
+                CachingBloomdClient client = new CachingBloomdClient.Builder().setClient(recording).build();
+                client.create("filter").get(2, TimeUnit.SECONDS);
+                multiplexed.set("filter", "a").get(2, TimeUnit.SECONDS);
+                client.set("filter", "b").get(2, TimeUnit.SECONDS);
+
+                // only YES is cached, set keys are known to be present
+                assertThat(client.check("filter", "a").get(2, TimeUnit.SECONDS)).isEqualTo(StateResult.YES);
+                assertThat(client.check("filter", "a").get(2, TimeUnit.SECONDS)).isEqualTo(StateResult.YES);
+                assertThat(client.check("filter", "b").get(2, TimeUnit.SECONDS)).isEqualTo(StateResult.YES);
+                assertThat(client.check("filter", "c").get(2, TimeUnit.SECONDS)).isEqualTo(StateResult.NO);
+                assertThat(client.check("filter", "c").get(2, TimeUnit.SECONDS)).isEqualTo(StateResult.NO);
+                assertThat(sent).containsExactly("check [a]", "check [c]", "check [c]");
+
+                // only the keys that are not cached are sent, results come back in the order of the keys
+                sent.clear();
+                multiplexed.set("filter", "d").get(2, TimeUnit.SECONDS);
+                assertThat(client.multi("filter", "a", "c", "b", "d").get(2, TimeUnit.SECONDS))
+                        .containsExactly(StateResult.YES, StateResult.NO, StateResult.YES, StateResult.YES);
+                assertThat(client.multi("filter", "d", "a", "b").get(2, TimeUnit.SECONDS))
+                        .containsExactly(StateResult.YES, StateResult.YES, StateResult.YES);
+                assertThat(sent).containsExactly("multiBits [[c, d]]");
+
+                CacheStats stats = client.getStats();
+                assertThat(stats.getHits()).isEqualTo(7);
+                assertThat(stats.getMisses()).isEqualTo(5);
+                assertThat(stats.getHitRatio()).isEqualTo(7 / 12.0);
+                assertThat(stats.getEntries()).isEqualTo(3);
+                assertThat(stats.getUsedBytes()).isPositive();
+
+                // dropping the filter forgets its keys
+                sent.clear();
+                client.drop("filter").get(2, TimeUnit.SECONDS);
+                client.create("filter").get(2, TimeUnit.SECONDS);
+                assertThat(client.check("filter", "a").get(2, TimeUnit.SECONDS)).isEqualTo(StateResult.NO);
+                assertThat(sent).containsExactly("check [a]");
+
+                client.bulk("filter", "x", "y").get(2, TimeUnit.SECONDS);
+                client.clear("filter").get(2, TimeUnit.SECONDS);
+                sent.clear();
+                client.check("filter", "x").get(2, TimeUnit.SECONDS);
+                assertThat(sent).containsExactly("check [x]");
+            } finally {
+                multiplexed.release().get(2, TimeUnit.SECONDS);
+                pool.closeConnections();
+            }
+        }
+    }
+
+    @Test
+    public void testCacheStaysWithinItsSizeAndKeepsHotKeys() throws Exception {
+        try (FakeBloomdServer server = new FakeBloomdServer()) {
+            BloomdClientPool pool = new BloomdClientPool("localhost", server.getPort(), 1, 2000, 1000);
+            MultiplexedBloomdClient multiplexed = new MultiplexedBloomdClient(pool, 1, 128);
+
+            try {
+                CachingBloomdClient client = new CachingBloomdClient.Builder()
+                        .setClient(multiplexed)
+                        .setMaxBytes(64 * 1024)
+                        .setConcurrencyLevel(4)
+                        .build();
+                client.create("filter").get(2, TimeUnit.SECONDS);
+                client.set("filter", "hot").get(2, TimeUnit.SECONDS);
+                client.check("filter", "hot").get(2, TimeUnit.SECONDS);
+
+                for (int i = 0; i < 5_000; i++) {
+                    client.set("filter", "key" + i).get(2, TimeUnit.SECONDS);
+                }
+
+                CacheStats stats = client.getStats();
+                assertThat(stats.getUsedBytes()).isLessThanOrEqualTo(64 * 1024);
+                assertThat(stats.getEvictions()).isPositive();
+                assertThat(stats.getEntries()).isLessThan(5_000);
+
+                // checked twice, so protected from the keys that were only set once
+                long commands = server.getCommands();
+                assertThat(client.check("filter", "hot").get(2, TimeUnit.SECONDS)).isEqualTo(StateResult.YES);
+                assertThat(server.getCommands()).isEqualTo(commands);
+            } finally {
+                multiplexed.release().get(2, TimeUnit.SECONDS);
+                pool.closeConnections();
+            }
+        }
+    }
+}
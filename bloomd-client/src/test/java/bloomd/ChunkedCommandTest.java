@@ -0,0 +1,99 @@
+package bloomd;
+
+import bloomd.replies.StateResults;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class ChunkedCommandTest {
+
+    private FakeBloomdServer server;
+    private BloomdClientPool pool;
+    private MultiplexedBloomdClient client;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new FakeBloomdServer();
+        pool = new BloomdClientPool("localhost", server.getPort(), 4, 2000, 1000);
+        client = new MultiplexedBloomdClient(pool, 4, 8);
+        client.create("filter").get(2, TimeUnit.SECONDS);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        client.release().get(2, TimeUnit.SECONDS);
+        pool.closeConnections();
+        server.close();
+    }
+
+    @Test
+    public void testResultsAreReassembledInOrder() throws Exception {
+        String[] keys = new String[100_000];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = "key" + i;
+        }
+
+        // every third key is already there
+        String[] existing = new String[(keys.length + 2) / 3];
+        for (int i = 0; i < existing.length; i++) {
+            existing[i] = keys[i * 3];
+        }
+        client.bulkBits("filter", existing).get(5, TimeUnit.SECONDS);
+
+        long commandsBefore = server.getCommands();
+        // chunks that are not a multiple of 64 keys share words of the results
+        StateResults results = client.bulkChunked("filter", 1_000, 8, keys).get(10, TimeUnit.SECONDS);
+
+        assertThat(server.getCommands() - commandsBefore).isEqualTo(100);
+        assertThat(results.size()).isEqualTo(keys.length);
+        for (int i = 0; i < keys.length; i++) {
+            // only keys that were not already there are new
+            assertThat(results.isYes(i)).isEqualTo(i % 3 != 0);
+        }
+
+        StateResults checks = client.multiChunked("filter", 999, 3, "key0", "missing", "key99999").get(2, TimeUnit.SECONDS);
+        assertThat(checks.size()).isEqualTo(3);
+        assertThat(checks.cardinality()).isEqualTo(2);
+        assertThat(checks.isYes(1)).isFalse();
+    }
+
+    @Test
+    public void testFailedChunkFailsTheCommand() throws Exception {
+        String[] keys = new String[10];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = "key" + i;
+        }
+
+        try {
+            client.multiChunked("non-extant-filter", 3, 2, keys).get(2, TimeUnit.SECONDS);
+            fail("Should have failed because the filter does not exist");
+        } catch (Exception e) {
+            assertThat(e.getCause()).isInstanceOf(FilterDoesNotExistException.class);
+        }
+    }
+
+    @Test
+    public void testChunksCompletingSynchronouslyDoNotRecurse() throws Exception {
+        String[] keys = new String[1_000_000];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = i % 2 == 0 ? "even" : "odd";
+        }
+
+        // every chunk is already complete when its future is returned
+        StateResults results = ChunkedStateCommand.execute(
+                (filterName, chunk) -> CompletableFuture.completedFuture(
+                        new StateResults(new long[]{chunk[0].equals("even") ? 1 : 0}, 1)),
+                "filter", keys, 1, 4).get(2, TimeUnit.SECONDS);
+
+        assertThat(results.size()).isEqualTo(keys.length);
+        assertThat(results.cardinality()).isEqualTo(keys.length / 2);
+        assertThat(results.isYes(0)).isTrue();
+        assertThat(results.isYes(1)).isFalse();
+    }
+}
@@ -0,0 +1,63 @@
+package bloomd;
+
+import bloomd.replies.CreateResult;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class ClientConfigTest {
+
+    @Test
+    public void testSocketOptionsAreApplied() throws Exception {
+        try (FakeBloomdServer server = new FakeBloomdServer()) {
+            BloomdClientConfig config = new BloomdClientConfig.Builder()
+                    .setHost("localhost")
+                    .setPort(server.getPort())
+                    .setTransport(BloomdClientConfig.Transport.AUTO)
+                    .setTcpNoDelay(false)
+                    .setReceiveBufferSize(128 * 1024)
+                    .setWriteBufferWaterMarks(8 * 1024, 16 * 1024)
+                    .build();
+
+            BloomdClientPool pool = new BloomdClientPool(config);
+            try {
+                BloomdClientImpl client = (BloomdClientImpl) pool.acquire().get(2, TimeUnit.SECONDS);
+                assertThat(client.create("filter").get(2, TimeUnit.SECONDS)).isEqualTo(CreateResult.DONE);
+
+                Channel channel = client.getChannel();
+                if (Transports.resolve(BloomdClientConfig.Transport.AUTO) == BloomdClientConfig.Transport.NIO) {
+                    assertThat(channel).isInstanceOf(NioSocketChannel.class);
+                } else {
+                    assertThat(channel.getClass().getSimpleName()).isEqualTo("EpollSocketChannel");
+                }
+
+                assertThat(channel.config().getOption(ChannelOption.TCP_NODELAY)).isFalse();
+                assertThat(channel.config().getWriteBufferLowWaterMark()).isEqualTo(8 * 1024);
+                assertThat(channel.config().getWriteBufferHighWaterMark()).isEqualTo(16 * 1024);
+            } finally {
+                pool.closeConnections();
+            }
+        }
+    }
+
+    @Test
+    public void testInvalidConfig() throws Exception {
+        try {
+            new BloomdClientConfig.Builder().setPort(8673).build();
+            fail("Should have failed because the host is missing");
+        } catch (IllegalArgumentException ignored) {
+        }
+
+        try {
+            new BloomdClientConfig.Builder().setWriteBufferWaterMarks(64 * 1024, 32 * 1024);
+            fail("Should have failed because the low water mark is above the high one");
+        } catch (IllegalArgumentException ignored) {
+        }
+    }
+}
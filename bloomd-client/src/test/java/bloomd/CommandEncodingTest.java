@@ -0,0 +1,74 @@
+package bloomd;
+
+import bloomd.args.CreateFilterArgs;
+import bloomd.args.StateArgs;
+import bloomd.decoders.BloomdCommandCodec;
+import bloomd.decoders.ClearCodec;
+import bloomd.decoders.CreateCodec;
+import bloomd.decoders.GenericStateCodec;
+import bloomd.decoders.InfoCodec;
+import bloomd.decoders.ListCodec;
+import bloomd.decoders.SingleArgCodec;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CommandEncodingTest {
+
+    private EmbeddedChannel channel;
+
+    @Before
+    public void setUp() throws Exception {
+        channel = new EmbeddedChannel(new BloomdHandler());
+    }
+
+    @Test
+    public void testStateCommandsAreWrittenAsBytes() throws Exception {
+        StateArgs args = new StateArgs.Builder()
+                .setFilterName("filter")
+                .addKey("fus")
+                .addKey("ro")
+                .addKey("dåh")
+                .build();
+
+        assertThat(encode(new GenericStateCodec<>("b", false), args)).isEqualTo("b filter fus ro dåh\r\n");
+        assertThat(encode(new GenericStateCodec<>("m", false), args)).isEqualTo("m filter fus ro dåh\r\n");
+    }
+
+    @Test
+    public void testByteEncodingMatchesStringEncoding() throws Exception {
+        StateArgs args = new StateArgs.Builder().setFilterName("filter").addKey("key").build();
+        GenericStateCodec<Object> setCodec = new GenericStateCodec<>("s", true);
+        assertThat(encode(setCodec, args)).isEqualTo(setCodec.buildCommand(args) + "\r\n");
+
+        assertThat(encode(new SingleArgCodec("drop"), "filter")).isEqualTo("drop filter\r\n");
+        assertThat(encode(new ClearCodec(), "filter")).isEqualTo("clear filter\r\n");
+        assertThat(encode(new InfoCodec(), "filter")).isEqualTo("info filter\r\n");
+        assertThat(encode(new ListCodec(), "")).isEqualTo("list\r\n");
+        assertThat(encode(new ListCodec(), "prefix")).isEqualTo("list prefix\r\n");
+
+        CreateFilterArgs createArgs = new CreateFilterArgs.Builder()
+                .setFilterName("filter")
+                .setCapacity(200000)
+                .setInMemory(true)
+                .build();
+        assertThat(encode(new CreateCodec(), createArgs)).isEqualTo("create filter capacity=200000 in_memory=1\r\n");
+    }
+
+    private <T> String encode(BloomdCommandCodec<T, ?> codec, T args) {
+        channel.writeOutbound(new BloomdCommand<>(codec, args, new CompletableFuture<>()));
+
+        ByteBuf command = (ByteBuf) channel.readOutbound();
+        try {
+            return command.toString(StandardCharsets.UTF_8);
+        } finally {
+            command.release();
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package bloomd;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ConnectionSelectorTest {
+
+    @Test
+    public void testLeastOutstanding() {
+        ConnectionSelector selector = ConnectionSelector.leastOutstanding();
+
+        assertThat(selector.select(loads(load(3, 0), load(1, 0), load(2, 0)))).isEqualTo(1);
+
+        // ties are broken by pending bytes
+        assertThat(selector.select(loads(load(2, 4096), load(2, 100), load(5, 0)))).isEqualTo(1);
+
+        // idle connections are used evenly
+        List<Integer> selected = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            selected.add(selector.select(loads(load(0, 0), load(0, 0), load(0, 0))));
+        }
+        assertThat(selected).containsOnly(0, 1, 2);
+    }
+
+    @Test
+    public void testRoundRobin() {
+        ConnectionSelector selector = ConnectionSelector.roundRobin();
+        List<ConnectionSelector.ConnectionLoad> loads = loads(load(10, 0), load(0, 0));
+
+        assertThat(selector.select(loads)).isEqualTo(0);
+        assertThat(selector.select(loads)).isEqualTo(1);
+        assertThat(selector.select(loads)).isEqualTo(0);
+    }
+
+    @Test
+    public void testOutstandingCommandsAreTracked() throws Exception {
+        try (FakeBloomdServer server = new FakeBloomdServer()) {
+            BloomdClientPool pool = new BloomdClientPool("localhost", server.getPort(), 1, 2000, 1000);
+            try {
+                BloomdClientImpl client = (BloomdClientImpl) pool.acquire().get(2, TimeUnit.SECONDS);
+                client.create("filter").get(2, TimeUnit.SECONDS);
+
+                List<CompletableFuture<?>> results = new ArrayList<>();
+                for (int i = 0; i < 1000; i++) {
+                    results.add(client.set("filter", "key" + i));
+                }
+
+                // failed commands are accounted for too
+                results.add(client.check("non-extant-filter", "key"));
+
+                for (CompletableFuture<?> result : results) {
+                    try {
+                        result.get(2, TimeUnit.SECONDS);
+                    } catch (Exception ignored) {
+                    }
+                }
+                assertThat(client.getOutstandingCommands()).isEqualTo(0);
+                assertThat(client.getPendingWriteBytes()).isEqualTo(0);
+            } finally {
+                pool.closeConnections();
+            }
+        }
+    }
+
+    private static List<ConnectionSelector.ConnectionLoad> loads(ConnectionSelector.ConnectionLoad... loads) {
+        return Arrays.asList(loads);
+    }
+
+    private static ConnectionSelector.ConnectionLoad load(int inFlight, long pendingWriteBytes) {
+        return new ConnectionSelector.ConnectionLoad() {
+            @Override
+            public int getInFlight() {
+                return inFlight;
+            }
+
+            @Override
+            public long getPendingWriteBytes() {
+                return pendingWriteBytes;
+            }
+        };
+    }
+}
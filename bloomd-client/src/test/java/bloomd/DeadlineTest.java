@@ -0,0 +1,124 @@
+package bloomd;
+
+import bloomd.replies.StateResult;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+public class DeadlineTest {
+
+    @Test
+    public void testLateReplyIsDiscarded() throws Exception {
+        try (SlowServer server = new SlowServer()) {
+            BloomdClientPool pool = new BloomdClientPool("localhost", server.getPort(), 1, 2000, 1000);
+            try {
+                BloomdClientImpl client = (BloomdClientImpl) pool.acquire().get(2, TimeUnit.SECONDS);
+
+                CompletableFuture<StateResult> slow = client.withTimeout(50, TimeUnit.MILLISECONDS).check("filter", "slow");
+                // queued behind the slow one on the same connection
+                CompletableFuture<StateResult> next = client.check("filter", "fast");
+
+                assertExpires(slow);
+                assertThat(client.getExpiredCommands()).isEqualTo(1);
+
+                // the reply of the expired command does not end up in the next one
+                assertThat(next.get(2, TimeUnit.SECONDS)).isEqualTo(StateResult.YES);
+                assertThat(client.check("filter", "fast").get(2, TimeUnit.SECONDS)).isEqualTo(StateResult.YES);
+                assertThat(client.getDiscardedReplies()).isEqualTo(1);
+                assertThat(client.getOutstandingCommands()).isEqualTo(0);
+
+                pool.release(client).get(2, TimeUnit.SECONDS);
+            } finally {
+                pool.closeConnections();
+            }
+        }
+    }
+
+    @Test
+    public void testMultiplexedDeadlines() throws Exception {
+        try (SlowServer server = new SlowServer()) {
+            BloomdClientPool pool = new BloomdClientPool("localhost", server.getPort(), 1, 2000, 1000);
+            MultiplexedBloomdClient client = new MultiplexedBloomdClient(pool, 1, 1);
+            try {
+                BloomdClient withTimeout = client.withTimeout(50, TimeUnit.MILLISECONDS);
+                CompletableFuture<StateResult> slow = withTimeout.check("filter", "slow");
+                // waits in the backlog behind the slow one and expires there, so it is never sent
+                CompletableFuture<StateResult> backlogged = withTimeout.check("filter", "fast");
+
+                assertExpires(slow);
+                assertExpires(backlogged);
+                assertThat(client.getExpiredCommands()).isEqualTo(2);
+
+                assertThat(client.check("filter", "fast").get(2, TimeUnit.SECONDS)).isEqualTo(StateResult.YES);
+                assertThat(server.commands).isEqualTo(2);
+            } finally {
+                client.release().get(2, TimeUnit.SECONDS);
+                pool.closeConnections();
+            }
+        }
+    }
+
+    private static void assertExpires(CompletableFuture<?> future) throws Exception {
+        try {
+            future.get(1, TimeUnit.SECONDS);
+            fail("The command should have expired");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause()).isInstanceOf(TimeoutException.class);
+        }
+    }
+
+    /**
+     * Replies "Yes" to every command but takes 300ms to reply to a check of the key "slow", with "No".
+     */
+    private static class SlowServer implements AutoCloseable {
+        private final ServerSocket serverSocket = new ServerSocket(0);
+        private volatile int commands = 0;
+
+        SlowServer() throws Exception {
+            Thread acceptor = new Thread(() -> {
+                try (Socket socket = serverSocket.accept()) {
+                    BufferedReader reader = new BufferedReader(
+                            new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                    OutputStream out = socket.getOutputStream();
+
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        commands++;
+                        if (line.endsWith(" slow")) {
+                            Thread.sleep(300);
+                            out.write("No\n".getBytes(StandardCharsets.UTF_8));
+                        } else {
+                            out.write("Yes\n".getBytes(StandardCharsets.UTF_8));
+                        }
+                        out.flush();
+                    }
+                } catch (Exception e) {
+                    // closed
+                }
+            });
+            acceptor.setDaemon(true);
+            acceptor.start();
+        }
+
+        int getPort() {
+            return serverSocket.getLocalPort();
+        }
+
+        @Override
+        public void close() throws Exception {
+            serverSocket.close();
+        }
+    }
+}
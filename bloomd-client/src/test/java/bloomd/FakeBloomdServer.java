@@ -0,0 +1,149 @@
+package bloomd;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.LineBasedFrameDecoder;
+import io.netty.handler.codec.string.StringDecoder;
+import io.netty.handler.codec.string.StringEncoder;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Minimal in-process bloomd server implementing the subset of the protocol used by the client. It is meant
+ * for benchmarks and tests that exercise the client itself rather than bloomd, so they don't need docker.
+ */
+public class FakeBloomdServer implements AutoCloseable {
+
+    private final Map<String, Set<String>> filters = new ConcurrentHashMap<>();
+    private final AtomicLong reads = new AtomicLong();
+    private final AtomicLong commands = new AtomicLong();
+    private final EventLoopGroup group;
+    private final Channel serverChannel;
+
+    public FakeBloomdServer() throws InterruptedException {
+        group = new NioEventLoopGroup(2);
+        serverChannel = new ServerBootstrap()
+                .group(group)
+                .channel(NioServerSocketChannel.class)
+                .childHandler(new ChannelInitializer<Channel>() {
+                    @Override
+                    protected void initChannel(Channel ch) throws Exception {
+                        ch.pipeline().addLast(new LineBasedFrameDecoder(Integer.MAX_VALUE));
+                        ch.pipeline().addLast(new StringDecoder(StandardCharsets.UTF_8));
+                        ch.pipeline().addLast(new StringEncoder(StandardCharsets.UTF_8));
+                        ch.pipeline().addLast(new CommandHandler());
+                    }
+                })
+                .bind("localhost", 0)
+                .sync()
+                .channel();
+    }
+
+    public int getPort() {
+        return ((InetSocketAddress) serverChannel.localAddress()).getPort();
+    }
+
+    /**
+     * @return the number of socket reads done by the server so far
+     */
+    public long getReads() {
+        return reads.get();
+    }
+
+    /**
+     * @return the number of commands received by the server so far
+     */
+    public long getCommands() {
+        return commands.get();
+    }
+
+    @Override
+    public void close() throws Exception {
+        serverChannel.close().sync();
+        group.shutdownGracefully().sync();
+    }
+
+    private class CommandHandler extends SimpleChannelInboundHandler<String> {
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, String line) throws Exception {
+            commands.incrementAndGet();
+            ctx.write(reply(line.split(" ")));
+        }
+
+        @Override
+        public void channelReadComplete(ChannelHandlerContext ctx) throws Exception {
+            reads.incrementAndGet();
+            ctx.flush();
+        }
+    }
+
+    private String reply(String[] parts) {
+        String cmd = parts[0];
+        String filterName = parts.length > 1 ? parts[1] : "";
+
+        switch (cmd) {
+            case "list":
+                StringBuilder list = new StringBuilder("START\n");
+                for (Map.Entry<String, Set<String>> filter : filters.entrySet()) {
+                    if (filter.getKey().startsWith(filterName)) {
+                        list.append(filter.getKey())
+                            .append(" 0.000100 300046 100000 ")
+                            .append(filter.getValue().size())
+                            .append('\n');
+                    }
+                }
+                return list.append("END\n").toString();
+
+            case "create":
+                return filters.putIfAbsent(filterName, ConcurrentHashMap.newKeySet()) == null ? "Done\n" : "Exists\n";
+        }
+
+        Set<String> filter = filters.get(filterName);
+        if (filter == null) {
+            return "Filter does not exist\n";
+        }
+
+        switch (cmd) {
+            case "drop":
+                filters.remove(filterName);
+                return "Done\n";
+
+            case "clear":
+                filter.clear();
+                return "Done\n";
+
+            case "close":
+            case "flush":
+                return "Done\n";
+
+            case "info":
+                return "START\ncapacity 100000\nprobability 0.000100\nsize " + filter.size() + "\nstorage 300046\nEND\n";
+
+            case "c":
+            case "m":
+            case "s":
+            case "b":
+                boolean set = cmd.equals("s") || cmd.equals("b");
+                StringBuilder states = new StringBuilder();
+                for (int i = 2; i < parts.length; i++) {
+                    boolean yes = set ? filter.add(parts[i]) : filter.contains(parts[i]);
+                    states.append(i > 2 ? " " : "").append(yes ? "Yes" : "No");
+                }
+                return states.append('\n').toString();
+
+            default:
+                return "Client Error: Command not supported\n";
+        }
+    }
+}
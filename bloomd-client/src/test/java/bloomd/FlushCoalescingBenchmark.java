@@ -0,0 +1,63 @@
+package bloomd;
+
+import bloomd.replies.CreateResult;
+import bloomd.replies.StateResult;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Reports how many socket reads the server needs per command when 100 threads share a single connection,
+ * which is a good proxy for the number of flushes (i.e. write syscalls) done by the client.
+ */
+public class FlushCoalescingBenchmark {
+
+    private static final int THREADS = 100;
+    private static final int COMMANDS = 50_000;
+
+    @Test
+    public void compareFlushPolicies() throws Exception {
+        run("immediate", FlushPolicy.IMMEDIATE);
+        run("end of tick", FlushPolicy.DEFAULT);
+        run("100us delay", new FlushPolicy(512, 100, TimeUnit.MICROSECONDS));
+    }
+
+    private void run(String name, FlushPolicy flushPolicy) throws Exception {
+        try (FakeBloomdServer server = new FakeBloomdServer()) {
+            BloomdClientPool pool = new BloomdClientPool("localhost", server.getPort(), 1, 2000, 2000, flushPolicy);
+            BloomdClient client = pool.acquire().get(2, TimeUnit.SECONDS);
+            assertThat(client.create("filter").get(2, TimeUnit.SECONDS)).isEqualTo(CreateResult.DONE);
+
+            AtomicInteger keys = new AtomicInteger();
+            List<Callable<StateResult>> tasks = new ArrayList<>();
+            for (int i = 0; i < COMMANDS; i++) {
+                tasks.add(() -> client.set("filter", "key" + keys.incrementAndGet()).get(5, TimeUnit.SECONDS));
+            }
+
+            ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+            long readsBefore = server.getReads();
+            long start = System.nanoTime();
+            for (Future<StateResult> result : executor.invokeAll(tasks)) {
+                assertThat(result.get()).isEqualTo(StateResult.YES);
+            }
+            long elapsed = System.nanoTime() - start;
+            long reads = server.getReads() - readsBefore;
+            executor.shutdown();
+
+            System.out.println(String.format("%-12s %6d cmd/s, %5.2f commands per server read",
+                                             name, TimeUnit.SECONDS.toNanos(1) * COMMANDS / elapsed,
+                                             (double) COMMANDS / reads));
+
+            pool.closeConnections().sync();
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package bloomd;
+
+import bloomd.replies.StateResult;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FlushCoalescingTest {
+
+    private EmbeddedChannel channel;
+    private BloomdClientImpl client;
+    private int flushes = 0;
+
+    @Test
+    public void testConcurrentCommandsShareFlush() throws Exception {
+        connect(FlushPolicy.DEFAULT);
+        List<Future<StateResult>> results = sendChecks(10);
+
+        channel.runPendingTasks();
+        assertThat(flushes).isEqualTo(1);
+        assertThat(writtenCommands()).isEqualTo(10);
+
+        // replies are still matched with their commands
+        channel.writeInbound(Unpooled.copiedBuffer("Yes\nNo\nYes\nNo\nYes\nNo\nYes\nNo\nYes\nNo\n", StandardCharsets.UTF_8));
+        for (int i = 0; i < results.size(); i++) {
+            assertThat(results.get(i).get(1, TimeUnit.SECONDS)).isEqualTo(i % 2 == 0 ? StateResult.YES : StateResult.NO);
+        }
+    }
+
+    @Test
+    public void testMaxPendingWrites() throws Exception {
+        connect(new FlushPolicy(4, 0, TimeUnit.MILLISECONDS));
+        sendChecks(10);
+
+        channel.runPendingTasks();
+        assertThat(flushes).isEqualTo(3);
+        assertThat(writtenCommands()).isEqualTo(10);
+    }
+
+    @Test
+    public void testImmediateFlushes() throws Exception {
+        connect(FlushPolicy.IMMEDIATE);
+        sendChecks(10);
+
+        channel.runPendingTasks();
+        assertThat(flushes).isEqualTo(10);
+        assertThat(writtenCommands()).isEqualTo(10);
+    }
+
+    private void connect(FlushPolicy flushPolicy) {
+        channel = new EmbeddedChannel(new ChannelOutboundHandlerAdapter() {
+            @Override
+            public void flush(ChannelHandlerContext ctx) throws Exception {
+                flushes++;
+                super.flush(ctx);
+            }
+        });
+
+        // the embedded channel keeps its own handler last, so ours go first
+        client = new BloomdClientImpl(channel, flushPolicy);
+        channel.pipeline().addFirst(new ReplyLineDecoder(), client.getBloomdHandler());
+    }
+
+    private List<Future<StateResult>> sendChecks(int count) {
+        List<Future<StateResult>> results = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            results.add(client.check("filter", "key" + i));
+        }
+        return results;
+    }
+
+    private int writtenCommands() {
+        int commands = 0;
+        Object msg;
+        while ((msg = channel.readOutbound()) != null) {
+            ((ByteBuf) msg).release();
+            commands++;
+        }
+        return commands;
+    }
+}
@@ -0,0 +1,88 @@
+package bloomd;
+
+import bloomd.replies.BloomdFilter;
+import bloomd.replies.BloomdInfo;
+import bloomd.replies.CreateResult;
+import bloomd.replies.StateResult;
+import bloomd.replies.StateResults;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class KeyShardingTest {
+
+    @Test
+    public void testKeysSpreadEvenlyOverShards() {
+        int[] keysPerShard = new int[8];
+        for (int i = 0; i < 100_000; i++) {
+            keysPerShard[KeyShardedBloomdClient.shardOf("key" + i, 8)]++;
+        }
+
+        for (int keys : keysPerShard) {
+            assertThat(keys).isBetween(12_500 * 95 / 100, 12_500 * 105 / 100);
+        }
+    }
+
+    @Test
+    public void testShardedFilter() throws Exception {
+        try (FakeBloomdServer server = new FakeBloomdServer()) {
+            BloomdClientPool pool = new BloomdClientPool("localhost", server.getPort(), 2, 2000, 1000);
+            MultiplexedBloomdClient physical = new MultiplexedBloomdClient(pool, 2, 64);
+            try {
+                KeyShardedBloomdClient client = new KeyShardedBloomdClient.Builder()
+                        .setClient(physical)
+                        .addShardedFilter("hot", 4)
+                        .build();
+
+                assertThat(client.create("hot").get(2, TimeUnit.SECONDS)).isEqualTo(CreateResult.DONE);
+                assertThat(client.create("cold").get(2, TimeUnit.SECONDS)).isEqualTo(CreateResult.DONE);
+                assertThat(client.create("hot").get(2, TimeUnit.SECONDS)).isEqualTo(CreateResult.EXISTS);
+                assertThat(names(physical.list().get(2, TimeUnit.SECONDS)))
+                        .containsOnly("hot.0", "hot.1", "hot.2", "hot.3", "cold");
+
+                String[] keys = IntStream.range(0, 1_000).mapToObj(i -> "key" + i).toArray(String[]::new);
+                assertThat(client.bulkBits("hot", keys).get(2, TimeUnit.SECONDS).cardinality()).isEqualTo(1_000);
+
+                // results come back in the order of the keys, whatever shard they were sent to
+                StateResults results = client.multiBits("hot", "key1", "missing1", "key999", "missing2", "key500")
+                        .get(2, TimeUnit.SECONDS);
+                assertThat(results.asList()).containsExactly(StateResult.YES, StateResult.NO, StateResult.YES,
+                                                             StateResult.NO, StateResult.YES);
+
+                // single keys go to the shard the multi keys went to
+                assertThat(client.check("hot", "key42").get(2, TimeUnit.SECONDS)).isEqualTo(StateResult.YES);
+                assertThat(physical.check(client.physicalFilterOf("hot", "key42"), "key42").get(2, TimeUnit.SECONDS))
+                        .isEqualTo(StateResult.YES);
+                assertThat(client.set("hot", "key42").get(2, TimeUnit.SECONDS)).isEqualTo(StateResult.NO);
+
+                // every shard got some of the keys, and info adds them up
+                for (int shard = 0; shard < 4; shard++) {
+                    assertThat(physical.info("hot." + shard).get(2, TimeUnit.SECONDS).getSize()).isGreaterThan(150);
+                }
+                BloomdInfo info = client.info("hot").get(2, TimeUnit.SECONDS);
+                assertThat(info.getSize()).isEqualTo(1_000);
+                assertThat(info.getCapacity()).isEqualTo(4 * 100_000);
+
+                List<BloomdFilter> filters = client.list().get(2, TimeUnit.SECONDS);
+                assertThat(names(filters)).containsOnly("hot", "cold");
+                assertThat(filters.stream().filter(f -> f.getFilterName().equals("hot")).findFirst().get().getSize())
+                        .isEqualTo(1_000);
+
+                assertThat(client.drop("hot").get(2, TimeUnit.SECONDS)).isTrue();
+                assertThat(names(physical.list().get(2, TimeUnit.SECONDS))).containsOnly("cold");
+            } finally {
+                physical.release().get(2, TimeUnit.SECONDS);
+                pool.closeConnections();
+            }
+        }
+    }
+
+    private static List<String> names(List<BloomdFilter> filters) {
+        return filters.stream().map(BloomdFilter::getFilterName).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,78 @@
+package bloomd;
+
+import bloomd.replies.CreateResult;
+import bloomd.replies.StateResult;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class MultiplexingTest {
+
+    private FakeBloomdServer server;
+    private BloomdClientPool pool;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new FakeBloomdServer();
+        pool = new BloomdClientPool("localhost", server.getPort(), 2, 2000, 1000);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        pool.closeConnections();
+        server.close();
+    }
+
+    @Test
+    public void testCommandsArePipelinedOnSharedConnections() throws Exception {
+        // a single in flight command per connection forces most commands through the backlog
+        MultiplexedBloomdClient client = new MultiplexedBloomdClient(pool, 2, 1);
+        assertThat(client.create("filter").get(2, TimeUnit.SECONDS)).isEqualTo(CreateResult.DONE);
+
+        List<CompletableFuture<StateResult>> results = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            results.add(client.set("filter", "key" + i));
+        }
+
+        for (CompletableFuture<StateResult> result : results) {
+            assertThat(result.get(5, TimeUnit.SECONDS)).isEqualTo(StateResult.YES);
+        }
+        assertThat(client.multiBits("filter", "key0", "key9999", "missing").get(2, TimeUnit.SECONDS).cardinality())
+                .isEqualTo(2);
+
+        // every connection of the pool is held by the multiplexed client
+        try {
+            pool.acquire().get(2, TimeUnit.SECONDS);
+            fail("Should have failed because the connections are taken");
+        } catch (Exception ignored) {
+        }
+
+        // until they are released
+        client.release().get(2, TimeUnit.SECONDS);
+        pool.release(pool.acquire().get(2, TimeUnit.SECONDS)).get(2, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testErrorsAreSurfaced() throws Exception {
+        MultiplexedBloomdClient client = new MultiplexedBloomdClient(pool, 2, 16);
+
+        try {
+            client.check("non-extant-filter", "key").get(2, TimeUnit.SECONDS);
+            fail("Should have failed because the filter does not exist");
+        } catch (Exception e) {
+            assertThat(e.getCause()).isInstanceOf(FilterDoesNotExistException.class);
+        }
+
+        // the connection can still be used afterwards
+        assertThat(client.create("filter").get(2, TimeUnit.SECONDS)).isEqualTo(CreateResult.DONE);
+        assertThat(client.check("filter", "key").get(2, TimeUnit.SECONDS)).isEqualTo(StateResult.NO);
+    }
+}
@@ -0,0 +1,192 @@
+package bloomd;
+
+import bloomd.OutlierDetector.State;
+import bloomd.replies.StateResult;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class OutlierDetectionTest {
+
+    private static final long MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    public void testSlowEndpointIsEjectedAndProbed() {
+        AtomicLong clock = new AtomicLong();
+        OutlierDetector detector = manualDetector(clock);
+        OutlierDetector.Endpoint first = detector.addEndpoint("first");
+        OutlierDetector.Endpoint second = detector.addEndpoint("second");
+        OutlierDetector.Endpoint slow = detector.addEndpoint("slow");
+
+        for (int i = 0; i < 20; i++) {
+            first.record(MILLI, true);
+            second.record(2 * MILLI, true);
+            slow.record(20 * MILLI, true);
+        }
+        detector.evaluate();
+        assertThat(detector.getStates()).containsEntry("first", State.HEALTHY)
+                .containsEntry("second", State.HEALTHY)
+                .containsEntry("slow", State.EJECTED);
+        assertThat(slow.tryProbe()).isFalse();
+
+        // still too slow when probed, so ejected for twice as long
+        clock.addAndGet(60 * MILLI);
+        detector.evaluate();
+        assertThat(slow.getState()).isEqualTo(State.PROBING);
+        assertThat(slow.tryProbe()).isTrue();
+        assertThat(slow.tryProbe()).isFalse();
+        slow.completeProbe(20 * MILLI, true);
+        assertThat(slow.getState()).isEqualTo(State.EJECTED);
+        assertThat(detector.getEjections()).isEqualTo(2);
+
+        clock.addAndGet(60 * MILLI);
+        detector.evaluate();
+        assertThat(slow.getState()).isEqualTo(State.EJECTED);
+
+        clock.addAndGet(60 * MILLI);
+        detector.evaluate();
+        assertThat(slow.tryProbe()).isTrue();
+        slow.completeProbe(MILLI, true);
+        assertThat(slow.getState()).isEqualTo(State.HEALTHY);
+
+        detector.evaluate();
+        assertThat(slow.getState()).isEqualTo(State.HEALTHY);
+    }
+
+    @Test
+    public void testFailingEndpointsAreEjectedUpToMaxFraction() {
+        OutlierDetector detector = manualDetector(new AtomicLong());
+        OutlierDetector.Endpoint first = detector.addEndpoint("first");
+        OutlierDetector.Endpoint second = detector.addEndpoint("second");
+
+        for (int i = 0; i < 20; i++) {
+            first.record(0, false);
+            second.record(0, false);
+        }
+        detector.evaluate();
+
+        // one of them has to stay
+        assertThat(detector.getStates().values()).containsOnlyOnce(State.EJECTED, State.HEALTHY);
+    }
+
+    @Test
+    public void testEjectionTimeDoesNotOverflow() {
+        AtomicLong clock = new AtomicLong();
+        long base = TimeUnit.DAYS.toNanos(1);
+        OutlierDetector detector = new OutlierDetector.Builder()
+                .setEjectionTime(base, Long.MAX_VALUE, TimeUnit.NANOSECONDS)
+                .setMaxEjectedFraction(0.5)
+                .setEvaluationInterval(1, TimeUnit.HOURS)
+                .setClock(clock::get)
+                .build();
+        detector.addEndpoint("healthy");
+        OutlierDetector.Endpoint failing = detector.addEndpoint("failing");
+        detector.addEndpoint("other");
+
+        for (int i = 0; i < 20; i++) {
+            failing.record(0, false);
+        }
+        detector.evaluate();
+        assertThat(failing.getState()).isEqualTo(State.EJECTED);
+
+        // doubled after every failed probe, up to the max
+        for (int ejections = 0; ejections < 40; ejections++) {
+            long ejection = ejections <= 16 ? base << ejections : Long.MAX_VALUE;
+            clock.addAndGet(ejection - 1);
+            detector.evaluate();
+            assertThat(failing.getState()).isEqualTo(State.EJECTED);
+
+            clock.incrementAndGet();
+            detector.evaluate();
+            assertThat(failing.tryProbe()).isTrue();
+            failing.completeProbe(0, false);
+        }
+    }
+
+    @Test
+    public void testReadsMoveAwayFromFailingReplica() throws Exception {
+        try (FakeBloomdServer first = new FakeBloomdServer(); FakeBloomdServer second = new FakeBloomdServer()) {
+            BloomdClientPool firstPool = new BloomdClientPool("localhost", first.getPort(), 1, 2000, 1000);
+            BloomdClientPool secondPool = new BloomdClientPool("localhost", second.getPort(), 1, 2000, 1000);
+            MultiplexedBloomdClient firstClient = new MultiplexedBloomdClient(firstPool, 1, 16);
+            MultiplexedBloomdClient secondClient = new MultiplexedBloomdClient(secondPool, 1, 16);
+
+            AtomicBoolean failing = new AtomicBoolean(true);
+            AtomicInteger commands = new AtomicInteger();
+            BloomdClient flaky = (BloomdClient) Proxy.newProxyInstance(BloomdClient.class.getClassLoader(),
+                    new Class[]{BloomdClient.class},
+                    (proxy, method, args) -> {
+                        commands.incrementAndGet();
+                        return failing.get()
+                                ? Futures.failed(new IllegalStateException("replica down"))
+                                : method.invoke(secondClient, args);
+                    });
+
+            OutlierDetector detector = new OutlierDetector.Builder()
+                    .setEvaluationInterval(5, TimeUnit.MILLISECONDS)
+                    .setEjectionTime(500, 1000, TimeUnit.MILLISECONDS)
+                    .build();
+            ReplicatedBloomdClient client = new ReplicatedBloomdClient.Builder()
+                    .addReplica("flaky", flaky)
+                    .addReplica("first", firstClient)
+                    .setWriteQuorum(1)
+                    .setHedging(false)
+                    .setOutlierDetector(detector)
+                    .build();
+
+            try {
+                client.create("filter").get(2, TimeUnit.SECONDS);
+                secondClient.create("filter").get(2, TimeUnit.SECONDS);
+
+                // failed reads are retried on the other replica until the flaky one is ejected
+                long deadline = System.currentTimeMillis() + 2000;
+                while (detector.getStates().get("flaky") == State.HEALTHY && System.currentTimeMillis() < deadline) {
+                    assertThat(client.check("filter", "key").get(2, TimeUnit.SECONDS)).isEqualTo(StateResult.NO);
+                    Thread.sleep(1);
+                }
+                assertThat(detector.getStates().get("flaky")).isEqualTo(State.EJECTED);
+
+                int beforeEjection = commands.get();
+                for (int i = 0; i < 100; i++) {
+                    assertThat(client.check("filter", "key").get(2, TimeUnit.SECONDS)).isEqualTo(StateResult.NO);
+                }
+                assertThat(commands.get()).isEqualTo(beforeEjection);
+
+                // once it works again, the probes bring it back
+                failing.set(false);
+                deadline = System.currentTimeMillis() + 2000;
+                while (detector.getStates().get("flaky") != State.HEALTHY && System.currentTimeMillis() < deadline) {
+                    assertThat(client.check("filter", "key").get(2, TimeUnit.SECONDS)).isEqualTo(StateResult.NO);
+                    Thread.sleep(1);
+                }
+                assertThat(detector.getStates().get("flaky")).isEqualTo(State.HEALTHY);
+                assertThat(commands.get()).isGreaterThan(beforeEjection);
+            } finally {
+                client.release().get(2, TimeUnit.SECONDS);
+                firstClient.release().get(2, TimeUnit.SECONDS);
+                secondClient.release().get(2, TimeUnit.SECONDS);
+                firstPool.closeConnections();
+                secondPool.closeConnections();
+            }
+        }
+    }
+
+    /**
+     * @return a detector only evaluating the endpoints when told to, at the time of the given clock
+     */
+    private static OutlierDetector manualDetector(AtomicLong clock) {
+        return new OutlierDetector.Builder()
+                .setMinLatency(1, TimeUnit.MILLISECONDS)
+                .setEjectionTime(50, 1000, TimeUnit.MILLISECONDS)
+                .setMaxEjectedFraction(0.5)
+                .setEvaluationInterval(1, TimeUnit.HOURS)
+                .setClock(clock::get)
+                .build();
+    }
+}
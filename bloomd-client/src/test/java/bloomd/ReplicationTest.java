@@ -0,0 +1,183 @@
+package bloomd;
+
+import bloomd.replies.StateResult;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+public class ReplicationTest {
+
+    private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "replication-test");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Test
+    public void testWritesGoToEveryReplicaAndReadsToOne() throws Exception {
+        try (FakeBloomdServer first = new FakeBloomdServer();
+             FakeBloomdServer second = new FakeBloomdServer();
+             FakeBloomdServer third = new FakeBloomdServer()) {
+            BloomdClientPool[] pools = {
+                    new BloomdClientPool("localhost", first.getPort(), 1, 2000, 1000),
+                    new BloomdClientPool("localhost", second.getPort(), 1, 2000, 1000),
+                    new BloomdClientPool("localhost", third.getPort(), 1, 2000, 1000)
+            };
+            ReplicatedBloomdClient client = new ReplicatedBloomdClient.Builder()
+                    .addReplica("first", pools[0])
+                    .addReplica("second", pools[1])
+                    .addReplica("third", pools[2])
+                    .setHedging(false)
+                    .build();
+
+            try {
+                assertThat(client.getWriteQuorum()).isEqualTo(2);
+
+                client.create("filter").get(2, TimeUnit.SECONDS);
+                assertThat(client.set("filter", "key").get(2, TimeUnit.SECONDS)).isEqualTo(StateResult.YES);
+                client.bulk("filter", "a", "b", "c").get(2, TimeUnit.SECONDS);
+
+                // writes complete on a quorum, the last replica may still be working on them
+                long deadline = System.currentTimeMillis() + 2000;
+                while (third.getCommands() + second.getCommands() + first.getCommands() < 9
+                        && System.currentTimeMillis() < deadline) {
+                    Thread.sleep(5);
+                }
+                assertThat(first.getCommands()).isEqualTo(3);
+                assertThat(second.getCommands()).isEqualTo(3);
+                assertThat(third.getCommands()).isEqualTo(3);
+
+                for (int i = 0; i < 100; i++) {
+                    assertThat(client.check("filter", "b").get(2, TimeUnit.SECONDS)).isEqualTo(StateResult.YES);
+                }
+                assertThat(first.getCommands() + second.getCommands() + third.getCommands()).isEqualTo(9 + 100);
+                assertThat(client.getReadLatencies()).containsOnlyKeys("first", "second", "third");
+            } finally {
+                client.release().get(2, TimeUnit.SECONDS);
+                for (BloomdClientPool pool : pools) {
+                    pool.closeConnections();
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testWriteQuorum() throws Exception {
+        try (FakeBloomdServer first = new FakeBloomdServer(); FakeBloomdServer second = new FakeBloomdServer()) {
+            BloomdClientPool firstPool = new BloomdClientPool("localhost", first.getPort(), 1, 2000, 1000);
+            BloomdClientPool secondPool = new BloomdClientPool("localhost", second.getPort(), 1, 2000, 1000);
+            MultiplexedBloomdClient firstClient = new MultiplexedBloomdClient(firstPool, 1, 16);
+            MultiplexedBloomdClient secondClient = new MultiplexedBloomdClient(secondPool, 1, 16);
+
+            try {
+                ReplicatedBloomdClient majority = new ReplicatedBloomdClient.Builder()
+                        .addReplica("first", firstClient)
+                        .addReplica("second", secondClient)
+                        .addReplica("down", down())
+                        .build();
+                majority.create("filter").get(2, TimeUnit.SECONDS);
+                assertThat(majority.set("filter", "key").get(2, TimeUnit.SECONDS)).isEqualTo(StateResult.YES);
+
+                // reads fail over to the replicas that are up
+                for (int i = 0; i < 10; i++) {
+                    assertThat(majority.check("filter", "key").get(2, TimeUnit.SECONDS)).isEqualTo(StateResult.YES);
+                }
+
+                ReplicatedBloomdClient all = new ReplicatedBloomdClient.Builder()
+                        .addReplica("first", firstClient)
+                        .addReplica("second", secondClient)
+                        .addReplica("down", down())
+                        .setWriteQuorum(3)
+                        .build();
+                try {
+                    all.set("filter", "other").get(2, TimeUnit.SECONDS);
+                    fail("The quorum can not be reached");
+                } catch (ExecutionException e) {
+                    assertThat(e.getCause()).hasMessage("replica down");
+                }
+            } finally {
+                firstClient.release().get(2, TimeUnit.SECONDS);
+                secondClient.release().get(2, TimeUnit.SECONDS);
+                firstPool.closeConnections();
+                secondPool.closeConnections();
+            }
+        }
+    }
+
+    @Test
+    public void testReadsGoToFastestReplicaAndSlowOnesAreHedged() throws Exception {
+        try (FakeBloomdServer slow = new FakeBloomdServer(); FakeBloomdServer fast = new FakeBloomdServer()) {
+            BloomdClientPool slowPool = new BloomdClientPool("localhost", slow.getPort(), 1, 2000, 1000);
+            BloomdClientPool fastPool = new BloomdClientPool("localhost", fast.getPort(), 1, 2000, 1000);
+            MultiplexedBloomdClient slowClient = new MultiplexedBloomdClient(slowPool, 1, 16);
+            MultiplexedBloomdClient fastClient = new MultiplexedBloomdClient(fastPool, 1, 16);
+
+            try {
+                // neither replica was measured yet, so the first read goes to the slow one
+                ReplicatedBloomdClient client = new ReplicatedBloomdClient.Builder()
+                        .addReplica("slow", delayed(slowClient, 500))
+                        .addReplica("fast", fastClient)
+                        .setInitialHedgeDelay(10, TimeUnit.MILLISECONDS)
+                        .build();
+                client.create("filter").get(2, TimeUnit.SECONDS);
+                long slowCommands = slow.getCommands();
+                long fastCommands = fast.getCommands();
+
+                // and is answered by the fast one it was hedged to
+                long start = System.nanoTime();
+                assertThat(client.check("filter", "key").get(2, TimeUnit.SECONDS)).isEqualTo(StateResult.NO);
+                assertThat(System.nanoTime() - start).isLessThan(TimeUnit.MILLISECONDS.toNanos(400));
+                assertThat(client.getHedgedReads()).isEqualTo(1);
+
+                for (int i = 0; i < 50; i++) {
+                    assertThat(client.check("filter", "key").get(2, TimeUnit.SECONDS)).isEqualTo(StateResult.NO);
+                }
+                assertThat(slow.getCommands() - slowCommands).isEqualTo(1);
+                assertThat(fast.getCommands() - fastCommands).isEqualTo(51);
+            } finally {
+                slowClient.release().get(2, TimeUnit.SECONDS);
+                fastClient.release().get(2, TimeUnit.SECONDS);
+                slowPool.closeConnections();
+                fastPool.closeConnections();
+            }
+        }
+    }
+
+    /**
+     * @return a client failing every command
+     */
+    private static BloomdClient down() {
+        return (BloomdClient) Proxy.newProxyInstance(BloomdClient.class.getClassLoader(),
+                new Class[]{BloomdClient.class},
+                (proxy, method, args) -> Futures.failed(new IllegalStateException("replica down")));
+    }
+
+    /**
+     * @return a client whose replies come the given time after the ones of the client
+     */
+    @SuppressWarnings("unchecked")
+    private static BloomdClient delayed(BloomdClient client, long delayMillis) {
+        return (BloomdClient) Proxy.newProxyInstance(BloomdClient.class.getClassLoader(),
+                new Class[]{BloomdClient.class},
+                (proxy, method, args) -> {
+                    CompletableFuture<Object> reply = (CompletableFuture<Object>) method.invoke(client, args);
+                    CompletableFuture<Object> delayed = new CompletableFuture<>();
+                    reply.whenComplete((value, err) -> SCHEDULER.schedule(() -> {
+                        if (err == null) {
+                            delayed.complete(value);
+                        } else {
+                            delayed.completeExceptionally(err);
+                        }
+                    }, delayMillis, TimeUnit.MILLISECONDS));
+                    return delayed;
+                });
+    }
+}
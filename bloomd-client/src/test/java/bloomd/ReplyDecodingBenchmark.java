@@ -0,0 +1,116 @@
+package bloomd;
+
+import bloomd.decoders.BloomdCommandCodec;
+import bloomd.decoders.GenericStateCodec;
+import bloomd.replies.StateResults;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.DelimiterBasedFrameDecoder;
+import io.netty.handler.codec.Delimiters;
+import io.netty.handler.codec.string.StringDecoder;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Compares the reply decoding pipeline against the previous one, which framed replies with a
+ * {@link DelimiterBasedFrameDecoder}, decoded them with a {@link StringDecoder} and split the line.
+ * <p>
+ * Replies of 10k keys are fed in chunks of 1500 bytes to mimic how they are read from the socket.
+ */
+public class ReplyDecodingBenchmark {
+
+    private static final int KEYS = 10_000;
+    private static final int CHUNK_SIZE = 1500;
+    private static final int WARMUP = 200;
+    private static final int ITERATIONS = 500;
+
+    private final BloomdCommandCodec<?, StateResults> codec = new GenericStateCodec<>("b", false);
+
+    @Test
+    public void compareReplyDecoding() throws Exception {
+        byte[] reply = buildReply();
+
+        EmbeddedChannel stringPipeline = new EmbeddedChannel(
+                new DelimiterBasedFrameDecoder(Integer.MAX_VALUE, Delimiters.lineDelimiter()),
+                new StringDecoder(),
+                new SimpleChannelInboundHandler<String>() {
+                    @Override
+                    protected void channelRead0(ChannelHandlerContext ctx, String msg) throws Exception {
+                        ctx.fireChannelRead(codec.decode(msg));
+                    }
+                });
+
+        EmbeddedChannel bytePipeline = new EmbeddedChannel(
+                new ReplyLineDecoder(),
+                new SimpleChannelInboundHandler<ByteBuf>() {
+                    @Override
+                    protected void channelRead0(ChannelHandlerContext ctx, ByteBuf msg) throws Exception {
+                        ctx.fireChannelRead(codec.decode(msg));
+                    }
+                });
+
+        // both pipelines must produce the same results
+        StateResults expected = decode(stringPipeline, reply);
+        assertThat(expected.size()).isEqualTo(KEYS);
+        assertThat(decode(bytePipeline, reply)).isEqualTo(expected);
+
+        measure("String pipeline", stringPipeline, reply);
+        measure("ByteBuf pipeline", bytePipeline, reply);
+    }
+
+    private void measure(String name, EmbeddedChannel channel, byte[] reply) {
+        for (int i = 0; i < WARMUP; i++) {
+            decode(channel, reply);
+        }
+
+        long allocatedBefore = allocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            decode(channel, reply);
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = allocatedBytes() - allocatedBefore;
+
+        System.out.println(String.format("%s: %d us/reply, %d bytes allocated/reply (%d keys per reply)",
+                                         name, elapsed / ITERATIONS / 1000, allocated / ITERATIONS, KEYS));
+    }
+
+    private static StateResults decode(EmbeddedChannel channel, byte[] reply) {
+        for (int offset = 0; offset < reply.length; offset += CHUNK_SIZE) {
+            int length = Math.min(CHUNK_SIZE, reply.length - offset);
+            channel.writeInbound(Unpooled.wrappedBuffer(reply, offset, length));
+        }
+
+        return (StateResults) channel.readInbound();
+    }
+
+    private static byte[] buildReply() {
+        Random random = new Random(42);
+        StringBuilder reply = new StringBuilder();
+        for (int i = 0; i < KEYS; i++) {
+            if (i > 0) {
+                reply.append(' ');
+            }
+            reply.append(random.nextBoolean() ? "Yes" : "No");
+        }
+        reply.append('\n');
+        return reply.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static long allocatedBytes() {
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        if (threadBean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threadBean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,83 @@
+package bloomd;
+
+import bloomd.decoders.GenericStateCodec;
+import bloomd.replies.StateResult;
+import bloomd.replies.StateResults;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class ReplyDecodingTest {
+
+    @Test
+    public void testLinesSplitAcrossReads() throws Exception {
+        EmbeddedChannel channel = new EmbeddedChannel(new ReplyLineDecoder());
+
+        channel.writeInbound(bytes("Yes No"));
+        assertThat(channel.readInbound()).isNull();
+
+        channel.writeInbound(bytes(" Yes\r\nDone\nST"));
+        assertThat(readLine(channel)).isEqualTo("Yes No Yes");
+        assertThat(readLine(channel)).isEqualTo("Done");
+        assertThat(channel.readInbound()).isNull();
+
+        channel.writeInbound(bytes("ART\n\n"));
+        assertThat(readLine(channel)).isEqualTo("START");
+        assertThat(readLine(channel)).isEqualTo("");
+        assertThat(channel.readInbound()).isNull();
+    }
+
+    @Test
+    public void testStateRepliesAreParsedFromBytes() throws Exception {
+        GenericStateCodec<StateResults> multiCodec = new GenericStateCodec<>("m", false);
+        GenericStateCodec<StateResult> checkCodec = new GenericStateCodec<>("c", true);
+
+        assertThat(multiCodec.decode(bytes("Yes No Yes")).asList())
+                .isEqualTo(Arrays.asList(StateResult.YES, StateResult.NO, StateResult.YES));
+        assertThat(multiCodec.decode(bytes("No No ")).asList()).isEqualTo(Arrays.asList(StateResult.NO, StateResult.NO));
+
+        // the byte parser must agree with the String one
+        assertThat(multiCodec.decode(bytes("No Yes No Yes"))).isEqualTo(multiCodec.decode("No Yes No Yes"));
+        assertThat(checkCodec.decode(bytes("Yes"))).isEqualTo(StateResult.YES);
+        assertThat(checkCodec.decode(bytes("No"))).isEqualTo(StateResult.NO);
+    }
+
+    @Test
+    public void testInvalidStateReplies() throws Exception {
+        GenericStateCodec<StateResults> multiCodec = new GenericStateCodec<>("m", false);
+
+        try {
+            multiCodec.decode(bytes("Filter does not exist"));
+            fail("Should have failed because the filter does not exist");
+        } catch (FilterDoesNotExistException ignored) {
+        }
+
+        for (String invalid : Arrays.asList("", "Yesx", "Yes  No", "Nope", "Yes Client Error")) {
+            try {
+                multiCodec.decode(bytes(invalid));
+                fail("Should have failed to parse: " + invalid);
+            } catch (IllegalStateException ignored) {
+            }
+        }
+    }
+
+    private static ByteBuf bytes(String str) {
+        return Unpooled.copiedBuffer(str, StandardCharsets.UTF_8);
+    }
+
+    private static String readLine(EmbeddedChannel channel) {
+        ByteBuf line = (ByteBuf) channel.readInbound();
+        try {
+            return line.toString(StandardCharsets.UTF_8);
+        } finally {
+            line.release();
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package bloomd;
+
+import bloomd.replies.BloomdFilter;
+import bloomd.replies.StateResult;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ShardingTest {
+
+    private static final int FILTERS = 20_000;
+
+    @Test
+    public void testRingSpreadsEvenlyAndRemapsMinimally() {
+        ConsistentHashRing<String> ring = new ConsistentHashRing<String>(160)
+                .withNode("a", "a").withNode("b", "b").withNode("c", "c").withNode("d", "d");
+
+        Map<String, Integer> perNode = new HashMap<>();
+        Map<String, String> before = new HashMap<>();
+        for (int i = 0; i < FILTERS; i++) {
+            String node = ring.nodeNameFor("filter" + i);
+            before.put("filter" + i, node);
+            perNode.merge(node, 1, Integer::sum);
+        }
+        for (int count : perNode.values()) {
+            assertThat(count).isBetween(FILTERS / 4 * 85 / 100, FILTERS / 4 * 115 / 100);
+        }
+
+        // adding a node only moves filters to it, about a fifth of them
+        ConsistentHashRing<String> grown = ring.withNode("e", "e");
+        int moved = 0;
+        for (int i = 0; i < FILTERS; i++) {
+            String node = grown.nodeNameFor("filter" + i);
+            if (!node.equals(before.get("filter" + i))) {
+                assertThat(node).isEqualTo("e");
+                moved++;
+            }
+        }
+        assertThat(moved).isBetween(FILTERS / 5 * 85 / 100, FILTERS / 5 * 115 / 100);
+
+        // and removing it moves them back
+        ConsistentHashRing<String> shrunk = grown.withoutNode("e");
+        ConsistentHashRing<String> reordered = new ConsistentHashRing<String>(160)
+                .withNode("d", "d").withNode("c", "c").withNode("b", "b").withNode("a", "a");
+        for (int i = 0; i < FILTERS; i++) {
+            assertThat(shrunk.nodeNameFor("filter" + i)).isEqualTo(before.get("filter" + i));
+            assertThat(reordered.nodeNameFor("filter" + i)).isEqualTo(before.get("filter" + i));
+        }
+    }
+
+    @Test
+    public void testCommandsGoToTheNodeOfTheirFilter() throws Exception {
+        try (FakeBloomdServer first = new FakeBloomdServer(); FakeBloomdServer second = new FakeBloomdServer()) {
+            BloomdClientPool firstPool = new BloomdClientPool("localhost", first.getPort(), 1, 2000, 1000);
+            BloomdClientPool secondPool = new BloomdClientPool("localhost", second.getPort(), 1, 2000, 1000);
+            MultiplexedBloomdClient firstClient = new MultiplexedBloomdClient(firstPool, 1, 16);
+            MultiplexedBloomdClient secondClient = new MultiplexedBloomdClient(secondPool, 1, 16);
+
+            try {
+                ShardedBloomdClient client = new ShardedBloomdClient.Builder()
+                        .addNode("first", firstClient)
+                        .addNode("second", secondClient)
+                        .build();
+
+                for (int i = 0; i < 20; i++) {
+                    client.create("filter" + i).get(2, TimeUnit.SECONDS);
+                    assertThat(client.set("filter" + i, "key").get(2, TimeUnit.SECONDS)).isEqualTo(StateResult.YES);
+                    assertThat(client.check("filter" + i, "key").get(2, TimeUnit.SECONDS)).isEqualTo(StateResult.YES);
+                }
+
+                // every filter only exists on its own node
+                List<String> onFirst = names(firstClient.list().get(2, TimeUnit.SECONDS));
+                List<String> onSecond = names(secondClient.list().get(2, TimeUnit.SECONDS));
+                assertThat(onFirst).isNotEmpty();
+                assertThat(onSecond).isNotEmpty();
+                for (int i = 0; i < 20; i++) {
+                    String filterName = "filter" + i;
+                    assertThat(client.nodeFor(filterName).equals("first") ? onFirst : onSecond).contains(filterName);
+                }
+
+                // list is merged from every node
+                List<String> all = names(client.list().get(2, TimeUnit.SECONDS));
+                assertThat(all).hasSize(20).isSorted();
+                assertThat(names(client.list("filter1").get(2, TimeUnit.SECONDS)))
+                        .containsExactly("filter1", "filter10", "filter11", "filter12", "filter13", "filter14",
+                                         "filter15", "filter16", "filter17", "filter18", "filter19");
+            } finally {
+                firstClient.release().get(2, TimeUnit.SECONDS);
+                secondClient.release().get(2, TimeUnit.SECONDS);
+                firstPool.closeConnections();
+                secondPool.closeConnections();
+            }
+        }
+    }
+
+    private static List<String> names(List<BloomdFilter> filters) {
+        return filters.stream().map(BloomdFilter::getFilterName).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,94 @@
+package bloomd;
+
+import bloomd.replies.CreateResult;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.local.LocalEventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class SharedEventLoopGroupTest {
+
+    @Test
+    public void testGroupIsShutDownWhenNoLongerShared() throws Exception {
+        SharedEventLoopGroup shared = new SharedEventLoopGroup(BloomdClientConfig.Transport.NIO, 2);
+
+        try (FakeBloomdServer server = new FakeBloomdServer()) {
+            BloomdClientPool first = newPool(server, shared);
+            BloomdClientPool second = newPool(server, shared);
+            assertThat(shared.refCount()).isEqualTo(2);
+
+            BloomdClientImpl firstClient = (BloomdClientImpl) first.acquire().get(2, TimeUnit.SECONDS);
+            BloomdClientImpl secondClient = (BloomdClientImpl) second.acquire().get(2, TimeUnit.SECONDS);
+            EventLoopGroup group = firstClient.getChannel().eventLoop().parent();
+            assertThat(secondClient.getChannel().eventLoop().parent()).isSameAs(group);
+
+            // the group keeps running while other pools use it
+            first.closeConnections().sync();
+            assertThat(group.isShuttingDown()).isFalse();
+            assertThat(secondClient.create("filter").get(2, TimeUnit.SECONDS)).isEqualTo(CreateResult.DONE);
+
+            // closing a pool again does not release the group twice
+            first.closeConnections().sync();
+            assertThat(shared.refCount()).isEqualTo(1);
+
+            second.closeConnections().sync();
+            assertThat(group.isTerminated()).isTrue();
+            assertThat(shared.refCount()).isEqualTo(0);
+
+            // a new group is started when used again
+            BloomdClientPool third = newPool(server, shared);
+            BloomdClient thirdClient = third.acquire().get(2, TimeUnit.SECONDS);
+            assertThat(thirdClient.create("filter").get(2, TimeUnit.SECONDS)).isEqualTo(CreateResult.EXISTS);
+            third.closeConnections().sync();
+        }
+    }
+
+    @Test
+    public void testExternalGroupOfUnknownTransportIsRejected() throws Exception {
+        EventLoopGroup group = new LocalEventLoopGroup(1);
+        try {
+            new SharedEventLoopGroup(group);
+            fail("Local groups can not open TCP connections");
+        } catch (IllegalArgumentException e) {
+            assertThat(e).hasMessageContaining("LocalEventLoopGroup");
+        } finally {
+            group.shutdownGracefully().sync();
+        }
+
+        EventLoopGroup nio = new NioEventLoopGroup(1);
+        try {
+            assertThat(new SharedEventLoopGroup(nio).getTransport()).isEqualTo(BloomdClientConfig.Transport.NIO);
+            assertThat(new SharedEventLoopGroup(nio.next()).getTransport()).isEqualTo(BloomdClientConfig.Transport.NIO);
+        } finally {
+            nio.shutdownGracefully().sync();
+        }
+    }
+
+    @Test
+    public void testExternalGroupIsNotShutDown() throws Exception {
+        EventLoopGroup group = new NioEventLoopGroup(1);
+        try (FakeBloomdServer server = new FakeBloomdServer()) {
+            BloomdClientPool pool = newPool(server, new SharedEventLoopGroup(group));
+            BloomdClientImpl client = (BloomdClientImpl) pool.acquire().get(2, TimeUnit.SECONDS);
+            assertThat(client.getChannel().eventLoop().parent()).isSameAs(group);
+
+            pool.closeConnections().sync();
+            assertThat(group.isShuttingDown()).isFalse();
+        } finally {
+            group.shutdownGracefully();
+        }
+    }
+
+    private static BloomdClientPool newPool(FakeBloomdServer server, SharedEventLoopGroup group) {
+        return new BloomdClientPool(new BloomdClientConfig.Builder()
+                .setHost("localhost")
+                .setPort(server.getPort())
+                .setEventLoopGroup(group)
+                .build());
+    }
+}
@@ -0,0 +1,63 @@
+package bloomd;
+
+import bloomd.replies.StateResult;
+import bloomd.replies.StateResults;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class StateResultsTest {
+
+    @Test
+    public void testPackedResults() throws Exception {
+        StateResults.Builder builder = new StateResults.Builder(1);
+        List<Integer> expectedYes = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            boolean yes = i % 3 == 0 || i == 63 || i == 64;
+            if (yes) {
+                expectedYes.add(i);
+            }
+            builder.add(yes ? StateResult.YES : StateResult.NO);
+        }
+        StateResults results = builder.build();
+
+        assertThat(results.size()).isEqualTo(200);
+        assertThat(results.cardinality()).isEqualTo(expectedYes.size());
+        assertThat(results.get(63)).isEqualTo(StateResult.YES);
+        assertThat(results.get(65)).isEqualTo(StateResult.NO);
+
+        List<Integer> yes = new ArrayList<>();
+        results.forEachYes(yes::add);
+        assertThat(yes).isEqualTo(expectedYes);
+
+        try {
+            results.get(200);
+            fail("Should have failed because the index is out of bounds");
+        } catch (IndexOutOfBoundsException ignored) {
+        }
+    }
+
+    @Test
+    public void testListView() throws Exception {
+        StateResults results = new StateResults.Builder()
+                .add(StateResult.YES)
+                .add(StateResult.NO)
+                .add(StateResult.YES)
+                .build();
+
+        assertThat(results.asList()).isEqualTo(Arrays.asList(StateResult.YES, StateResult.NO, StateResult.YES));
+        assertThat(results.asList().indexOf(StateResult.NO)).isEqualTo(1);
+        assertThat(results.toString()).isEqualTo("[YES, NO, YES]");
+
+        try {
+            results.asList().add(StateResult.NO);
+            fail("Should have failed because the view is read only");
+        } catch (UnsupportedOperationException ignored) {
+        }
+    }
+}
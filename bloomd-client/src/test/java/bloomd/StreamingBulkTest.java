@@ -0,0 +1,135 @@
+package bloomd;
+
+import bloomd.replies.BulkSummary;
+import bloomd.replies.StateResult;
+import bloomd.replies.StateResults;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class StreamingBulkTest {
+
+    @Test
+    public void testKeysAreStreamedWithBoundedBatchesInFlight() throws Exception {
+        List<String[]> sentBatches = new ArrayList<>();
+        List<CompletableFuture<StateResults>> pending = new ArrayList<>();
+
+        CompletableFuture<BulkSummary> summary = StreamingBulkCommand.execute((filterName, keys) -> {
+            sentBatches.add(keys);
+            CompletableFuture<StateResults> future = new CompletableFuture<>();
+            pending.add(future);
+            return future;
+        }, "filter", IntStream.range(0, 10).mapToObj(i -> "key" + i).iterator(), 3, 2, null, Runnable::run);
+
+        // only two batches are pulled from the iterator until one of them completes
+        assertThat(sentBatches).hasSize(2);
+        pending.get(0).complete(allYes(3));
+        assertThat(sentBatches).hasSize(3);
+        pending.get(1).complete(allYes(3));
+        pending.get(2).complete(new StateResults(new long[1], 3));
+        assertThat(summary).isNotDone();
+
+        // the last batch holds the remaining key
+        assertThat(sentBatches.get(3)).containsExactly("key9");
+        pending.get(3).complete(allYes(1));
+
+        assertThat(summary.get()).isEqualTo(new BulkSummary(10, 7));
+    }
+
+    @Test
+    public void testStreamToServer() throws Exception {
+        try (FakeBloomdServer server = new FakeBloomdServer()) {
+            BloomdClientPool pool = new BloomdClientPool("localhost", server.getPort(), 2, 2000, 1000);
+            MultiplexedBloomdClient client = new MultiplexedBloomdClient(pool, 2, 4);
+            try {
+                client.create("filter").get(2, TimeUnit.SECONDS);
+                client.bulkBits("filter", "key0", "key1").get(2, TimeUnit.SECONDS);
+
+                BulkSummary summary = client.bulkStream("filter", IntStream.range(0, 50_000).mapToObj(i -> "key" + i),
+                        1_000, 4).get(10, TimeUnit.SECONDS);
+                assertThat(summary.getKeys()).isEqualTo(50_000);
+                assertThat(summary.getNewKeys()).isEqualTo(49_998);
+                assertThat(summary.getExistingKeys()).isEqualTo(2);
+
+                Map<String, StateResult> results = new HashMap<>();
+                client.bulkStream("filter", IntStream.range(49_990, 50_010).mapToObj(i -> "key" + i).iterator(),
+                        7, 2, results::put).get(2, TimeUnit.SECONDS);
+                assertThat(results).hasSize(20);
+                assertThat(results.get("key49999")).isEqualTo(StateResult.NO);
+                assertThat(results.get("key50000")).isEqualTo(StateResult.YES);
+
+                assertThat(client.bulkStream("filter", new ArrayList<String>().spliterator(), 10, 1)
+                        .get(2, TimeUnit.SECONDS)).isEqualTo(new BulkSummary(0, 0));
+            } finally {
+                client.release().get(2, TimeUnit.SECONDS);
+                pool.closeConnections();
+            }
+        }
+    }
+
+    @Test
+    public void testBatchesCompletingSynchronouslyDoNotRecurse() throws Exception {
+        BulkSummary summary = StreamingBulkCommand.execute(
+                (filterName, keys) -> CompletableFuture.completedFuture(allYes(keys.length)),
+                "filter", IntStream.range(0, 1_000_000).mapToObj(i -> "key" + i).iterator(), 1, 4, null,
+                Runnable::run).get(2, TimeUnit.SECONDS);
+
+        assertThat(summary).isEqualTo(new BulkSummary(1_000_000, 1_000_000));
+    }
+
+    @Test
+    public void testKeysArePulledOutsideOfReplyCallbacks() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor(r -> new Thread(r, "key-puller"));
+        try (FakeBloomdServer server = new FakeBloomdServer()) {
+            BloomdClientPool pool = new BloomdClientPool("localhost", server.getPort(), 2, 2000, 1000);
+            MultiplexedBloomdClient client = new MultiplexedBloomdClient(pool, 2, 4);
+            try {
+                client.create("filter").get(2, TimeUnit.SECONDS);
+
+                Set<String> pullingThreads = ConcurrentHashMap.newKeySet();
+                Set<String> consumingThreads = ConcurrentHashMap.newKeySet();
+                AtomicBoolean closed = new AtomicBoolean();
+                Stream<String> keys = IntStream.range(0, 10_000)
+                        .mapToObj(i -> {
+                            pullingThreads.add(Thread.currentThread().getName());
+                            return "key" + i;
+                        })
+                        .onClose(() -> closed.set(true));
+
+                BulkSummary summary = client.bulkStream("filter", keys, 100, 4, executor).get(5, TimeUnit.SECONDS);
+                assertThat(summary.getKeys()).isEqualTo(10_000);
+                assertThat(closed.get()).isTrue();
+
+                client.bulkStream("filter", IntStream.range(0, 1_000).mapToObj(i -> "key" + i).iterator(), 100, 4,
+                        (key, state) -> consumingThreads.add(Thread.currentThread().getName()), executor)
+                        .get(5, TimeUnit.SECONDS);
+
+                assertThat(pullingThreads).containsOnly("key-puller");
+                assertThat(consumingThreads).containsOnly("key-puller");
+            } finally {
+                client.release().get(2, TimeUnit.SECONDS);
+                pool.closeConnections();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static StateResults allYes(int size) {
+        return new StateResults(new long[]{(1L << size) - 1}, size);
+    }
+}
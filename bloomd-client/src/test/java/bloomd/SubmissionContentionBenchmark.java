@@ -0,0 +1,135 @@
+package bloomd;
+
+import bloomd.args.StateArgs;
+import bloomd.decoders.BloomdCommandCodec;
+import bloomd.decoders.GenericStateCodec;
+import bloomd.replies.CreateResult;
+import bloomd.replies.StateResult;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Measures command submission throughput when many threads share a single client. Submitting through the
+ * client's queue, drained by the event loop, is compared with the previous approach of serializing callers
+ * on a monitor and writing each command while holding it.
+ */
+public class SubmissionContentionBenchmark {
+
+    private static final String FILTER = "contention";
+    private static final int COMMANDS_PER_THREAD = 2_000;
+
+    private final Object legacyLock = new Object();
+    private final BloomdCommandCodec<StateArgs, StateResult> setCodec = new GenericStateCodec<>("s", true);
+
+    private FakeBloomdServer server;
+    private BloomdClientImpl client;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new FakeBloomdServer();
+        client = (BloomdClientImpl) BloomdClient.newInstance("localhost", server.getPort()).get(2, TimeUnit.SECONDS);
+        assertThat(client.create(FILTER).get(2, TimeUnit.SECONDS)).isEqualTo(CreateResult.DONE);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        client.getChannel().close().sync();
+        server.close();
+    }
+
+    @Test
+    public void compareSubmission() throws Exception {
+        for (int threads : new int[]{1, 10, 100}) {
+            // warm up both paths
+            run(threads, this::submitThroughQueue);
+            run(threads, this::submitHoldingLock);
+
+            long queued = run(threads, this::submitThroughQueue);
+            long locked = run(threads, this::submitHoldingLock);
+
+            System.out.println(String.format("%3d threads: event loop queue %7d cmd/s, monitor %7d cmd/s",
+                                             threads, queued, locked));
+        }
+    }
+
+    private Future<StateResult> submitThroughQueue(StateArgs args) {
+        return client.sendCommand(setCodec, args);
+    }
+
+    private Future<StateResult> submitHoldingLock(StateArgs args) {
+        CompletableFuture<StateResult> future = new CompletableFuture<>();
+        synchronized (legacyLock) {
+            client.getChannel().writeAndFlush(new BloomdCommand<>(setCodec, args, future));
+        }
+        return future;
+    }
+
+    /**
+     * @return throughput in commands per second
+     */
+    private long run(int threads, Submitter submitter) throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        List<Throwable> failures = new ArrayList<>();
+
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+
+                    // keep a window of outstanding commands per thread, like a pipelining caller would
+                    List<Future<StateResult>> window = new ArrayList<>();
+                    for (int i = 0; i < COMMANDS_PER_THREAD; i++) {
+                        StateArgs args = new StateArgs.Builder()
+                                .setFilterName(FILTER)
+                                .addKey("key-" + thread + "-" + i)
+                                .build();
+                        window.add(submitter.submit(args));
+
+                        if (window.size() == 16) {
+                            for (Future<StateResult> future : window) {
+                                future.get(5, TimeUnit.SECONDS);
+                            }
+                            window.clear();
+                        }
+                    }
+
+                    for (Future<StateResult> future : window) {
+                        future.get(5, TimeUnit.SECONDS);
+                    }
+                } catch (Throwable e) {
+                    synchronized (failures) {
+                        failures.add(e);
+                    }
+                }
+            });
+            worker.start();
+            workers.add(worker);
+        }
+
+        long startTime = System.nanoTime();
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        long elapsed = System.nanoTime() - startTime;
+
+        assertThat(failures).isEmpty();
+        return TimeUnit.SECONDS.toNanos(1) * threads * COMMANDS_PER_THREAD / elapsed;
+    }
+
+    private interface Submitter {
+        Future<StateResult> submit(StateArgs args);
+    }
+}
@@ -0,0 +1,78 @@
+package bloomd;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class WarmUpTest {
+
+    @Test
+    public void testMinIdleConnectionsAreOpenedAndKept() throws Exception {
+        try (FakeBloomdServer server = new FakeBloomdServer()) {
+            BloomdClientPool pool = new BloomdClientPool(config(server.getPort()));
+            try {
+                pool.ready().get(2, TimeUnit.SECONDS);
+                assertThat(pool.getOpenConnections()).isEqualTo(3);
+
+                // warm connections are handed out without connecting again
+                BloomdClientImpl first = (BloomdClientImpl) pool.acquire().get(2, TimeUnit.SECONDS);
+                BloomdClientImpl second = (BloomdClientImpl) pool.acquire().get(2, TimeUnit.SECONDS);
+                BloomdClientImpl third = (BloomdClientImpl) pool.acquire().get(2, TimeUnit.SECONDS);
+                assertThat(pool.getOpenConnections()).isEqualTo(3);
+                assertThat(first.create("filter").get(2, TimeUnit.SECONDS)).isNotNull();
+
+                // a dropped connection is replaced when no idle connection is left
+                first.getChannel().close().sync();
+                awaitOpenConnections(pool, 3);
+
+                // idle connections are not taken away from callers to replace a dropped one
+                pool.release(second).get(2, TimeUnit.SECONDS);
+                second.getChannel().close().sync();
+                awaitOpenConnections(pool, 2);
+                Thread.sleep(100);
+                assertThat(pool.getOpenConnections()).isEqualTo(2);
+                pool.release(third).get(2, TimeUnit.SECONDS);
+            } finally {
+                pool.closeConnections().sync();
+            }
+        }
+    }
+
+    @Test
+    public void testReadyFailsWhenConnectionsCanNotBeOpened() throws Exception {
+        int port;
+        try (FakeBloomdServer server = new FakeBloomdServer()) {
+            port = server.getPort();
+        }
+
+        BloomdClientPool pool = new BloomdClientPool(config(port));
+        try {
+            pool.ready().get(2, TimeUnit.SECONDS);
+            fail("Should have failed because nothing is listening on the port");
+        } catch (Exception e) {
+            assertThat(e.getCause()).isNotNull();
+        } finally {
+            pool.closeConnections().sync();
+        }
+    }
+
+    private static void awaitOpenConnections(BloomdClientPool pool, int connections) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 2_000;
+        while (pool.getOpenConnections() != connections && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(pool.getOpenConnections()).isEqualTo(connections);
+    }
+
+    private static BloomdClientConfig config(int port) {
+        return new BloomdClientConfig.Builder()
+                .setHost("localhost")
+                .setPort(port)
+                .setMaxConnections(5)
+                .setMinIdleConnections(3)
+                .build();
+    }
+}
@@ -0,0 +1,86 @@
+package bloomd.tools;
+
+import bloomd.BloomdClient;
+import bloomd.BloomdClientPool;
+import bloomd.FakeBloomdServer;
+import bloomd.replies.StateResults;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BulkLoaderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private FakeBloomdServer server;
+    private BloomdClientPool pool;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new FakeBloomdServer();
+        pool = new BloomdClientPool("localhost", server.getPort(), 3, 2000, 1000);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        pool.closeConnections();
+        server.close();
+    }
+
+    @Test
+    public void testLoadKeyFile() throws Exception {
+        Path file = folder.newFile("keys.txt").toPath();
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < 100_000; i++) {
+                writer.write("key" + i);
+                // mix line delimiters and empty lines, which are skipped
+                writer.write(i % 2 == 0 ? "\n" : "\r\n");
+                if (i % 1000 == 0) {
+                    writer.write("\n");
+                }
+            }
+            // the last line has no delimiter
+            writer.write("last-key");
+        }
+
+        BloomdClient client = pool.acquire().get(2, TimeUnit.SECONDS);
+        client.create("filter").get(2, TimeUnit.SECONDS);
+        client.bulkBits("filter", "key0", "key99999").get(2, TimeUnit.SECONDS);
+        pool.release(client).get(2, TimeUnit.SECONDS);
+
+        // small regions so keys are sliced across several of them
+        BulkLoader loader = new BulkLoader.Builder()
+                .setPool(pool)
+                .setConnections(3)
+                .setBatchSize(777)
+                .setBatchesInFlightPerConnection(2)
+                .setRegionSize(64 * 1024)
+                .build();
+
+        LoadReport report = loader.load("filter", file).get(10, TimeUnit.SECONDS);
+        assertThat(report.getKeys()).isEqualTo(100_001);
+        assertThat(report.getNewKeys()).isEqualTo(99_999);
+        assertThat(report.getBytes()).isEqualTo(Files.size(file));
+
+        client = pool.acquire().get(2, TimeUnit.SECONDS);
+        StateResults checks = client.multiBits("filter", "key1", "key50000", "key99998", "last-key", "key100000")
+                .get(2, TimeUnit.SECONDS);
+        assertThat(checks.cardinality()).isEqualTo(4);
+        assertThat(checks.isYes(4)).isFalse();
+        pool.release(client).get(2, TimeUnit.SECONDS);
+
+        // every key is already there the second time
+        assertThat(loader.load("filter", file).get(10, TimeUnit.SECONDS).getNewKeys()).isEqualTo(0);
+    }
+}
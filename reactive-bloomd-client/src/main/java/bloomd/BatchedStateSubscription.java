@@ -0,0 +1,394 @@
+package bloomd;
+
+import bloomd.replies.StateResult;
+import bloomd.replies.StateResults;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+
+/**
+ * Subscribes to a publisher of keys, sends them in batches and publishes the result of every key in order.
+ * <p>
+ * Keys are requested from upstream one batch at a time, and only when the subscriber still has demand that is not
+ * covered by keys already received and there are less than {@code maxBatchesInFlight} batches pending. Batches stay
+ * pending until all their results have been delivered, so at most {@code maxBatchesInFlight * batchSize} keys and
+ * results are held regardless of how fast keys are produced.
+ * <p>
+ * Batches are sent once full or when upstream completes. A partial batch is also sent once its first key waited for
+ * {@code lingerNanos}, so results keep flowing when upstream produces keys slower than they are requested.
+ * <p>
+ * State is guarded by {@code this}, but subscribers are only called from {@link #drain()}, outside of the lock and
+ * never concurrently.
+ */
+final class BatchedStateSubscription implements Subscriber<String>, Subscription {
+
+    private final BiFunction<String, String[], CompletableFuture<StateResults>> command;
+    private final String filterName;
+    private final int batchSize;
+    private final int maxBatchesInFlight;
+    private final long lingerNanos;
+    private final ScheduledExecutorService scheduler;
+    private final Subscriber<? super StateResult> downstream;
+
+    private final AtomicInteger drainRequests = new AtomicInteger();
+
+    // guarded by this
+    private Subscription upstream;
+    private String[] filling;
+    private int fillingSize = 0;
+    // set once the keys being filled waited long enough to be sent without filling the batch
+    private boolean lingered = false;
+    private ScheduledFuture<?> lingerTask;
+    private long keysRequested = 0;
+    private boolean upstreamDone = false;
+    private final ArrayDeque<Batch> pending = new ArrayDeque<>();
+    // keys requested or received whose results have not been delivered yet
+    private long unsentResults = 0;
+    private long demand = 0;
+    private Throwable error;
+    private volatile boolean cancelled = false;
+    private boolean terminated = false;
+
+    BatchedStateSubscription(BiFunction<String, String[], CompletableFuture<StateResults>> command,
+                             String filterName, int batchSize, int maxBatchesInFlight,
+                             long lingerNanos, ScheduledExecutorService scheduler,
+                             Subscriber<? super StateResult> downstream) {
+        this.command = command;
+        this.filterName = filterName;
+        this.batchSize = batchSize;
+        this.maxBatchesInFlight = maxBatchesInFlight;
+        this.lingerNanos = lingerNanos;
+        this.scheduler = scheduler;
+        this.downstream = downstream;
+        this.filling = new String[batchSize];
+    }
+
+    // ---- upstream signals
+
+    @Override
+    public void onSubscribe(Subscription subscription) {
+        boolean accept;
+        synchronized (this) {
+            accept = upstream == null && !cancelled;
+            if (accept) {
+                upstream = subscription;
+            }
+        }
+
+        if (!accept) {
+            subscription.cancel();
+            return;
+        }
+        drain();
+    }
+
+    @Override
+    public void onNext(String key) {
+        if (key == null) {
+            throw new NullPointerException("key");
+        }
+
+        String[] firstKeyOf = null;
+        synchronized (this) {
+            if (upstreamDone || cancelled) {
+                return;
+            }
+
+            if (keysRequested == 0) {
+                error = new IllegalStateException("Received more keys than requested");
+                upstreamDone = true;
+            } else {
+                keysRequested--;
+                filling[fillingSize++] = key;
+                if (fillingSize == 1) {
+                    firstKeyOf = filling;
+                }
+            }
+        }
+
+        if (firstKeyOf != null) {
+            scheduleLinger(firstKeyOf);
+        }
+        drain();
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        synchronized (this) {
+            if (upstreamDone) {
+                return;
+            }
+            upstreamDone = true;
+            error = throwable;
+        }
+        drain();
+    }
+
+    @Override
+    public void onComplete() {
+        synchronized (this) {
+            if (upstreamDone) {
+                return;
+            }
+            upstreamDone = true;
+        }
+        drain();
+    }
+
+    // ---- downstream signals
+
+    @Override
+    public void request(long n) {
+        synchronized (this) {
+            if (n <= 0) {
+                if (error == null) {
+                    error = new IllegalArgumentException("Requested " + n + " results, has to be positive");
+                }
+            } else {
+                demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+            }
+        }
+        drain();
+    }
+
+    @Override
+    public void cancel() {
+        Subscription toCancel;
+        ScheduledFuture<?> linger;
+        synchronized (this) {
+            if (cancelled) {
+                return;
+            }
+            cancelled = true;
+            toCancel = upstream;
+            // results of batches still in flight are discarded
+            pending.clear();
+            filling = null;
+            linger = lingerTask;
+            lingerTask = null;
+        }
+
+        if (linger != null) {
+            linger.cancel(false);
+        }
+
+        if (toCancel != null) {
+            toCancel.cancel();
+        }
+    }
+
+    // ---- batches
+
+    private void scheduleLinger(String[] keys) {
+        ScheduledFuture<?> task;
+        try {
+            task = scheduler.schedule(() -> linger(keys), lingerNanos, TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            synchronized (this) {
+                if (error == null) {
+                    error = e;
+                }
+            }
+            drain();
+            return;
+        }
+
+        synchronized (this) {
+            // the keys might have been sent already, without waiting for the linger
+            if (filling == keys && fillingSize > 0) {
+                lingerTask = task;
+                return;
+            }
+        }
+        task.cancel(false);
+    }
+
+    private void linger(String[] keys) {
+        synchronized (this) {
+            if (filling != keys || fillingSize == 0) {
+                return;
+            }
+            lingered = true;
+            lingerTask = null;
+        }
+        drain();
+    }
+
+    private void batchCompleted(Batch batch, StateResults states, Throwable err) {
+        synchronized (this) {
+            if (err != null) {
+                if (error == null) {
+                    error = Futures.unwrap(err);
+                }
+            } else {
+                batch.states = states;
+            }
+        }
+        drain();
+    }
+
+    /**
+     * Delivers the results that are ready and demanded, sends full batches and requests more keys. Concurrent calls
+     * are folded into the one already running.
+     */
+    private void drain() {
+        if (drainRequests.getAndIncrement() != 0) {
+            return;
+        }
+
+        int missed = 1;
+        do {
+            emitResults();
+            sendBatches();
+            requestKeys();
+            missed = drainRequests.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    private void emitResults() {
+        while (true) {
+            Batch head;
+            int from;
+            int to;
+            Throwable failure = null;
+            boolean complete = false;
+
+            synchronized (this) {
+                if (cancelled || terminated) {
+                    return;
+                }
+
+                head = pending.peekFirst();
+                if (error != null) {
+                    failure = error;
+                    terminated = true;
+                } else if (head == null && upstreamDone && fillingSize == 0) {
+                    complete = true;
+                    terminated = true;
+                } else if (head == null || head.states == null || demand == 0) {
+                    return;
+                }
+
+                if (failure != null || complete) {
+                    head = null;
+                    from = to = 0;
+                } else {
+                    from = head.emitted;
+                    to = from + (int) Math.min(head.keys.length - from, demand);
+                    head.emitted = to;
+                    demand -= to - from;
+                    unsentResults -= to - from;
+                    if (to == head.keys.length) {
+                        pending.pollFirst();
+                    }
+                }
+            }
+
+            if (failure != null) {
+                cancelUpstream();
+                downstream.onError(failure);
+                return;
+            }
+
+            if (complete) {
+                downstream.onComplete();
+                return;
+            }
+
+            for (int i = from; i < to && !cancelled; i++) {
+                downstream.onNext(head.states.get(i));
+            }
+        }
+    }
+
+    private void sendBatches() {
+        while (true) {
+            Batch batch;
+            ScheduledFuture<?> linger;
+            synchronized (this) {
+                if (cancelled || terminated || pending.size() >= maxBatchesInFlight) {
+                    return;
+                }
+
+                boolean full = fillingSize == batchSize;
+                boolean partial = (upstreamDone || lingered) && fillingSize > 0;
+                if (!full && !partial) {
+                    return;
+                }
+
+                batch = new Batch(full ? filling : Arrays.copyOf(filling, fillingSize));
+                pending.addLast(batch);
+                filling = new String[batchSize];
+                fillingSize = 0;
+                lingered = false;
+                linger = lingerTask;
+                lingerTask = null;
+            }
+
+            if (linger != null) {
+                linger.cancel(false);
+            }
+
+            CompletableFuture<StateResults> result;
+            try {
+                result = command.apply(filterName, batch.keys);
+            } catch (RuntimeException e) {
+                result = Futures.failed(e);
+            }
+            result.whenComplete((states, err) -> batchCompleted(batch, states, err));
+        }
+    }
+
+    private void requestKeys() {
+        Subscription subscription;
+        long n;
+        synchronized (this) {
+            if (cancelled || terminated || upstreamDone || upstream == null || keysRequested > 0
+                    || pending.size() >= maxBatchesInFlight) {
+                return;
+            }
+
+            // keys requested or received already cover what the subscriber asked for
+            if (unsentResults >= demand) {
+                return;
+            }
+
+            n = batchSize - fillingSize;
+            keysRequested = n;
+            unsentResults += n;
+            subscription = upstream;
+        }
+        subscription.request(n);
+    }
+
+    private void cancelUpstream() {
+        Subscription subscription;
+        synchronized (this) {
+            subscription = upstream;
+            upstreamDone = true;
+        }
+        if (subscription != null) {
+            subscription.cancel();
+        }
+    }
+
+    private static final class Batch {
+        final String[] keys;
+        // guarded by the enclosing subscription
+        StateResults states;
+        int emitted = 0;
+
+        Batch(String[] keys) {
+            this.keys = keys;
+        }
+    }
+}
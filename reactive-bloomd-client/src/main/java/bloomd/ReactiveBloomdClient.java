@@ -0,0 +1,152 @@
+package bloomd;
+
+import bloomd.replies.StateResult;
+import bloomd.replies.StateResults;
+import io.netty.util.concurrent.GlobalEventExecutor;
+import org.reactivestreams.Publisher;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Reactive Streams API for streaming workloads. Keys are read from a {@link Publisher} and sent in batches, and the
+ * result of every key is published in the same order the keys were received.
+ * <p>
+ * Backpressure goes both ways: keys are only requested from the upstream publisher when the subscriber has asked
+ * for their results and there is room for another batch in flight, so a slow subscriber or a slow bloomd server
+ * throttles the producer instead of buffering results.
+ * <p>
+ * Keys are sent once a batch is full, or once the first key of a partial batch waited for the linger, so a slow
+ * producer does not hold back the results of the keys it already published.
+ * <p>
+ * Publishers are cold: every subscription sends its own commands.
+ */
+public class ReactiveBloomdClient {
+
+    private static final Logger LOG = Logger.getLogger(ReactiveBloomdClient.class.getSimpleName());
+
+    public static final int DEFAULT_BATCH_SIZE = 1_000;
+    public static final int DEFAULT_MAX_BATCHES_IN_FLIGHT = 4;
+    public static final long DEFAULT_LINGER_MILLIS = 5;
+
+    private final BloomdClientPool bloomdClientPool;
+
+    // when set, batches are sent through this client instead of leasing a connection per batch
+    private final BloomdClient client;
+
+    /**
+     * Every batch leases a connection from the pool, so the number of batches in flight is also bounded by the
+     * size of the pool.
+     */
+    public ReactiveBloomdClient(BloomdClientPool bloomdClientPool) {
+        this.bloomdClientPool = bloomdClientPool;
+        this.client = null;
+    }
+
+    /**
+     * Sends every batch through the given client, typically a {@link MultiplexedBloomdClient}.
+     */
+    public ReactiveBloomdClient(BloomdClient client) {
+        this.bloomdClientPool = null;
+        this.client = client;
+    }
+
+    /**
+     * Adds the keys to the filter using BULK commands.
+     */
+    public Publisher<StateResult> bulk(String filterName, Publisher<String> keys) {
+        return bulk(filterName, keys, DEFAULT_BATCH_SIZE, DEFAULT_MAX_BATCHES_IN_FLIGHT);
+    }
+
+    public Publisher<StateResult> bulk(String filterName, Publisher<String> keys, int batchSize, int maxBatchesInFlight) {
+        return bulk(filterName, keys, batchSize, maxBatchesInFlight, DEFAULT_LINGER_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param linger how long a partial batch waits for more keys before it is sent
+     */
+    public Publisher<StateResult> bulk(String filterName, Publisher<String> keys, int batchSize, int maxBatchesInFlight,
+                                       long linger, TimeUnit unit) {
+        return publisher(BloomdClient::bulkBits, filterName, keys, batchSize, maxBatchesInFlight, linger, unit);
+    }
+
+    /**
+     * Checks the keys against the filter using MULTI commands.
+     */
+    public Publisher<StateResult> multi(String filterName, Publisher<String> keys) {
+        return multi(filterName, keys, DEFAULT_BATCH_SIZE, DEFAULT_MAX_BATCHES_IN_FLIGHT);
+    }
+
+    public Publisher<StateResult> multi(String filterName, Publisher<String> keys, int batchSize, int maxBatchesInFlight) {
+        return multi(filterName, keys, batchSize, maxBatchesInFlight, DEFAULT_LINGER_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param linger how long a partial batch waits for more keys before it is sent
+     */
+    public Publisher<StateResult> multi(String filterName, Publisher<String> keys, int batchSize, int maxBatchesInFlight,
+                                        long linger, TimeUnit unit) {
+        return publisher(BloomdClient::multiBits, filterName, keys, batchSize, maxBatchesInFlight, linger, unit);
+    }
+
+    private Publisher<StateResult> publisher(StateCommand command, String filterName, Publisher<String> keys,
+                                             int batchSize, int maxBatchesInFlight, long linger, TimeUnit unit) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize has to be at least 1");
+        }
+
+        if (maxBatchesInFlight < 1) {
+            throw new IllegalArgumentException("maxBatchesInFlight has to be at least 1");
+        }
+
+        if (linger < 0) {
+            throw new IllegalArgumentException("linger can not be negative");
+        }
+        long lingerNanos = unit.toNanos(linger);
+
+        BiFunction<String, String[], CompletableFuture<StateResults>> sendBatch =
+                (filter, batch) -> execute(target -> command.apply(target, filter, batch));
+
+        return subscriber -> {
+            if (subscriber == null) {
+                throw new NullPointerException("subscriber");
+            }
+
+            BatchedStateSubscription subscription =
+                    new BatchedStateSubscription(sendBatch, filterName, batchSize, maxBatchesInFlight,
+                            lingerNanos, GlobalEventExecutor.INSTANCE, subscriber);
+            subscriber.onSubscribe(subscription);
+            keys.subscribe(subscription);
+        };
+    }
+
+    private CompletableFuture<StateResults> execute(Function<BloomdClient, CompletableFuture<StateResults>> fn) {
+        if (client != null) {
+            return fn.apply(client);
+        }
+
+        return bloomdClientPool.acquire().thenCompose(leased -> {
+            CompletableFuture<StateResults> result;
+            try {
+                result = fn.apply(leased);
+            } catch (RuntimeException e) {
+                result = Futures.failed(e);
+            }
+
+            return result.whenComplete((states, err) -> bloomdClientPool.release(leased).whenComplete((ignore, releaseErr) -> {
+                if (releaseErr != null) {
+                    LOG.log(Level.SEVERE, releaseErr, () -> "Failed to release connection");
+                }
+            }));
+        });
+    }
+
+    @FunctionalInterface
+    private interface StateCommand {
+        CompletableFuture<StateResults> apply(BloomdClient client, String filterName, String[] keys);
+    }
+}
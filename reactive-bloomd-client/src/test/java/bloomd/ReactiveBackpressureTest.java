@@ -0,0 +1,285 @@
+package bloomd;
+
+import bloomd.replies.StateResult;
+import bloomd.replies.StateResults;
+import io.netty.util.concurrent.GlobalEventExecutor;
+import org.junit.Test;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ReactiveBackpressureTest {
+
+    // long enough to never send partial batches while the test runs
+    private static final long NO_LINGER = TimeUnit.MINUTES.toNanos(1);
+
+    @Test
+    public void testDemandBoundsBatchesInFlight() throws Exception {
+        KeyPublisher keys = new KeyPublisher(100);
+        List<CompletableFuture<StateResults>> batches = new ArrayList<>();
+        RecordingSubscriber results = new RecordingSubscriber();
+
+        BatchedStateSubscription subscription = new BatchedStateSubscription((filterName, batch) -> {
+            CompletableFuture<StateResults> future = new CompletableFuture<>();
+            batches.add(future);
+            return future;
+        }, "filter", 10, 3, NO_LINGER, GlobalEventExecutor.INSTANCE, results);
+        results.onSubscribe(subscription);
+        keys.subscribe(subscription);
+
+        // nothing is pulled until there is demand, and then only the batches needed to cover it
+        assertThat(keys.requested.get()).isEqualTo(0);
+        results.subscription.request(15);
+        assertThat(keys.requested.get()).isEqualTo(20);
+        assertThat(batches).hasSize(2);
+
+        // unbounded demand is capped by the number of batches in flight
+        results.subscription.request(Long.MAX_VALUE);
+        assertThat(batches).hasSize(3);
+        assertThat(keys.requested.get()).isEqualTo(30);
+
+        // results are published in order even if batches complete out of order
+        batches.get(1).complete(yesFrom(10, 10));
+        assertThat(results.received).isEmpty();
+        assertThat(batches).hasSize(3);
+
+        batches.get(0).complete(yesFrom(0, 10));
+        assertThat(results.received).hasSize(20);
+        assertThat(batches).hasSize(5);
+
+        for (int i = 2; i < 10; i++) {
+            batches.get(i).complete(yesFrom(i * 10, 10));
+        }
+
+        assertThat(results.done.await(1, TimeUnit.SECONDS)).isTrue();
+        assertThat(results.error).isNull();
+        assertThat(results.received).hasSize(100);
+        for (int i = 0; i < 100; i++) {
+            assertThat(results.received.get(i)).isEqualTo(i % 2 == 0 ? StateResult.YES : StateResult.NO);
+        }
+    }
+
+    @Test
+    public void testSlowSubscriberThrottlesKeys() throws Exception {
+        KeyPublisher keys = new KeyPublisher(1_000);
+        RecordingSubscriber results = new RecordingSubscriber();
+
+        BatchedStateSubscription subscription = new BatchedStateSubscription(
+                (filterName, batch) -> CompletableFuture.completedFuture(yesFrom(0, batch.length)),
+                "filter", 10, 2, NO_LINGER, GlobalEventExecutor.INSTANCE, results);
+        results.onSubscribe(subscription);
+        keys.subscribe(subscription);
+
+        results.subscription.request(5);
+        assertThat(results.received).hasSize(5);
+        // the rest of the batch is kept until it is requested
+        assertThat(keys.requested.get()).isEqualTo(10);
+
+        results.subscription.request(10);
+        assertThat(results.received).hasSize(15);
+        assertThat(keys.requested.get()).isEqualTo(20);
+
+        results.subscription.cancel();
+        assertThat(keys.cancelled).isTrue();
+    }
+
+    @Test
+    public void testPartialBatchIsSentAfterLinger() throws Exception {
+        // publishes 3 keys and then stalls without completing
+        KeyPublisher keys = new KeyPublisher(3, false);
+        List<String[]> batches = new ArrayList<>();
+        RecordingSubscriber results = new RecordingSubscriber();
+
+        BatchedStateSubscription subscription = new BatchedStateSubscription((filterName, batch) -> {
+            synchronized (batches) {
+                batches.add(batch);
+            }
+            return CompletableFuture.completedFuture(yesFrom(0, batch.length));
+        }, "filter", 10, 2, TimeUnit.MILLISECONDS.toNanos(20), GlobalEventExecutor.INSTANCE, results);
+        results.onSubscribe(subscription);
+        keys.subscribe(subscription);
+        results.subscription.request(10);
+
+        long deadline = System.currentTimeMillis() + 2_000;
+        while (results.received.size() < 3 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertThat(results.received).containsExactly(StateResult.YES, StateResult.NO, StateResult.YES);
+        synchronized (batches) {
+            assertThat(batches).hasSize(1);
+            assertThat(batches.get(0)).containsExactly("key0", "key1", "key2");
+        }
+        assertThat(results.done.getCount()).isEqualTo(1);
+
+        results.subscription.cancel();
+        assertThat(keys.cancelled).isTrue();
+    }
+
+    @Test
+    public void testFailedBatchFailsStream() throws Exception {
+        KeyPublisher keys = new KeyPublisher(100);
+        RecordingSubscriber results = new RecordingSubscriber();
+
+        BatchedStateSubscription subscription = new BatchedStateSubscription(
+                (filterName, batch) -> Futures.failed(new FilterDoesNotExistException("Filter does not exist")),
+                "filter", 10, 2, NO_LINGER, GlobalEventExecutor.INSTANCE, results);
+        results.onSubscribe(subscription);
+        keys.subscribe(subscription);
+        results.subscription.request(Long.MAX_VALUE);
+
+        assertThat(results.done.await(1, TimeUnit.SECONDS)).isTrue();
+        assertThat(results.error).isInstanceOf(FilterDoesNotExistException.class);
+        assertThat(keys.cancelled).isTrue();
+    }
+
+    @Test
+    public void testBulkAndMultiAgainstServer() throws Exception {
+        try (FakeBloomdServer server = new FakeBloomdServer()) {
+            BloomdClientPool pool = new BloomdClientPool("localhost", server.getPort(), 2, 2000, 1000);
+            MultiplexedBloomdClient multiplexed = new MultiplexedBloomdClient(pool, 2, 4);
+            try {
+                multiplexed.create("filter").get(2, TimeUnit.SECONDS);
+                multiplexed.set("filter", "key3").get(2, TimeUnit.SECONDS);
+
+                ReactiveBloomdClient client = new ReactiveBloomdClient(multiplexed);
+                RecordingSubscriber bulk = new RecordingSubscriber(Long.MAX_VALUE);
+                client.bulk("filter", new KeyPublisher(10_000), 500, 4).subscribe(bulk);
+                assertThat(bulk.done.await(5, TimeUnit.SECONDS)).isTrue();
+                assertThat(bulk.error).isNull();
+                assertThat(bulk.received).hasSize(10_000);
+                assertThat(bulk.received.get(3)).isEqualTo(StateResult.NO);
+                assertThat(bulk.received.stream().filter(result -> result == StateResult.YES).count()).isEqualTo(9_999);
+
+            } finally {
+                multiplexed.release().get(2, TimeUnit.SECONDS);
+                pool.closeConnections();
+            }
+
+            // leasing a connection per batch from the pool
+            BloomdClientPool leasedPool = new BloomdClientPool("localhost", server.getPort(), 2, 2000, 1000);
+            try {
+                RecordingSubscriber multi = new RecordingSubscriber(Long.MAX_VALUE);
+                new ReactiveBloomdClient(leasedPool).multi("filter", new KeyPublisher(10_005), 1_000, 2).subscribe(multi);
+                assertThat(multi.done.await(5, TimeUnit.SECONDS)).isTrue();
+                assertThat(multi.error).isNull();
+                assertThat(multi.received).hasSize(10_005);
+                assertThat(multi.received.subList(9_998, 10_002))
+                        .containsExactly(StateResult.YES, StateResult.YES, StateResult.NO, StateResult.NO);
+            } finally {
+                leasedPool.closeConnections();
+            }
+        }
+    }
+
+    private static StateResults yesFrom(int offset, int size) {
+        StateResults.Builder builder = new StateResults.Builder(size);
+        for (int i = 0; i < size; i++) {
+            builder.add((offset + i) % 2 == 0);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Publishes "key0", "key1", ... honoring demand, and records how many keys were requested.
+     */
+    private static class KeyPublisher implements Publisher<String> {
+        private final int count;
+        private final boolean completes;
+        final AtomicLong requested = new AtomicLong();
+        volatile boolean cancelled = false;
+
+        KeyPublisher(int count) {
+            this(count, true);
+        }
+
+        KeyPublisher(int count, boolean completes) {
+            this.count = count;
+            this.completes = completes;
+        }
+
+        @Override
+        public void subscribe(Subscriber<? super String> subscriber) {
+            subscriber.onSubscribe(new Subscription() {
+                private long demand = 0;
+                private int next = 0;
+                private boolean emitting = false;
+
+                @Override
+                public void request(long n) {
+                    requested.addAndGet(n);
+                    demand += n;
+                    if (emitting) {
+                        return;
+                    }
+
+                    emitting = true;
+                    while (demand > 0 && next < count && !cancelled) {
+                        demand--;
+                        subscriber.onNext("key" + next++);
+                    }
+                    emitting = false;
+
+                    if (next == count && completes && !cancelled) {
+                        cancelled = true;
+                        subscriber.onComplete();
+                    }
+                }
+
+                @Override
+                public void cancel() {
+                    cancelled = true;
+                }
+            });
+        }
+    }
+
+    private static class RecordingSubscriber implements Subscriber<StateResult> {
+        private final long initialRequest;
+        final List<StateResult> received = Collections.synchronizedList(new ArrayList<>());
+        final CountDownLatch done = new CountDownLatch(1);
+        volatile Throwable error;
+        Subscription subscription;
+
+        RecordingSubscriber() {
+            this(0);
+        }
+
+        RecordingSubscriber(long initialRequest) {
+            this.initialRequest = initialRequest;
+        }
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            this.subscription = subscription;
+            if (initialRequest > 0) {
+                subscription.request(initialRequest);
+            }
+        }
+
+        @Override
+        public void onNext(StateResult result) {
+            received.add(result);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+            done.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            done.countDown();
+        }
+    }
+}
@@ -3,12 +3,17 @@ package bloomd;
 import bloomd.args.CreateFilterArgs;
 import bloomd.replies.BloomdFilter;
 import bloomd.replies.BloomdInfo;
+import bloomd.replies.BulkSummary;
 import bloomd.replies.ClearResult;
 import bloomd.replies.CreateResult;
 import bloomd.replies.StateResult;
+import bloomd.replies.StateResults;
 import rx.Single;
 
+import java.util.Iterator;
 import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
 
 /**
  * Important: if you need to add a timeout to the operation use
@@ -57,10 +62,39 @@ public interface RxBloomdClient {
 
     Single<List<StateResult>> multi(String filterName, long timeoutMillis, String... keys);
 
+    Single<StateResults> multiBits(String filterName, String... keys);
+
+    Single<StateResults> multiBits(String filterName, long timeoutMillis, String... keys);
+
+    Single<StateResults> multiChunked(String filterName, int chunkSize, int maxChunksInFlight, String... keys);
+
+    Single<StateResults> multiChunked(String filterName, int chunkSize, int maxChunksInFlight, long timeoutMillis, String... keys);
+
     Single<List<StateResult>> bulk(String filterName, String... keys);
 
     Single<List<StateResult>> bulk(String filterName, long timeoutMillis, String... keys);
 
+    Single<StateResults> bulkBits(String filterName, String... keys);
+
+    Single<StateResults> bulkBits(String filterName, long timeoutMillis, String... keys);
+
+    Single<StateResults> bulkChunked(String filterName, int chunkSize, int maxChunksInFlight, String... keys);
+
+    Single<StateResults> bulkChunked(String filterName, int chunkSize, int maxChunksInFlight, long timeoutMillis, String... keys);
+
+    /**
+     * @see BloomdClient#bulkStream(String, Iterator, int, int)
+     */
+    Single<BulkSummary> bulkStream(String filterName, Iterator<String> keys, int batchSize, int maxBatchesInFlight);
+
+    /**
+     * @see BloomdClient#bulkStream(String, Iterator, int, int, BiConsumer)
+     */
+    Single<BulkSummary> bulkStream(String filterName, Iterator<String> keys, int batchSize, int maxBatchesInFlight,
+                                   BiConsumer<String, StateResult> resultConsumer);
+
+    Single<BulkSummary> bulkStream(String filterName, Stream<String> keys, int batchSize, int maxBatchesInFlight);
+
     Single<BloomdInfo> info(String filterName);
 
     Single<BloomdInfo> info(String filterName, long timeoutMillis);
@@ -3,21 +3,27 @@ package bloomd;
 import bloomd.args.CreateFilterArgs;
 import bloomd.replies.BloomdFilter;
 import bloomd.replies.BloomdInfo;
+import bloomd.replies.BulkSummary;
 import bloomd.replies.ClearResult;
 import bloomd.replies.CreateResult;
 import bloomd.replies.StateResult;
+import bloomd.replies.StateResults;
 import rx.Single;
+import rx.SingleSubscriber;
+import rx.subscriptions.Subscriptions;
 
+import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.Stream;
 
 public class RxBloomdClientImpl implements RxBloomdClient {
 
@@ -25,6 +31,9 @@ public class RxBloomdClientImpl implements RxBloomdClient {
 
     private final BloomdClientPool bloomdClientPool;
 
+    // when set, commands are pipelined on this client instead of leasing a connection per operation
+    private final MultiplexedBloomdClient multiplexedClient;
+
     public RxBloomdClientImpl(String host, int port) {
         this(host, port, 1, 2_000, 2_000);
     }
@@ -33,204 +42,321 @@ public class RxBloomdClientImpl implements RxBloomdClient {
         this(new BloomdClientPool(host, port, maxConnections, connectionTimeoutMillis, acquireTimeoutMillis));
     }
 
+    public RxBloomdClientImpl(BloomdClientConfig config) {
+        this(new BloomdClientPool(config));
+    }
+
     public RxBloomdClientImpl(BloomdClientPool bloomdClientPool) {
         this.bloomdClientPool = bloomdClientPool;
+        this.multiplexedClient = null;
+    }
+
+    public RxBloomdClientImpl(MultiplexedBloomdClient multiplexedClient) {
+        this.bloomdClientPool = multiplexedClient.getPool();
+        this.multiplexedClient = multiplexedClient;
     }
 
     @Override
     public Single<List<BloomdFilter>> list() {
-        return execute(BloomdClient::list);
+        return execute("list", BloomdClient::list);
     }
 
     @Override
     public Single<List<BloomdFilter>> list(long timeoutMillis) {
-        return execute(BloomdClient::list, timeoutMillis);
+        return execute("list", BloomdClient::list, timeoutMillis);
     }
 
     @Override
     public Single<List<BloomdFilter>> list(String prefix) {
-        return execute(client -> client.list(prefix));
+        return execute("list", client -> client.list(prefix));
     }
 
     @Override
     public Single<List<BloomdFilter>> list(String prefix, long timeoutMillis) {
-        return execute(client -> client.list(prefix), timeoutMillis);
+        return execute("list", client -> client.list(prefix), timeoutMillis);
     }
 
     @Override
     public Single<CreateResult> create(String filterName) {
-        return execute(client -> client.create(filterName));
+        return execute("create", client -> client.create(filterName));
     }
 
     @Override
     public Single<CreateResult> create(String filterName, long timeoutMillis) {
-        return execute(client -> client.create(filterName), timeoutMillis);
+        return execute("create", client -> client.create(filterName), timeoutMillis);
     }
 
     @Override
     public Single<CreateResult> create(CreateFilterArgs args) {
-        return execute(client -> client.create(args));
+        return execute("create", client -> client.create(args));
     }
 
     @Override
     public Single<CreateResult> create(CreateFilterArgs args, long timeoutMillis) {
-        return execute(client -> client.create(args), timeoutMillis);
+        return execute("create", client -> client.create(args), timeoutMillis);
     }
 
     @Override
     public Single<Boolean> drop(String filterName) {
-        return execute(client -> client.drop(filterName));
+        return execute("drop", client -> client.drop(filterName));
     }
 
     @Override
     public Single<Boolean> drop(String filterName, long timeoutMillis) {
-        return execute(client -> client.drop(filterName), timeoutMillis);
+        return execute("drop", client -> client.drop(filterName), timeoutMillis);
     }
 
     @Override
     public Single<Boolean> close(String filterName) {
-        return execute(client -> client.close(filterName));
+        return execute("close", client -> client.close(filterName));
     }
 
     @Override
     public Single<Boolean> close(String filterName, long timeoutMillis) {
-        return execute(client -> client.close(filterName), timeoutMillis);
+        return execute("close", client -> client.close(filterName), timeoutMillis);
     }
 
     @Override
     public Single<ClearResult> clear(String filterName) {
-        return execute(client -> client.clear(filterName));
+        return execute("clear", client -> client.clear(filterName));
     }
 
     @Override
     public Single<ClearResult> clear(String filterName, long timeoutMillis) {
-        return execute(client -> client.clear(filterName), timeoutMillis);
+        return execute("clear", client -> client.clear(filterName), timeoutMillis);
     }
 
     @Override
     public Single<StateResult> check(String filterName, String key) {
-        return execute(client -> client.check(filterName, key));
+        return execute("check", client -> client.check(filterName, key));
     }
 
     @Override
     public Single<StateResult> check(String filterName, String key, long timeoutMillis) {
-        return execute(client -> client.check(filterName, key), timeoutMillis);
+        return execute("check", client -> client.check(filterName, key), timeoutMillis);
     }
 
     @Override
     public Single<StateResult> set(String filterName, String key) {
-        return execute(client -> client.set(filterName, key));
+        return execute("set", client -> client.set(filterName, key));
     }
 
     @Override
     public Single<StateResult> set(String filterName, String key, long timeoutMillis) {
-        return execute(client -> client.set(filterName, key), timeoutMillis);
+        return execute("set", client -> client.set(filterName, key), timeoutMillis);
     }
 
     @Override
     public Single<List<StateResult>> multi(String filterName, String... keys) {
-        return execute(client -> client.multi(filterName, keys));
+        return execute("multi", client -> client.multi(filterName, keys));
     }
 
     @Override
     public Single<List<StateResult>> multi(String filterName, long timeoutMillis, String... keys) {
-        return execute(client -> client.multi(filterName, keys), timeoutMillis);
+        return execute("multi", client -> client.multi(filterName, keys), timeoutMillis);
+    }
+
+    @Override
+    public Single<StateResults> multiBits(String filterName, String... keys) {
+        return execute("multiBits", client -> client.multiBits(filterName, keys));
+    }
+
+    @Override
+    public Single<StateResults> multiBits(String filterName, long timeoutMillis, String... keys) {
+        return execute("multiBits", client -> client.multiBits(filterName, keys), timeoutMillis);
+    }
+
+    @Override
+    public Single<StateResults> multiChunked(String filterName, int chunkSize, int maxChunksInFlight, String... keys) {
+        return execute("multiChunked", client -> client.multiChunked(filterName, chunkSize, maxChunksInFlight, keys));
+    }
+
+    @Override
+    public Single<StateResults> multiChunked(String filterName, int chunkSize, int maxChunksInFlight, long timeoutMillis, String... keys) {
+        return execute("multiChunked", client -> client.multiChunked(filterName, chunkSize, maxChunksInFlight, keys), timeoutMillis);
     }
 
     @Override
     public Single<List<StateResult>> bulk(String filterName, String... keys) {
-        return execute(client -> client.bulk(filterName, keys));
+        return execute("bulk", client -> client.bulk(filterName, keys));
     }
 
     @Override
     public Single<List<StateResult>> bulk(String filterName, long timeoutMillis, String... keys) {
-        return execute(client -> client.bulk(filterName, keys), timeoutMillis);
+        return execute("bulk", client -> client.bulk(filterName, keys), timeoutMillis);
+    }
+
+    @Override
+    public Single<StateResults> bulkBits(String filterName, String... keys) {
+        return execute("bulkBits", client -> client.bulkBits(filterName, keys));
+    }
+
+    @Override
+    public Single<StateResults> bulkBits(String filterName, long timeoutMillis, String... keys) {
+        return execute("bulkBits", client -> client.bulkBits(filterName, keys), timeoutMillis);
+    }
+
+    @Override
+    public Single<StateResults> bulkChunked(String filterName, int chunkSize, int maxChunksInFlight, String... keys) {
+        return execute("bulkChunked", client -> client.bulkChunked(filterName, chunkSize, maxChunksInFlight, keys));
+    }
+
+    @Override
+    public Single<StateResults> bulkChunked(String filterName, int chunkSize, int maxChunksInFlight, long timeoutMillis, String... keys) {
+        return execute("bulkChunked", client -> client.bulkChunked(filterName, chunkSize, maxChunksInFlight, keys), timeoutMillis);
+    }
+
+    @Override
+    public Single<BulkSummary> bulkStream(String filterName, Iterator<String> keys, int batchSize, int maxBatchesInFlight) {
+        return execute("bulkStream", client -> client.bulkStream(filterName, keys, batchSize, maxBatchesInFlight));
+    }
+
+    @Override
+    public Single<BulkSummary> bulkStream(String filterName, Iterator<String> keys, int batchSize, int maxBatchesInFlight,
+                                          BiConsumer<String, StateResult> resultConsumer) {
+        return execute("bulkStream", client -> client.bulkStream(filterName, keys, batchSize, maxBatchesInFlight, resultConsumer));
+    }
+
+    @Override
+    public Single<BulkSummary> bulkStream(String filterName, Stream<String> keys, int batchSize, int maxBatchesInFlight) {
+        return execute("bulkStream", client -> client.bulkStream(filterName, keys, batchSize, maxBatchesInFlight));
     }
 
     @Override
     public Single<BloomdInfo> info(String filterName) {
-        return execute(client -> client.info(filterName));
+        return execute("info", client -> client.info(filterName));
     }
 
     @Override
     public Single<BloomdInfo> info(String filterName, long timeoutMillis) {
-        return execute(client -> client.info(filterName), timeoutMillis);
+        return execute("info", client -> client.info(filterName), timeoutMillis);
     }
 
     @Override
     public Single<Boolean> flush(String filterName) {
-        return execute(client -> client.flush(filterName));
+        return execute("flush", client -> client.flush(filterName));
     }
 
     @Override
     public Single<Boolean> flush(String filterName, long timeoutMillis) {
-        return execute(client -> client.flush(filterName), timeoutMillis);
+        return execute("flush", client -> client.flush(filterName), timeoutMillis);
     }
 
     @Override
     public Single<Boolean> closeConnections() {
-        return Single.defer(() ->
-                Single.from(bloomdClientPool.closeConnections())
-                        .map(ignore -> true));
-    }
+        return Single.create(subscriber -> bloomdClientPool.closeConnections().addListener(future -> {
+            if (future.isSuccess()) {
+                subscriber.onSuccess(true);
+            } else {
+                subscriber.onError(future.cause());
+            }
+        }));
+    }
+
+    private <T> Single<T> execute(String opName, Function<BloomdClient, CompletableFuture<T>> fn) {
+        return execute(opName, fn, Long.MAX_VALUE);
+    }
+
+    private <T> Single<T> execute(String opName, Function<BloomdClient, CompletableFuture<T>> command, long timeoutMillis) {
+        // the command itself carries the deadline so that its late reply is discarded by the connection
+        Function<BloomdClient, CompletableFuture<T>> fn = timeoutMillis == Long.MAX_VALUE
+                ? command
+                : client -> command.apply(client.withTimeout(timeoutMillis, TimeUnit.MILLISECONDS));
+
+        Single<T> computation = multiplexedClient != null
+                ? Single.create(subscriber -> executeMultiplexed(fn, subscriber))
+                : Single.create(subscriber -> executePooled(fn, subscriber));
+
+        if (timeoutMillis != Long.MAX_VALUE) {
+            // also bounds the time spent acquiring a client; unsubscribing on timeout releases it
+            computation = computation.timeout(timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+
+        return computation.onErrorResumeNext(err -> Single.error(mapError(err, timeoutMillis, opName)));
+    }
+
+    /**
+     * Acquires a client from the pool, executes the computation on it and releases it once done or unsubscribed.
+     * Nothing blocks: every step is chained on the completion of the previous one.
+     */
+    private <T> void executePooled(Function<BloomdClient, CompletableFuture<T>> fn, SingleSubscriber<? super T> subscriber) {
+        CompletableFuture<BloomdClient> acquire;
+        try {
+            acquire = bloomdClientPool.acquire();
+        } catch (Throwable e) {
+            subscriber.onError(e);
+            return;
+        }
+
+        AtomicBoolean released = new AtomicBoolean(false);
+        Consumer<BloomdClient> release = client -> {
+            if (released.compareAndSet(false, true)) {
+                bloomdClientPool.release(client).whenComplete((ignore, err) -> {
+                    if (err != null) {
+                        LOG.log(Level.SEVERE, err, () -> "Failed to release connection");
+                    }
+                });
+            }
+        };
+
+        subscriber.add(Subscriptions.create(() -> acquire.thenAccept(release)));
+
+        acquire.whenComplete((client, acquireErr) -> {
+            if (acquireErr != null) {
+                subscriber.onError(Futures.unwrap(acquireErr));
+                return;
+            }
+
+            if (subscriber.isUnsubscribed()) {
+                release.accept(client);
+                return;
+            }
+
+            CompletableFuture<T> computation;
+            try {
+                computation = fn.apply(client);
+            } catch (Throwable e) {
+                release.accept(client);
+                subscriber.onError(e);
+                return;
+            }
 
-    private <T> Single<T> execute(Function<BloomdClient, Future<T>> fn) {
-        String origin = origin();
-        return Single.defer(() -> doExecute(fn, Long.MAX_VALUE, origin));
+            computation.whenComplete((result, err) -> {
+                release.accept(client);
+                complete(subscriber, result, err);
+            });
+        });
     }
 
-    private <T> Single<T> execute(Function<BloomdClient, Future<T>> fn, long timeoutMillis) {
-        String origin = origin();
-        return Single.defer(() -> doExecute(fn, timeoutMillis, origin));
+    private <T> void executeMultiplexed(Function<BloomdClient, CompletableFuture<T>> fn, SingleSubscriber<? super T> subscriber) {
+        CompletableFuture<T> computation;
+        try {
+            computation = fn.apply(multiplexedClient);
+        } catch (Throwable e) {
+            subscriber.onError(e);
+            return;
+        }
+
+        computation.whenComplete((result, err) -> complete(subscriber, result, err));
     }
 
-    private static String origin() {
-        StackTraceElement[] stackTrace = new Throwable().getStackTrace();
-        return stackTrace[2].getMethodName();
+    private static <T> void complete(SingleSubscriber<? super T> subscriber, T result, Throwable err) {
+        if (err != null) {
+            subscriber.onError(Futures.unwrap(err));
+        } else {
+            subscriber.onSuccess(result);
+        }
     }
 
-    private <T> Single<T> doExecute(Function<BloomdClient, Future<T>> fn, long timeoutMillis, String opName) {
-        AtomicBoolean alreadyReleased = new AtomicBoolean(false);
-        CompletableFuture<BloomdClient> acquire = bloomdClientPool.acquire();
-        return Single
-                .from(acquire)
-                .flatMap(client -> {
-                    // execute actual computation and release the client from the pool
-                    Single<T> computation = Single.from(fn.apply(client));
-                    if (timeoutMillis != Long.MAX_VALUE) {
-                        computation = computation.timeout(timeoutMillis, TimeUnit.MILLISECONDS);
-                    }
+    private static Throwable mapError(Throwable err, long timeoutMillis, String opName) {
+        err = Futures.unwrap(err);
 
-                    return computation
-                            .onErrorResumeNext(err -> {
-                                if (err instanceof ExecutionException) {
-                                    err = err.getCause();
-                                }
-
-                                if (err instanceof TimeoutException && timeoutMillis != Long.MAX_VALUE) {
-                                    err = new TimeoutException("Failed to execute " + opName + " in less than " + timeoutMillis + "ms");
-                                }
-
-                                alreadyReleased.set(true);
-                                bloomdClientPool.release(client);
-
-                                LOG.log(Level.WARNING, err, () -> "Failed to apply computation: " + opName);
-
-                                return Single.error(err);
-                            })
-                            .doOnSuccess(ignore -> {
-                                alreadyReleased.set(true);
-                                bloomdClientPool.release(client);
-                            });
-                })
-                .doOnUnsubscribe(() -> {
-                    if (!alreadyReleased.get()) {
-                        try {
-                            bloomdClientPool.release(acquire.get());
-                        } catch (Throwable e) {
-                            LOG.log(Level.SEVERE, e, () -> "Failed to release connection");
-                        }
-                    }
-                });
+        if (err instanceof TimeoutException && timeoutMillis != Long.MAX_VALUE) {
+            err = new TimeoutException("Failed to execute " + opName + " in less than " + timeoutMillis + "ms");
+        }
+
+        LOG.log(Level.WARNING, err, () -> "Failed to apply computation: " + opName);
+
+        return err;
     }
 }
@@ -0,0 +1,79 @@
+package bloomd;
+
+import bloomd.replies.StateResult;
+import org.junit.Test;
+import rx.Observable;
+import rx.Single;
+import rx.schedulers.Schedulers;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Compares the callback based bridging of {@link RxBloomdClientImpl} with the previous one, which wrapped every
+ * future with {@code Single.from(Future)} (blocking a thread on {@code Future.get()}, so operations had to be
+ * subscribed on the IO scheduler to run concurrently) and walked the stack of every call to name it.
+ */
+public class RxBridgingBenchmark {
+
+    private static final int OPERATIONS = 50_000;
+    private static final int CONCURRENCY = 256;
+
+    @Test
+    public void compareBridging() throws Exception {
+        try (FakeBloomdServer server = new FakeBloomdServer()) {
+            BloomdClientPool pool = new BloomdClientPool("localhost", server.getPort(), 4, 2000, 2000);
+            MultiplexedBloomdClient multiplexedClient = new MultiplexedBloomdClient(pool, 4, 512);
+            multiplexedClient.create("filter").get(2, TimeUnit.SECONDS);
+
+            RxBloomdClient client = new RxBloomdClientImpl(multiplexedClient);
+            LegacyBridge legacy = new LegacyBridge(multiplexedClient);
+
+            for (int round = 0; round < 3; round++) {
+                run("whenComplete", i -> client.set("filter", "key" + i));
+                run("Single.from", i -> legacy.execute(c -> c.set("filter", "key" + i)).subscribeOn(Schedulers.io()));
+            }
+
+            multiplexedClient.release().get(2, TimeUnit.SECONDS);
+            pool.closeConnections().sync();
+        }
+    }
+
+    private void run(String name, Function<Integer, Single<StateResult>> operation) {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        long threadsBefore = threads.getTotalStartedThreadCount();
+
+        long start = System.nanoTime();
+        Observable.range(0, OPERATIONS)
+                .flatMap(i -> operation.apply(i).toObservable(), CONCURRENCY)
+                .toBlocking()
+                .last();
+        long elapsed = System.nanoTime() - start;
+
+        System.out.println(String.format("%-12s %7d ops/s, %4d threads started",
+                                         name, TimeUnit.SECONDS.toNanos(1) * OPERATIONS / elapsed,
+                                         threads.getTotalStartedThreadCount() - threadsBefore));
+    }
+
+    private static class LegacyBridge {
+        private final BloomdClient client;
+
+        LegacyBridge(BloomdClient client) {
+            this.client = client;
+        }
+
+        <T> Single<T> execute(Function<BloomdClient, Future<T>> fn) {
+            String origin = origin();
+            return Single.defer(() -> Single.from(fn.apply(client))
+                    .onErrorResumeNext(err -> Single.error(new IllegalStateException(origin, err))));
+        }
+
+        private static String origin() {
+            StackTraceElement[] stackTrace = new Throwable().getStackTrace();
+            return stackTrace[2].getMethodName();
+        }
+    }
+}
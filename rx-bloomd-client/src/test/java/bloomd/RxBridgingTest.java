@@ -0,0 +1,82 @@
+package bloomd;
+
+import bloomd.replies.CreateResult;
+import bloomd.replies.StateResult;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import rx.Subscription;
+import rx.observers.TestSubscriber;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RxBridgingTest {
+
+    private FakeBloomdServer server;
+    private BloomdClientPool pool;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new FakeBloomdServer();
+        pool = new BloomdClientPool("localhost", server.getPort(), 1, 2000, 500);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        pool.closeConnections();
+        server.close();
+    }
+
+    @Test
+    public void testPooledOperations() throws Exception {
+        RxBloomdClient client = new RxBloomdClientImpl(pool);
+
+        assertThat(client.create("filter").toBlocking().value()).isEqualTo(CreateResult.DONE);
+        assertThat(client.set("filter", "key").toBlocking().value()).isEqualTo(StateResult.YES);
+
+        // the single connection of the pool is released after every operation
+        for (int i = 0; i < 100; i++) {
+            assertThat(client.check("filter", "key", 1_000).toBlocking().value()).isEqualTo(StateResult.YES);
+        }
+
+        TestSubscriber<StateResult> subscriber = new TestSubscriber<>();
+        client.check("non-extant-filter", "key").subscribe(subscriber);
+        subscriber.awaitTerminalEvent(2, TimeUnit.SECONDS);
+        subscriber.assertError(FilterDoesNotExistException.class);
+
+        // and after failures
+        assertThat(client.check("filter", "key").toBlocking().value()).isEqualTo(StateResult.YES);
+    }
+
+    @Test
+    public void testUnsubscribingReleasesTheConnection() throws Exception {
+        RxBloomdClient client = new RxBloomdClientImpl(pool);
+        client.create("filter").toBlocking().value();
+
+        for (int i = 0; i < 10; i++) {
+            Subscription subscription = client.set("filter", "key" + i).subscribe();
+            subscription.unsubscribe();
+        }
+
+        // the acquire would time out if any of the connections was leaked
+        assertThat(client.check("filter", "key", 2_000).toBlocking().value()).isNotNull();
+    }
+
+    @Test
+    public void testMultiplexedOperations() throws Exception {
+        MultiplexedBloomdClient multiplexedClient = new MultiplexedBloomdClient(pool, 1, 64);
+        RxBloomdClient client = new RxBloomdClientImpl(multiplexedClient);
+
+        assertThat(client.create("filter").toBlocking().value()).isEqualTo(CreateResult.DONE);
+        assertThat(client.bulkBits("filter", 1_000, "a", "b").toBlocking().value().cardinality()).isEqualTo(2);
+
+        TestSubscriber<StateResult> subscriber = new TestSubscriber<>();
+        client.check("non-extant-filter", "key").subscribe(subscriber);
+        subscriber.awaitTerminalEvent(2, TimeUnit.SECONDS);
+        subscriber.assertError(FilterDoesNotExistException.class);
+
+        multiplexedClient.release().get(2, TimeUnit.SECONDS);
+    }
+}
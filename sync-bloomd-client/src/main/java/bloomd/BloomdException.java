@@ -0,0 +1,11 @@
+package bloomd;
+
+/**
+ * Thrown by {@link SyncBloomdClient} when a command fails with a checked exception, such as a timeout, an
+ * interruption or an IO error. The original exception is the cause.
+ */
+public class BloomdException extends RuntimeException {
+    public BloomdException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
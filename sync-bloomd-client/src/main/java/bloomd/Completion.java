@@ -0,0 +1,80 @@
+package bloomd;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BiConsumer;
+
+/**
+ * Blocks the calling thread until a future completes by parking it with {@link LockSupport}, which unmounts virtual
+ * threads from their carrier instead of pinning it. Unlike {@code CompletableFuture.get()} no waiter node is
+ * queued on the future and nothing is done to compensate for blocked {@code ForkJoinPool} workers.
+ */
+final class Completion<T> implements BiConsumer<T, Throwable> {
+
+    private final Thread waiter = Thread.currentThread();
+
+    private T result;
+    private Throwable error;
+    // written last by the completing thread, read first by the waiter
+    private volatile boolean done = false;
+
+    private Completion() {
+    }
+
+    /**
+     * @param timeoutNanos maximum time to wait, or {@code Long.MAX_VALUE} to wait forever
+     * @return the result of the future
+     * @throws TimeoutException     if the future did not complete in time
+     * @throws InterruptedException if the thread was interrupted while waiting
+     * @throws Throwable            the cause the future failed with
+     */
+    static <T> T await(CompletableFuture<T> future, long timeoutNanos) throws Throwable {
+        if (future.isDone()) {
+            try {
+                return future.join();
+            } catch (Throwable e) {
+                throw Futures.unwrap(e);
+            }
+        }
+
+        Completion<T> completion = new Completion<>();
+        future.whenComplete(completion);
+        return completion.await(timeoutNanos);
+    }
+
+    @Override
+    public void accept(T result, Throwable error) {
+        this.result = result;
+        this.error = error;
+        done = true;
+        LockSupport.unpark(waiter);
+    }
+
+    private T await(long timeoutNanos) throws Throwable {
+        boolean timed = timeoutNanos != Long.MAX_VALUE;
+        long deadline = timed ? System.nanoTime() + timeoutNanos : 0;
+
+        while (!done) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+
+            if (!timed) {
+                LockSupport.park(this);
+                continue;
+            }
+
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                throw new TimeoutException();
+            }
+            LockSupport.parkNanos(this, remaining);
+        }
+
+        if (error != null) {
+            throw Futures.unwrap(error);
+        }
+        return result;
+    }
+}
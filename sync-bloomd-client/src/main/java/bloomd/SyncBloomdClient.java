@@ -0,0 +1,66 @@
+package bloomd;
+
+import bloomd.args.CreateFilterArgs;
+import bloomd.replies.BloomdFilter;
+import bloomd.replies.BloomdInfo;
+import bloomd.replies.ClearResult;
+import bloomd.replies.CreateResult;
+import bloomd.replies.StateResult;
+import bloomd.replies.StateResults;
+
+import java.util.List;
+
+/**
+ * Blocking client meant for callers running on their own thread, in particular virtual threads: waiting for a reply
+ * parks the caller without pinning its carrier thread, and the commands of every caller are pipelined on a few
+ * shared connections.
+ * <p>
+ * Failures are rethrown as they are when unchecked, like {@link FilterDoesNotExistException}, and wrapped in a
+ * {@link BloomdException} otherwise. A caller interrupted while waiting gets a {@link BloomdException} and keeps
+ * its interrupt status.
+ */
+public interface SyncBloomdClient {
+    List<BloomdFilter> list();
+
+    List<BloomdFilter> list(String prefix);
+
+    CreateResult create(String filterName);
+
+    CreateResult create(CreateFilterArgs args);
+
+    boolean drop(String filterName);
+
+    boolean close(String filterName);
+
+    ClearResult clear(String filterName);
+
+    StateResult check(String filterName, String key);
+
+    StateResult set(String filterName, String key);
+
+    List<StateResult> multi(String filterName, String... keys);
+
+    StateResults multiBits(String filterName, String... keys);
+
+    List<StateResult> bulk(String filterName, String... keys);
+
+    StateResults bulkBits(String filterName, String... keys);
+
+    BloomdInfo info(String filterName);
+
+    boolean flush(String filterName);
+
+    /**
+     * Closes the connections of a client created from a {@link BloomdClientConfig}. Clients wrapping a
+     * {@link BloomdClient} leave it to its owner.
+     */
+    void closeConnections();
+
+    /**
+     * @return a client pipelining commands on up to {@code maxConnections} connections, waiting for replies
+     * without a timeout
+     */
+    static SyncBloomdClient newInstance(BloomdClientConfig config) {
+        return new SyncBloomdClientImpl(config);
+    }
+}
@@ -0,0 +1,171 @@
+package bloomd;
+
+import bloomd.args.CreateFilterArgs;
+import bloomd.replies.BloomdFilter;
+import bloomd.replies.BloomdInfo;
+import bloomd.replies.ClearResult;
+import bloomd.replies.CreateResult;
+import bloomd.replies.StateResult;
+import bloomd.replies.StateResults;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+public class SyncBloomdClientImpl implements SyncBloomdClient {
+
+    private final BloomdClient client;
+    private final long timeoutNanos;
+
+    // only set when the connections are owned by this client
+    private final MultiplexedBloomdClient multiplexedClient;
+
+    /**
+     * Pipelines the commands of every caller on the connections of a new pool, adding connections while they are
+     * busy up to the max connections of the config.
+     */
+    public SyncBloomdClientImpl(BloomdClientConfig config) {
+        this.multiplexedClient = new MultiplexedBloomdClient.Builder()
+                .setPool(new BloomdClientPool(config))
+                .setConnections(Math.max(1, config.getMinIdleConnections()), config.getMaxConnections())
+                .build();
+        this.client = multiplexedClient;
+        this.timeoutNanos = Long.MAX_VALUE;
+    }
+
+    /**
+     * @param client typically a {@link MultiplexedBloomdClient}, shared by all callers
+     */
+    public SyncBloomdClientImpl(BloomdClient client) {
+        this(client, Long.MAX_VALUE);
+    }
+
+    /**
+     * @param timeoutMillis how long callers wait for a reply before getting a {@link BloomdException} caused by
+     *                      a {@link TimeoutException}. Commands carry the same deadline, see
+     *                      {@link BloomdClient#withTimeout(long, TimeUnit)}
+     */
+    public SyncBloomdClientImpl(BloomdClient client, long timeoutMillis) {
+        if (timeoutMillis < 1) {
+            throw new IllegalArgumentException("timeoutMillis has to be positive");
+        }
+
+        // the commands themselves carry the deadline so that late replies are discarded by the connection
+        this.client = timeoutMillis == Long.MAX_VALUE ? client : client.withTimeout(timeoutMillis, TimeUnit.MILLISECONDS);
+        this.timeoutNanos = timeoutMillis == Long.MAX_VALUE ? Long.MAX_VALUE : TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        this.multiplexedClient = null;
+    }
+
+    @Override
+    public List<BloomdFilter> list() {
+        return execute("list", client::list);
+    }
+
+    @Override
+    public List<BloomdFilter> list(String prefix) {
+        return execute("list", () -> client.list(prefix));
+    }
+
+    @Override
+    public CreateResult create(String filterName) {
+        return execute("create", () -> client.create(filterName));
+    }
+
+    @Override
+    public CreateResult create(CreateFilterArgs args) {
+        return execute("create", () -> client.create(args));
+    }
+
+    @Override
+    public boolean drop(String filterName) {
+        return execute("drop", () -> client.drop(filterName));
+    }
+
+    @Override
+    public boolean close(String filterName) {
+        return execute("close", () -> client.close(filterName));
+    }
+
+    @Override
+    public ClearResult clear(String filterName) {
+        return execute("clear", () -> client.clear(filterName));
+    }
+
+    @Override
+    public StateResult check(String filterName, String key) {
+        return execute("check", () -> client.check(filterName, key));
+    }
+
+    @Override
+    public StateResult set(String filterName, String key) {
+        return execute("set", () -> client.set(filterName, key));
+    }
+
+    @Override
+    public List<StateResult> multi(String filterName, String... keys) {
+        return execute("multi", () -> client.multi(filterName, keys));
+    }
+
+    @Override
+    public StateResults multiBits(String filterName, String... keys) {
+        return execute("multiBits", () -> client.multiBits(filterName, keys));
+    }
+
+    @Override
+    public List<StateResult> bulk(String filterName, String... keys) {
+        return execute("bulk", () -> client.bulk(filterName, keys));
+    }
+
+    @Override
+    public StateResults bulkBits(String filterName, String... keys) {
+        return execute("bulkBits", () -> client.bulkBits(filterName, keys));
+    }
+
+    @Override
+    public BloomdInfo info(String filterName) {
+        return execute("info", () -> client.info(filterName));
+    }
+
+    @Override
+    public boolean flush(String filterName) {
+        return execute("flush", () -> client.flush(filterName));
+    }
+
+    @Override
+    public void closeConnections() {
+        if (multiplexedClient == null) {
+            return;
+        }
+
+        execute("closeConnections", () -> multiplexedClient.release()
+                .thenCompose(released -> {
+                    CompletableFuture<Void> closed = new CompletableFuture<>();
+                    multiplexedClient.getPool().closeConnections().addListener(future -> {
+                        if (future.isSuccess()) {
+                            closed.complete(null);
+                        } else {
+                            closed.completeExceptionally(future.cause());
+                        }
+                    });
+                    return closed;
+                }));
+    }
+
+    private <T> T execute(String opName, Supplier<CompletableFuture<T>> command) {
+        try {
+            return Completion.await(command.get(), timeoutNanos);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BloomdException("Interrupted while waiting for " + opName, e);
+        } catch (TimeoutException e) {
+            throw new BloomdException("Failed to execute " + opName + " in less than "
+                    + TimeUnit.NANOSECONDS.toMillis(timeoutNanos) + "ms", e);
+        } catch (Throwable e) {
+            throw new BloomdException("Failed to execute " + opName, e);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package bloomd;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Compares {@link SyncBloomdClient} with the async API, all of them pipelining on the same connections:
+ * <ul>
+ * <li>sync: callers on their own thread blocking on {@link SyncBloomdClient}</li>
+ * <li>future.get: callers on their own thread blocking on {@code CompletableFuture.get()}</li>
+ * <li>async: callers chaining every command on the completion of the previous one, no thread per caller</li>
+ * </ul>
+ * Callers run on virtual threads when the JVM supports them (Java 21+), on platform threads otherwise.
+ */
+public class SyncClientBenchmark {
+
+    private static final int CALLERS = 1_000;
+    private static final int OPERATIONS_PER_CALLER = 200;
+
+    @Test
+    public void compareWithAsync() throws Exception {
+        try (FakeBloomdServer server = new FakeBloomdServer()) {
+            BloomdClientPool pool = new BloomdClientPool("localhost", server.getPort(), 4, 2000, 2000);
+            MultiplexedBloomdClient multiplexed = new MultiplexedBloomdClient(pool, 4, 512);
+            SyncBloomdClient sync = new SyncBloomdClientImpl(multiplexed);
+            sync.create("filter");
+
+            ExecutorService callers = newCallerExecutor();
+            System.out.println("callers on " + (isVirtual(callers) ? "virtual" : "platform") + " threads");
+
+            try {
+                for (int round = 0; round < 6; round++) {
+                    report("sync", runBlocking(callers, (caller, i) -> sync.set("filter", caller + ":" + i)));
+                    report("future.get", runBlocking(callers, (caller, i) -> multiplexed.set("filter", caller + ":" + i).get()));
+                    report("async", runAsync(multiplexed));
+                }
+            } finally {
+                callers.shutdown();
+                multiplexed.release().get(2, TimeUnit.SECONDS);
+                pool.closeConnections().sync();
+            }
+        }
+    }
+
+    private long runBlocking(ExecutorService callers, Operation operation) throws Exception {
+        long start = System.nanoTime();
+        List<Future<?>> results = new ArrayList<>(CALLERS);
+        for (int c = 0; c < CALLERS; c++) {
+            int caller = c;
+            results.add(callers.submit(() -> {
+                for (int i = 0; i < OPERATIONS_PER_CALLER; i++) {
+                    operation.apply(caller, i);
+                }
+                return null;
+            }));
+        }
+
+        for (Future<?> result : results) {
+            result.get();
+        }
+        return System.nanoTime() - start;
+    }
+
+    private long runAsync(BloomdClient client) throws Exception {
+        CountDownLatch done = new CountDownLatch(CALLERS);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        long start = System.nanoTime();
+        for (int c = 0; c < CALLERS; c++) {
+            chain(client, c, 0, done, failure);
+        }
+        done.await();
+        if (failure.get() != null) {
+            throw new IllegalStateException(failure.get());
+        }
+        return System.nanoTime() - start;
+    }
+
+    private void chain(BloomdClient client, int caller, int i, CountDownLatch done, AtomicReference<Throwable> failure) {
+        if (i == OPERATIONS_PER_CALLER) {
+            done.countDown();
+            return;
+        }
+
+        CompletableFuture<?> result = client.set("filter", caller + ":" + i);
+        result.whenComplete((ignore, err) -> {
+            if (err != null) {
+                failure.compareAndSet(null, err);
+                done.countDown();
+            } else {
+                chain(client, caller, i + 1, done, failure);
+            }
+        });
+    }
+
+    private static void report(String name, long elapsedNanos) {
+        long operations = (long) CALLERS * OPERATIONS_PER_CALLER;
+        System.out.println(String.format("%-10s %8d ops/s", name, TimeUnit.SECONDS.toNanos(1) * operations / elapsedNanos));
+    }
+
+    private static ExecutorService newCallerExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(CALLERS);
+        }
+    }
+
+    private static boolean isVirtual(ExecutorService callers) throws Exception {
+        return callers.submit(() -> {
+            try {
+                return (Boolean) Thread.class.getMethod("isVirtual").invoke(Thread.currentThread());
+            } catch (NoSuchMethodException e) {
+                return false;
+            }
+        }).get();
+    }
+
+    @FunctionalInterface
+    private interface Operation {
+        void apply(int caller, int i) throws Exception;
+    }
+}
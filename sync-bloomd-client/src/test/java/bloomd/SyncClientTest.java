@@ -0,0 +1,119 @@
+package bloomd;
+
+import bloomd.replies.CreateResult;
+import bloomd.replies.StateResult;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+public class SyncClientTest {
+
+    @Test
+    public void testOperations() throws Exception {
+        try (FakeBloomdServer server = new FakeBloomdServer()) {
+            SyncBloomdClient client = SyncBloomdClient.newInstance(new BloomdClientConfig.Builder()
+                    .setHost("localhost")
+                    .setPort(server.getPort())
+                    .setMaxConnections(2)
+                    .build());
+            try {
+                assertThat(client.create("filter")).isEqualTo(CreateResult.DONE);
+                assertThat(client.set("filter", "key")).isEqualTo(StateResult.YES);
+                assertThat(client.check("filter", "key")).isEqualTo(StateResult.YES);
+                assertThat(client.bulk("filter", "key", "other")).containsExactly(StateResult.NO, StateResult.YES);
+                assertThat(client.multiBits("filter", "other", "missing").asList())
+                        .containsExactly(StateResult.YES, StateResult.NO);
+                assertThat(client.list()).hasSize(1);
+
+                try {
+                    client.check("missing", "key");
+                    fail("Unchecked failures should be rethrown as they are");
+                } catch (FilterDoesNotExistException e) {
+                    // expected
+                }
+            } finally {
+                client.closeConnections();
+            }
+        }
+    }
+
+    @Test
+    public void testConcurrentCallersShareConnections() throws Exception {
+        try (FakeBloomdServer server = new FakeBloomdServer()) {
+            BloomdClientPool pool = new BloomdClientPool("localhost", server.getPort(), 2, 2000, 1000);
+            MultiplexedBloomdClient multiplexed = new MultiplexedBloomdClient(pool, 2, 64);
+            SyncBloomdClient client = new SyncBloomdClientImpl(multiplexed, 2_000);
+            ExecutorService callers = Executors.newFixedThreadPool(64);
+            try {
+                client.create("filter");
+
+                List<Future<?>> results = new ArrayList<>();
+                for (int i = 0; i < 64; i++) {
+                    int caller = i;
+                    results.add(callers.submit(() -> {
+                        for (int j = 0; j < 100; j++) {
+                            assertThat(client.set("filter", caller + ":" + j)).isEqualTo(StateResult.YES);
+                        }
+                    }));
+                }
+                for (Future<?> result : results) {
+                    result.get(10, TimeUnit.SECONDS);
+                }
+
+                assertThat(client.info("filter").getSize()).isEqualTo(6_400);
+                assertThat(pool.getOpenConnections()).isEqualTo(2);
+            } finally {
+                callers.shutdown();
+                multiplexed.release().get(2, TimeUnit.SECONDS);
+                pool.closeConnections();
+            }
+        }
+    }
+
+    @Test
+    public void testTimeoutAndInterruption() throws Exception {
+        // every command stays in flight until its deadline, if any
+        BloomdClient stuck = (BloomdClient) Proxy.newProxyInstance(BloomdClient.class.getClassLoader(),
+                new Class<?>[]{BloomdClient.class}, (proxy, method, args) -> method.getName().equals("withTimeout")
+                        ? new DeadlineBloomdClient((BloomdClient) proxy, ((TimeUnit) args[1]).toNanos((long) args[0]), null)
+                        : new CompletableFuture<>());
+        SyncBloomdClient client = new SyncBloomdClientImpl(stuck, 50);
+
+        try {
+            client.set("filter", "key");
+            fail("The command should time out");
+        } catch (BloomdException e) {
+            assertThat(e.getCause()).isInstanceOf(TimeoutException.class);
+        }
+
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        AtomicReference<Boolean> interrupted = new AtomicReference<>();
+        Thread caller = new Thread(() -> {
+            try {
+                new SyncBloomdClientImpl(stuck).check("filter", "key");
+            } catch (Throwable e) {
+                failure.set(e);
+                interrupted.set(Thread.currentThread().isInterrupted());
+            }
+        });
+        caller.start();
+        Thread.sleep(50);
+        caller.interrupt();
+        caller.join(1_000);
+
+        assertThat(failure.get()).isInstanceOf(BloomdException.class).hasCauseInstanceOf(InterruptedException.class);
+        assertThat(interrupted.get()).isTrue();
+    }
+}